@@ -6,19 +6,34 @@ import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.google.inject.Stage;
 
 import org.svomz.commons.application.modules.LifecycleModule;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * An application launcher that sets up a framework for pluggable binding modules. This class should be called
  * directly as the main class.
+ *
+ * The Guice {@link com.google.inject.Stage} of the injector can be chosen at launch time, either
+ * explicitly or with the "guice.stage" system property. The {@link com.google.inject.Stage#DEVELOPMENT}
+ * stage creates singletons lazily, which shortens the time to bind the http port and lets deferred
+ * bindings (see {@link org.svomz.commons.application.modules.LifecycleModule#addDeferredBinding(com.google.inject.Binder, com.google.inject.Key)})
+ * be initialized in the background. The {@link com.google.inject.Stage#PRODUCTION} stage creates
+ * them all before starting the lifecycle.
  */
 public class AppLauncher {
 
+  public static final String STAGE_PROPERTY = "guice.stage";
+
   @Inject
   private Lifecycle lifecycle;
 
-  private AppLauncher() {
+  private final Stage stage;
+
+  private AppLauncher(final Stage stage) {
+    this.stage = Preconditions.checkNotNull(stage);
   }
 
   private void run(Application application) {
@@ -26,7 +41,12 @@ public class AppLauncher {
 
     lifecycle.start();
     application.run();
-    lifecycle.awaitRunning();
+
+    try {
+      lifecycle.awaitTermination();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   private void configureInjections(Application application) {
@@ -35,16 +55,38 @@ public class AppLauncher {
         .addAll(application.getModules())
         .build();
 
-    Injector injector = Guice.createInjector(modules);
+    long start = System.nanoTime();
+    Injector injector = Guice.createInjector(this.stage, modules);
+    long injectorCreated = System.nanoTime();
     injector.injectMembers(application);
     injector.injectMembers(this);
+    long end = System.nanoTime();
+
+    this.lifecycle.recordBootstrap("Guice injector creation (" + this.stage + ")",
+      injectorCreated - start,
+      TimeUnit.NANOSECONDS);
+    this.lifecycle.recordBootstrap("Application members injection", end - injectorCreated,
+      TimeUnit.NANOSECONDS);
   }
 
+  /**
+   * Launches the application with an injector created in the stage configured by the "guice.stage"
+   * system property, {@link com.google.inject.Stage#DEVELOPMENT} by default.
+   */
   public static void launch(Class<? extends Application> applicationClass) {
+    AppLauncher.launch(applicationClass,
+      Stage.valueOf(System.getProperty(STAGE_PROPERTY, Stage.DEVELOPMENT.name())));
+  }
+
+  /**
+   * Launches the application with an injector created in the given stage.
+   */
+  public static void launch(Class<? extends Application> applicationClass, Stage stage) {
     Preconditions.checkNotNull(applicationClass);
+    Preconditions.checkNotNull(stage);
 
     try {
-      new AppLauncher().run(applicationClass.newInstance());
+      new AppLauncher(stage).run(applicationClass.newInstance());
     } catch (IllegalAccessException | InstantiationException ex) {
       throw new IllegalStateException(ex);
     }
@@ -0,0 +1,453 @@
+package org.svomz.commons.application;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.svomz.commons.core.Command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dependency graph of the commands of a {@link Lifecycle} stage.
+ *
+ * A command runs once every command it depends on (see {@link Lifecycle.DependsOn}) has completed.
+ * Among the commands ready to run, the ones with the highest {@link Lifecycle.Priority} are
+ * dispatched first, ties being broken by class name so that the order is the same from one run to
+ * another.
+ */
+final class CommandGraph {
+
+  private static final Logger LOG = Logger.getLogger(CommandGraph.class.getName());
+
+  private static final Comparator<Node> DISPATCH_ORDER = new Comparator<Node>() {
+    @Override
+    public int compare(Node node1, Node node2) {
+      if (node1.priority != node2.priority) {
+        return node1.priority > node2.priority ? -1 : 1;
+      }
+      int byName = node1.name.compareTo(node2.name);
+      return byName != 0 ? byName : Integer.compare(node1.index, node2.index);
+    }
+  };
+
+  private final List<Node> nodes;
+
+  /**
+   * @param commands the commands of a stage
+   * @throws IllegalStateException if the dependencies between commands contain a cycle
+   */
+  CommandGraph(final Set<Command> commands) {
+    Preconditions.checkNotNull(commands);
+
+    List<Node> nodes = new ArrayList<>(commands.size());
+    for (Command command : commands) {
+      nodes.add(new Node(command, nodes.size()));
+    }
+    for (Node node : nodes) {
+      for (Class<?> dependency : node.dependencies) {
+        for (Node other : nodes) {
+          if (other != node && dependency.isInstance(other.command)) {
+            other.dependents.add(node);
+            node.inDegree++;
+          }
+        }
+      }
+    }
+    this.nodes = Collections.unmodifiableList(nodes);
+    this.checkAcyclic();
+  }
+
+  /**
+   * @return the commands of the graph in the order they would be run by a single thread.
+   */
+  List<Command> commands() {
+    List<Command> commands = new ArrayList<>(this.nodes.size());
+    for (Node node : this.sorted()) {
+      commands.add(node.command);
+    }
+    return commands;
+  }
+
+  private List<Node> sorted() {
+    List<Node> sorted = new ArrayList<>(this.nodes.size());
+    Map<Node, Integer> inDegrees = this.inDegrees();
+    PriorityQueue<Node> ready = this.roots(inDegrees);
+    while (!ready.isEmpty()) {
+      Node node = ready.poll();
+      sorted.add(node);
+      this.release(node, inDegrees, ready);
+    }
+    return sorted;
+  }
+
+  /**
+   * Runs the commands of the graph with at most {@code parallelism} commands running at the same
+   * time. When {@code parallelism} is 1 and no timeout applies the commands are run by the calling
+   * thread.
+   *
+   * A command running longer than its timeout, or still running when the stage timeout elapses, is
+   * interrupted and reported. Its thread is abandoned so that the remaining commands are not
+   * delayed by a command ignoring interruption. Commands not yet dispatched when the stage timeout
+   * elapses are skipped.
+   *
+   * @param parallelism the maximum number of commands running concurrently
+   * @param commandTimeout the default timeout of a command in nanoseconds, 0 for no timeout
+   * @param stageTimeout the timeout of the whole graph in nanoseconds, 0 for no timeout
+   * @param failFast if true, the first exception thrown by a command stops the dispatch of the
+   *                 remaining commands and is rethrown once the running commands are completed.
+   *                 A timeout is then reported by an {@link IllegalStateException}. Otherwise
+   *                 exceptions and timeouts are logged and don't prevent other commands to run.
+   * @param listener notified of the time spent on each command of the graph, including the
+   *                 skipped ones.
+   */
+  void run(final int parallelism, final long commandTimeout, final long stageTimeout,
+    final boolean failFast, final Listener listener) {
+    Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive.");
+    Preconditions.checkArgument(commandTimeout >= 0, "Command timeout can't be negative.");
+    Preconditions.checkArgument(stageTimeout >= 0, "Stage timeout can't be negative.");
+    Preconditions.checkNotNull(listener);
+
+    Set<Node> notified = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    try {
+      this.run(parallelism, commandTimeout, stageTimeout, failFast, listener, notified);
+    } finally {
+      for (Node node : this.nodes) {
+        if (!notified.contains(node)) {
+          listener.commandRun(node.command, 0, LifecycleReport.Outcome.SKIPPED);
+        }
+      }
+    }
+  }
+
+  private void run(final int parallelism, final long commandTimeout, final long stageTimeout,
+    final boolean failFast, final Listener listener, final Set<Node> notified) {
+    if ((parallelism == 1 || this.nodes.size() <= 1) && commandTimeout == 0 && stageTimeout == 0
+      && !this.hasCommandTimeout()) {
+      for (Node node : this.sorted()) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+          completed = CommandGraph.runCommand(node.command, failFast);
+        } finally {
+          notified.add(node);
+          listener.commandRun(node.command, System.nanoTime() - start,
+            completed ? LifecycleReport.Outcome.COMPLETED : LifecycleReport.Outcome.FAILED);
+        }
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("lifecycle-%d").setDaemon(true).build());
+    try {
+      this.dispatch(new ExecutorCompletionService<Boolean>(executor), parallelism, commandTimeout,
+        stageTimeout, failFast, new Notifier(listener, notified));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void dispatch(final CompletionService<Boolean> completionService, final int parallelism,
+    final long commandTimeout, final long stageTimeout, final boolean failFast,
+    final Notifier notifier) {
+    Map<Node, Integer> inDegrees = this.inDegrees();
+    PriorityQueue<Node> ready = this.roots(inDegrees);
+    Map<Future<Boolean>, Dispatched> inFlight = new HashMap<>();
+    Set<Node> completed = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    long stageStart = System.nanoTime();
+    Throwable failure = null;
+
+    while (true) {
+      while (failure == null && !ready.isEmpty() && inFlight.size() < parallelism) {
+        final Node node = ready.poll();
+        Future<Boolean> future = completionService.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            return CommandGraph.runCommand(node.command, failFast);
+          }
+        });
+        long timeout = node.timeout >= 0 ? node.timeout : commandTimeout;
+        inFlight.put(future, new Dispatched(node, System.nanoTime(), timeout));
+      }
+      if (inFlight.isEmpty()) {
+        break;
+      }
+
+      Future<Boolean> done;
+      try {
+        long wait = CommandGraph.nextTimeout(inFlight.values(), stageStart, stageTimeout);
+        done = wait < 0
+          ? completionService.take()
+          : completionService.poll(wait, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        CommandGraph.cancel(inFlight, notifier, LifecycleReport.Outcome.INTERRUPTED);
+        if (failFast) {
+          throw new IllegalStateException("Interrupted while running lifecycle commands.", ex);
+        }
+        LOG.warning("Interrupted while running lifecycle commands.");
+        return;
+      }
+
+      if (done != null) {
+        Dispatched dispatched = inFlight.remove(done);
+        if (dispatched == null) {
+          // a command cancelled after its timeout
+          continue;
+        }
+        try {
+          boolean success = done.get();
+          notifier.report(dispatched, success
+            ? LifecycleReport.Outcome.COMPLETED : LifecycleReport.Outcome.FAILED);
+          completed.add(dispatched.node);
+          this.release(dispatched.node, inDegrees, ready);
+        } catch (ExecutionException ex) {
+          notifier.report(dispatched, LifecycleReport.Outcome.FAILED);
+          if (failure == null) {
+            failure = ex.getCause();
+          }
+        } catch (InterruptedException | CancellationException ex) {
+          throw new AssertionError(ex);
+        }
+        continue;
+      }
+
+      long now = System.nanoTime();
+      if (stageTimeout > 0 && now - stageStart >= stageTimeout) {
+        CommandGraph.cancel(inFlight, notifier, LifecycleReport.Outcome.TIMED_OUT);
+        List<String> pending = new ArrayList<>();
+        for (Node node : this.nodes) {
+          if (!completed.contains(node)) {
+            pending.add(node.name);
+          }
+        }
+        String message = String.format("Lifecycle commands %s not completed within %d ms.",
+          pending, TimeUnit.NANOSECONDS.toMillis(stageTimeout));
+        if (failFast) {
+          throw new IllegalStateException(message);
+        }
+        LOG.warning(message);
+        return;
+      }
+
+      Iterator<Map.Entry<Future<Boolean>, Dispatched>> iterator = inFlight.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Future<Boolean>, Dispatched> entry = iterator.next();
+        Dispatched dispatched = entry.getValue();
+        if (dispatched.timeout > 0 && now - dispatched.start >= dispatched.timeout) {
+          entry.getKey().cancel(true);
+          iterator.remove();
+          notifier.report(dispatched, LifecycleReport.Outcome.TIMED_OUT);
+          String message = String.format("Command %s timed out after %d ms.",
+            dispatched.node.name, TimeUnit.NANOSECONDS.toMillis(dispatched.timeout));
+          if (failFast) {
+            if (failure == null) {
+              failure = new IllegalStateException(message);
+            }
+          } else {
+            LOG.warning(message);
+            completed.add(dispatched.node);
+            this.release(dispatched.node, inDegrees, ready);
+          }
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw Throwables.propagate(failure);
+    }
+  }
+
+  /**
+   * @return the time in nanoseconds until the first command or stage timeout, or -1 if no timeout
+   * applies.
+   */
+  private static long nextTimeout(final Iterable<Dispatched> inFlight, final long stageStart,
+    final long stageTimeout) {
+    long now = System.nanoTime();
+    long next = stageTimeout > 0 ? Math.max(0, stageTimeout - (now - stageStart)) : -1;
+    for (Dispatched dispatched : inFlight) {
+      if (dispatched.timeout > 0) {
+        long remaining = Math.max(0, dispatched.timeout - (now - dispatched.start));
+        next = next < 0 ? remaining : Math.min(next, remaining);
+      }
+    }
+    return next;
+  }
+
+  private static void cancel(final Map<Future<Boolean>, Dispatched> inFlight,
+    final Notifier notifier, final LifecycleReport.Outcome outcome) {
+    for (Map.Entry<Future<Boolean>, Dispatched> entry : inFlight.entrySet()) {
+      entry.getKey().cancel(true);
+      notifier.report(entry.getValue(), outcome);
+    }
+  }
+
+  /**
+   * @return true if the command has completed normally, false if it has thrown an exception that
+   * has been logged.
+   */
+  private static boolean runCommand(final Command command, final boolean failFast) {
+    if (failFast) {
+      command.run();
+      return true;
+    }
+
+    try {
+      command.run();
+      return true;
+    } catch (Exception ex) {
+      LOG.log(Level.WARNING, "Command " + command.getClass().getName() + " failed.", ex);
+      return false;
+    }
+  }
+
+  private void checkAcyclic() {
+    List<Command> sorted = this.commands();
+    if (sorted.size() != this.nodes.size()) {
+      List<String> cyclic = new ArrayList<>();
+      for (Node node : this.nodes) {
+        if (!sorted.contains(node.command)) {
+          cyclic.add(node.name);
+        }
+      }
+      throw new IllegalStateException("Cyclic dependency between lifecycle commands " + cyclic);
+    }
+  }
+
+  private boolean hasCommandTimeout() {
+    for (Node node : this.nodes) {
+      if (node.timeout >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Map<Node, Integer> inDegrees() {
+    Map<Node, Integer> inDegrees = new IdentityHashMap<>();
+    for (Node node : this.nodes) {
+      inDegrees.put(node, node.inDegree);
+    }
+    return inDegrees;
+  }
+
+  private PriorityQueue<Node> roots(final Map<Node, Integer> inDegrees) {
+    PriorityQueue<Node> ready = new PriorityQueue<>(Math.max(1, this.nodes.size()), DISPATCH_ORDER);
+    for (Node node : this.nodes) {
+      if (inDegrees.get(node) == 0) {
+        ready.add(node);
+      }
+    }
+    return ready;
+  }
+
+  private void release(final Node node, final Map<Node, Integer> inDegrees,
+    final PriorityQueue<Node> ready) {
+    for (Node dependent : node.dependents) {
+      int inDegree = inDegrees.get(dependent) - 1;
+      inDegrees.put(dependent, inDegree);
+      if (inDegree == 0) {
+        ready.add(dependent);
+      }
+    }
+  }
+
+  private static final class Node {
+
+    private final Command command;
+    private final int index;
+    private final String name;
+    private final int priority;
+    private final Class<?>[] dependencies;
+    private final List<Node> dependents;
+    private final long timeout;
+    private int inDegree;
+
+    private Node(final Command command, final int index) {
+      this.command = Preconditions.checkNotNull(command);
+      this.index = index;
+      this.name = command.getClass().getName();
+
+      Lifecycle.Priority priority = command.getClass().getAnnotation(Lifecycle.Priority.class);
+      this.priority = priority != null ? priority.value() : 0;
+      Lifecycle.DependsOn dependsOn = command.getClass().getAnnotation(Lifecycle.DependsOn.class);
+      this.dependencies = dependsOn != null ? dependsOn.value() : new Class<?>[0];
+      this.dependents = new ArrayList<>();
+      Lifecycle.Timeout timeout = command.getClass().getAnnotation(Lifecycle.Timeout.class);
+      this.timeout = timeout != null ? timeout.unit().toNanos(timeout.value()) : -1;
+    }
+  }
+
+  /**
+   * Receives the time spent on each command of a graph.
+   */
+  interface Listener {
+
+    /**
+     * @param command the command
+     * @param duration the time spent on the command in nanoseconds
+     * @param outcome how the run of the command ended
+     */
+    void commandRun(Command command, long duration, LifecycleReport.Outcome outcome);
+  }
+
+  /**
+   * Notifies a listener once per node.
+   */
+  private static final class Notifier {
+
+    private final Listener listener;
+    private final Set<Node> notified;
+
+    private Notifier(final Listener listener, final Set<Node> notified) {
+      this.listener = listener;
+      this.notified = notified;
+    }
+
+    private void report(final Dispatched dispatched, final LifecycleReport.Outcome outcome) {
+      if (this.notified.add(dispatched.node)) {
+        this.listener.commandRun(dispatched.node.command, System.nanoTime() - dispatched.start,
+          outcome);
+      }
+    }
+  }
+
+  /**
+   * A node submitted for execution.
+   */
+  private static final class Dispatched {
+
+    private final Node node;
+    private final long start;
+    private final long timeout;
+
+    private Dispatched(final Node node, final long start, final long timeout) {
+      this.node = node;
+      this.start = start;
+      this.timeout = timeout;
+    }
+  }
+
+}
@@ -9,18 +9,35 @@ import org.svomz.commons.core.Command;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
  * Application lifecycle running predefined commands at each stages.
  *
+ * The commands of a stage are run concurrently by a bounded number of threads. A command can be
+ * annotated with {@link DependsOn} to run after other commands of the same stage and with
+ * {@link Priority} to be dispatched before the other commands ready to run.
+ *
+ * Each stage can be given a deadline and each command a timeout (see {@link Timeout}). A command
+ * running past its time is interrupted and reported, so that the lifecycle moves on to the next
+ * stage within a bounded time.
+ *
+ * The time spent on each stage and command is recorded and available through {@link #getReport()}.
+ * The report is logged once the lifecycle is running.
+ *
  * It could also be used by thread to wait until the application shutdowns.
  */
 @ThreadSafe
@@ -28,13 +45,32 @@ public final class Lifecycle {
 
   private static final Logger LOG = Logger.getLogger(Lifecycle.class.getName());
 
-  private final Set<Command> startingCommand;
-  private final Set<Command> stoppingCommands;
-  private final Set<Command> runningCommands;
-  private final Set<Command> terminatedCommands;
+  /**
+   * Default maximum number of commands of a stage running concurrently.
+   */
+  public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  private final CommandGraph startingCommands;
+  private final CommandGraph stoppingCommands;
+  private final CommandGraph runningCommands;
+  private final CommandGraph terminatedCommands;
+  private final int parallelism;
+  private final long stageTimeout;
+  private final long commandTimeout;
+
+  private final Object stageMonitor = new Object();
+
+  private final List<LifecycleReport.Timing> bootstrapTimings =
+    Collections.synchronizedList(new ArrayList<LifecycleReport.Timing>());
+  private final Map<Stage, Long> stageDurations =
+    Collections.synchronizedMap(new EnumMap<Stage, Long>(Stage.class));
+  private final List<LifecycleReport.CommandTiming> commandTimings =
+    Collections.synchronizedList(new ArrayList<LifecycleReport.CommandTiming>());
 
   private volatile Stage stage;
 
+  private volatile Thread stoppingThread;
+
   /**
    * Constructs a lifecycle with a set of commands to run at the different {@link org.svomz.commons.application.Lifecycle.Stage}
    *
@@ -42,37 +78,62 @@ public final class Lifecycle {
    * @param runningCommands {@link org.svomz.commons.core.Command} to run when the application is running.
    * @param stoppingCommands {@link org.svomz.commons.core.Command} to run when the application is stopping.
    * @param terminatedCommands {@link org.svomz.commons.core.Command} to run when the application is stopped.
+   * @param parallelism maximum number of commands of a stage running concurrently.
+   * @param stageTimeout maximum time in milliseconds to run the commands of a stage, 0 for no limit.
+   * @param commandTimeout maximum time in milliseconds to run a command not annotated with
+   *                       {@link Timeout}, 0 for no limit.
+   * @throws IllegalStateException if the dependencies between the commands of a stage contain a cycle.
    */
   @Inject
   protected Lifecycle(@StartingCommand final Set<Command> startingCommands,
     @RunningCommand final Set<Command> runningCommands,
     @StoppingCommand final Set<Command> stoppingCommands,
-    @TerminatedCommand final Set<Command> terminatedCommands) {
+    @TerminatedCommand final Set<Command> terminatedCommands,
+    @Parallelism final int parallelism,
+    @StageTimeout final long stageTimeout,
+    @CommandTimeout final long commandTimeout) {
+    this(startingCommands, runningCommands, stoppingCommands, terminatedCommands, parallelism,
+      stageTimeout, commandTimeout, TimeUnit.MILLISECONDS);
+  }
+
+  private Lifecycle(Builder builder) {
+    this(builder.startingCommands, builder.runningCommands, builder.stoppingCommands,
+      builder.terminatedCommands, builder.parallelism, builder.stageTimeout,
+      builder.commandTimeout, TimeUnit.NANOSECONDS);
+  }
+
+  private Lifecycle(final Set<Command> startingCommands, final Set<Command> runningCommands,
+    final Set<Command> stoppingCommands, final Set<Command> terminatedCommands,
+    final int parallelism, final long stageTimeout, final long commandTimeout,
+    final TimeUnit unit) {
     Preconditions.checkNotNull(startingCommands);
     Preconditions.checkNotNull(runningCommands);
     Preconditions.checkNotNull(stoppingCommands);
     Preconditions.checkNotNull(terminatedCommands);
-
-    this.startingCommand = Collections.unmodifiableSet(startingCommands);
-    this.runningCommands = Collections.unmodifiableSet(runningCommands);
-    this.stoppingCommands = Collections.unmodifiableSet(stoppingCommands);
-    this.terminatedCommands = Collections.unmodifiableSet(terminatedCommands);
+    Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive.");
+    Preconditions.checkArgument(stageTimeout >= 0, "Stage timeout can't be negative.");
+    Preconditions.checkArgument(commandTimeout >= 0, "Command timeout can't be negative.");
+
+    this.startingCommands = new CommandGraph(startingCommands);
+    this.runningCommands = new CommandGraph(runningCommands);
+    this.stoppingCommands = new CommandGraph(stoppingCommands);
+    this.terminatedCommands = new CommandGraph(terminatedCommands);
+    this.parallelism = parallelism;
+    this.stageTimeout = unit.toNanos(stageTimeout);
+    this.commandTimeout = unit.toNanos(commandTimeout);
     this.stage = Stage.NEW;
   }
 
-  private Lifecycle(Builder builder) {
-    this(builder.startingCommands, builder.runningCommands, builder.stoppingCommands,
-      builder.terminatedCommands);
-  }
-
   /**
-   * Executes sequentially the starting commands. The lifecycle's stage should be {@link org.svomz.commons.application.Lifecycle.Stage#RUNNING}
+   * Executes the starting commands. The lifecycle's stage should be {@link org.svomz.commons.application.Lifecycle.Stage#RUNNING}
    * when all startup commands has been properly executed. Once the service is running it
-   * executes sequentially commands configured for the {@link org.svomz.commons.application.Lifecycle.Stage#RUNNING} stage.
+   * executes commands configured for the {@link org.svomz.commons.application.Lifecycle.Stage#RUNNING} stage.
    *
    * There is no catch of exception thrown by a starting command. It means that the lifecycle won't
    * never reach the {@link org.svomz.commons.application.Lifecycle.Stage#RUNNING} if something goes
-   * wrong in one of these command.
+   * wrong in one of these command. No other starting command is dispatched once one has failed and
+   * the exception is rethrown when the commands already running are completed. A starting command
+   * or stage running out of time fails with an {@link IllegalStateException}.
    *
    * However an exception thrown by a running command won't prevent commands that follow to be executed.
    *
@@ -81,54 +142,38 @@ public final class Lifecycle {
   public synchronized void start() {
     Preconditions.checkState(this.stage == Stage.NEW,
       "The lifecycle can only be started once.");
-    this.stage = Stage.STARTING;
+    this.moveTo(Stage.STARTING);
+    this.runCommands(this.startingCommands, true);
 
-    for (Command command : this.startingCommand) {
-      command.run();
-    }
-
-    this.stage = Stage.RUNNING;
+    this.moveTo(Stage.RUNNING);
+    this.runCommands(this.runningCommands, false);
 
-    for (Command command : this.runningCommands) {
-      try {
-        command.run();
-      } catch (Exception ex) {
-        LOG.warning(ex.getMessage());
-      }
-    }
+    LOG.info(this.getReport().toString());
   }
 
   /**
-   * Executes sequentially the stopping commands. The lifecycle's stage should be {@link org.svomz.commons.application.Lifecycle.Stage#STOPPING}
+   * Executes the stopping commands. The lifecycle's stage should be {@link org.svomz.commons.application.Lifecycle.Stage#STOPPING}
    * when all startup commands has been properly executed. Once the service is terminated it
-   * executes sequentially commands configured for the {@link org.svomz.commons.application.Lifecycle.Stage#TERMINATED} stage.
+   * executes commands configured for the {@link org.svomz.commons.application.Lifecycle.Stage#TERMINATED} stage.
    *
    * Any exception thrown by a stopping or terminated commands won't prevent commands that follow to
-   * be executed.
+   * be executed. Neither will a command running out of time: it is interrupted and logged. Commands
+   * not yet run when the stage deadline elapses are skipped.
    *
    * The lifecycle can only be stopped once.
    */
   public synchronized void stop() {
     Preconditions.checkState(this.stage == Stage.RUNNING,
       "The lifecycle can only be stopped once while the application is running.");
-    this.stage = Stage.STOPPING;
-
-    for (Command command : this.stoppingCommands) {
-      try {
-        command.run();
-      } catch (Exception ex) {
-        LOG.warning(ex.getMessage());
-      }
-    }
-
-    this.stage = Stage.TERMINATED;
-
-    for (Command command : this.terminatedCommands) {
-      try {
-        command.run();
-      } catch (Exception ex) {
-        LOG.warning(ex.getMessage());
-      }
+    this.stoppingThread = Thread.currentThread();
+    try {
+      this.moveTo(Stage.STOPPING);
+      this.runCommands(this.stoppingCommands, false);
+
+      this.moveTo(Stage.TERMINATED);
+      this.runCommands(this.terminatedCommands, false);
+    } finally {
+      this.stoppingThread = null;
     }
   }
 
@@ -142,12 +187,74 @@ public final class Lifecycle {
   /**
    * Used by other thread to wait as long as the lifecycle is running. This methods could only be
    * called if the lifecycle is running.
+   *
+   * If the calling thread is interrupted while waiting this method returns and the interrupt status
+   * of the thread is restored.
+   *
+   * @deprecated use {@link #awaitTermination()} or {@link #awaitStage(Stage)} instead.
    */
+  @Deprecated
   public void awaitRunning() {
     Preconditions.checkState(this.stage == Stage.RUNNING, "The lifecycle is not running.");
 
-    while (this.isRunning()) {
-      /* do nothing, just wait */
+    try {
+      this.awaitStage(Stage.STOPPING);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Blocks the calling thread until the lifecycle reaches the {@link Stage#TERMINATED} stage.
+   *
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public void awaitTermination() throws InterruptedException {
+    this.awaitStage(Stage.TERMINATED);
+  }
+
+  /**
+   * Blocks the calling thread until the lifecycle reaches the {@link Stage#TERMINATED} stage or the
+   * timeout elapses, whichever happens first.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @return true if the lifecycle is terminated, false if the timeout elapsed before
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public boolean awaitTermination(final long timeout, final TimeUnit unit)
+    throws InterruptedException {
+    Preconditions.checkNotNull(unit);
+
+    long remaining = unit.toNanos(timeout);
+    long deadline = System.nanoTime() + remaining;
+    synchronized (this.stageMonitor) {
+      while (!this.hasReached(Stage.TERMINATED)) {
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this.stageMonitor, remaining);
+        remaining = deadline - System.nanoTime();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Blocks the calling thread until the lifecycle reaches the given stage. As stages are always
+   * traversed in the order they are declared, this method also returns if the given stage has
+   * already been passed.
+   *
+   * @param stage the stage to wait for
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public void awaitStage(final Stage stage) throws InterruptedException {
+    Preconditions.checkNotNull(stage);
+
+    synchronized (this.stageMonitor) {
+      while (!this.hasReached(stage)) {
+        this.stageMonitor.wait();
+      }
     }
   }
 
@@ -159,6 +266,75 @@ public final class Lifecycle {
     return this.stage;
   }
 
+  /**
+   * A command can't wait for the thread stopping the lifecycle to complete a task, like a request
+   * asking for the stop: that thread waits for the commands.
+   *
+   * @return the thread calling {@link #stop()} while it runs the stopping and terminated commands,
+   * null otherwise.
+   */
+  public Thread getStoppingThread() {
+    return this.stoppingThread;
+  }
+
+  /**
+   * @return a snapshot of the time spent so far to bootstrap the application and to run the stages
+   * of the lifecycle.
+   */
+  public LifecycleReport getReport() {
+    synchronized (this.bootstrapTimings) {
+      synchronized (this.stageDurations) {
+        synchronized (this.commandTimings) {
+          return new LifecycleReport(this.bootstrapTimings, this.stageDurations,
+            this.commandTimings);
+        }
+      }
+    }
+  }
+
+  /**
+   * Records the time spent on a step run before the lifecycle is started, for instance by the
+   * {@link AppLauncher}.
+   *
+   * @param name the name of the step
+   * @param duration the time spent on the step
+   * @param unit the unit of the duration
+   */
+  void recordBootstrap(final String name, final long duration, final TimeUnit unit) {
+    this.bootstrapTimings.add(new LifecycleReport.Timing(name, unit.toNanos(duration)));
+  }
+
+  private void runCommands(final CommandGraph commands, final boolean failFast) {
+    final Stage stage = this.stage;
+    long start = System.nanoTime();
+    try {
+      commands.run(this.parallelism, this.commandTimeout, this.stageTimeout, failFast,
+        new CommandGraph.Listener() {
+          @Override
+          public void commandRun(Command command, long duration, LifecycleReport.Outcome outcome) {
+            Lifecycle.this.commandTimings.add(new LifecycleReport.CommandTiming(stage,
+              command.getClass().getName(), duration, outcome));
+          }
+        });
+    } finally {
+      this.stageDurations.put(stage, System.nanoTime() - start);
+    }
+  }
+
+  private boolean hasReached(final Stage stage) {
+    return this.stage.compareTo(stage) >= 0;
+  }
+
+  /**
+   * Changes the stage of the lifecycle and wakes up threads waiting on a stage change.
+   */
+  private void moveTo(final Stage stage) {
+    synchronized (this.stageMonitor) {
+      this.stage = stage;
+      this.stageMonitor.notifyAll();
+    }
+  }
+
   /**
    * @return a lifecycle builder.
    */
@@ -167,7 +343,8 @@ public final class Lifecycle {
   }
 
   /**
-   * Stages of a {@link org.svomz.commons.application.Lifecycle}
+   * Stages of a {@link org.svomz.commons.application.Lifecycle}, declared in the order they are
+   * traversed.
    */
   public static enum Stage {
     NEW,
@@ -186,12 +363,16 @@ public final class Lifecycle {
     private final Set<Command> runningCommands;
     private final Set<Command> stoppingCommands;
     private final Set<Command> terminatedCommands;
+    private int parallelism;
+    private long stageTimeout;
+    private long commandTimeout;
 
     public Builder() {
       this.startingCommands = new HashSet<>();
       this.runningCommands = new HashSet<>();
       this.stoppingCommands = new HashSet<>();
       this.terminatedCommands = new HashSet<>();
+      this.parallelism = DEFAULT_PARALLELISM;
     }
 
     public Builder addStartingCommands(final Command... commands) {
@@ -218,6 +399,37 @@ public final class Lifecycle {
       return this;
     }
 
+    /**
+     * @param parallelism maximum number of commands of a stage running concurrently. With a
+     *                    parallelism of 1 the commands are run by the thread changing the stage.
+     */
+    public Builder parallelism(final int parallelism) {
+      Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive.");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * @param timeout maximum time to run the commands of a stage, 0 for no limit.
+     * @param unit the unit of the timeout.
+     */
+    public Builder stageTimeout(final long timeout, final TimeUnit unit) {
+      Preconditions.checkArgument(timeout >= 0, "Stage timeout can't be negative.");
+      this.stageTimeout = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * @param timeout maximum time to run a command not annotated with {@link Timeout}, 0 for no
+     *                limit.
+     * @param unit the unit of the timeout.
+     */
+    public Builder commandTimeout(final long timeout, final TimeUnit unit) {
+      Preconditions.checkArgument(timeout >= 0, "Command timeout can't be negative.");
+      this.commandTimeout = unit.toNanos(timeout);
+      return this;
+    }
+
     public Lifecycle build() {
       return new Lifecycle(this);
     }
@@ -269,4 +481,72 @@ public final class Lifecycle {
   public @interface TerminatedCommand {
 
   }
+
+  /**
+   * Binds the maximum number of commands of a stage running concurrently.
+   */
+  @BindingAnnotation
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+  public @interface Parallelism {
+
+  }
+
+  /**
+   * Declares that a command must run after the commands of the same stage that are instances of
+   * one of the given classes. Dependencies without matching commands in the stage are ignored.
+   */
+  @Inherited
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.TYPE)
+  public @interface DependsOn {
+
+    Class<? extends Command>[] value();
+  }
+
+  /**
+   * Priority of a command among the commands of its stage ready to run. Commands with the highest
+   * priority are dispatched first. The default priority is 0.
+   */
+  @Inherited
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.TYPE)
+  public @interface Priority {
+
+    int value();
+  }
+
+  /**
+   * Binds the maximum time in milliseconds to run the commands of a stage.
+   */
+  @BindingAnnotation
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+  public @interface StageTimeout {
+
+  }
+
+  /**
+   * Binds the default maximum time in milliseconds to run a command.
+   */
+  @BindingAnnotation
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+  public @interface CommandTimeout {
+
+  }
+
+  /**
+   * Maximum time to run a command, overriding the default command timeout of the lifecycle. A value
+   * of 0 disables the timeout for the command.
+   */
+  @Inherited
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.TYPE)
+  public @interface Timeout {
+
+    long value();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+  }
 }
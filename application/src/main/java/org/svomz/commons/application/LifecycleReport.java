@@ -0,0 +1,174 @@
+package org.svomz.commons.application;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the time spent to bootstrap the application and to run each stage and command of its
+ * {@link Lifecycle}.
+ *
+ * A report is obtained with {@link Lifecycle#getReport()}. Its string representation lists the
+ * stages in the order they have been run and, for each of them, its commands from the slowest to
+ * the fastest.
+ */
+@Immutable
+public final class LifecycleReport {
+
+  private final List<Timing> bootstrapTimings;
+  private final Map<Lifecycle.Stage, Long> stageDurations;
+  private final List<CommandTiming> commandTimings;
+
+  LifecycleReport(final List<Timing> bootstrapTimings,
+    final Map<Lifecycle.Stage, Long> stageDurations, final List<CommandTiming> commandTimings) {
+    this.bootstrapTimings = ImmutableList.copyOf(bootstrapTimings);
+    this.stageDurations = ImmutableMap.copyOf(stageDurations);
+    this.commandTimings = ImmutableList.copyOf(commandTimings);
+  }
+
+  /**
+   * @return the timings of the steps run before the lifecycle is started, like the creation of the
+   * Guice injector by the {@link AppLauncher}.
+   */
+  public List<Timing> getBootstrapTimings() {
+    return this.bootstrapTimings;
+  }
+
+  /**
+   * @param stage a lifecycle stage
+   * @param unit the unit of the returned duration
+   * @return the time spent to run the commands of the stage or -1 if they have not been run yet.
+   */
+  public long getStageDuration(final Lifecycle.Stage stage, final TimeUnit unit) {
+    Preconditions.checkNotNull(stage);
+    Preconditions.checkNotNull(unit);
+
+    Long duration = this.stageDurations.get(stage);
+    return duration != null ? unit.convert(duration, TimeUnit.NANOSECONDS) : -1;
+  }
+
+  /**
+   * @return the timings of all the commands run, in the order they have completed.
+   */
+  public List<CommandTiming> getCommandTimings() {
+    return this.commandTimings;
+  }
+
+  /**
+   * @param stage a lifecycle stage
+   * @return the timings of the commands run at the given stage, in the order they have completed.
+   */
+  public List<CommandTiming> getCommandTimings(final Lifecycle.Stage stage) {
+    Preconditions.checkNotNull(stage);
+
+    List<CommandTiming> timings = new ArrayList<>();
+    for (CommandTiming timing : this.commandTimings) {
+      if (timing.getStage() == stage) {
+        timings.add(timing);
+      }
+    }
+    return timings;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder report = new StringBuilder("Lifecycle report");
+    for (Timing timing : this.bootstrapTimings) {
+      report.append(String.format("%n  %-60s %8d ms", timing.getName(),
+        timing.getDuration(TimeUnit.MILLISECONDS)));
+    }
+    for (Lifecycle.Stage stage : Lifecycle.Stage.values()) {
+      if (!this.stageDurations.containsKey(stage)) {
+        continue;
+      }
+      report.append(String.format("%n  %-60s %8d ms", stage,
+        this.getStageDuration(stage, TimeUnit.MILLISECONDS)));
+
+      List<CommandTiming> timings = this.getCommandTimings(stage);
+      Collections.sort(timings, CommandTiming.SLOWEST_FIRST);
+      for (CommandTiming timing : timings) {
+        report.append(String.format("%n    %-58s %8d ms %s", timing.getName(),
+          timing.getDuration(TimeUnit.MILLISECONDS), timing.getOutcome()));
+      }
+    }
+    return report.toString();
+  }
+
+  /**
+   * Time spent on a named step.
+   */
+  @Immutable
+  public static class Timing {
+
+    private final String name;
+    private final long duration;
+
+    Timing(final String name, final long duration) {
+      this.name = Preconditions.checkNotNull(name);
+      this.duration = duration;
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public long getDuration(final TimeUnit unit) {
+      return unit.convert(this.duration, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Time spent to run a command, named after its class, and how it ended.
+   */
+  @Immutable
+  public static final class CommandTiming extends Timing {
+
+    private static final Comparator<CommandTiming> SLOWEST_FIRST =
+      new Comparator<CommandTiming>() {
+        @Override
+        public int compare(CommandTiming timing1, CommandTiming timing2) {
+          return Long.compare(timing2.getDuration(TimeUnit.NANOSECONDS),
+            timing1.getDuration(TimeUnit.NANOSECONDS));
+        }
+      };
+
+    private final Lifecycle.Stage stage;
+    private final Outcome outcome;
+
+    CommandTiming(final Lifecycle.Stage stage, final String name, final long duration,
+      final Outcome outcome) {
+      super(name, duration);
+      this.stage = Preconditions.checkNotNull(stage);
+      this.outcome = Preconditions.checkNotNull(outcome);
+    }
+
+    public Lifecycle.Stage getStage() {
+      return this.stage;
+    }
+
+    public Outcome getOutcome() {
+      return this.outcome;
+    }
+  }
+
+  /**
+   * How the run of a command ended.
+   */
+  public static enum Outcome {
+    COMPLETED,
+    FAILED,
+    TIMED_OUT,
+    INTERRUPTED,
+    SKIPPED
+  }
+
+}
@@ -0,0 +1,87 @@
+package org.svomz.commons.application;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells whether the application is ready to serve traffic.
+ *
+ * An application is alive as soon as its {@link Lifecycle} is running, but it may still be
+ * initializing bindings deferred to the background (see
+ * {@link org.svomz.commons.application.modules.LifecycleModule#addDeferredBinding(com.google.inject.Binder, com.google.inject.Key)}).
+ * It becomes ready once these bindings are initialized and as long as the lifecycle is running.
+ */
+@ThreadSafe
+public final class Readiness {
+
+  // Commands of the lifecycle depend on the readiness.
+  private final Provider<Lifecycle> lifecycle;
+  private final CountDownLatch initialized;
+
+  private volatile Throwable failure;
+
+  @Inject
+  public Readiness(final Provider<Lifecycle> lifecycle) {
+    Preconditions.checkNotNull(lifecycle);
+
+    this.lifecycle = lifecycle;
+    this.initialized = new CountDownLatch(1);
+  }
+
+  /**
+   * @return true if the application is running.
+   */
+  public boolean isAlive() {
+    return this.lifecycle.get().isRunning();
+  }
+
+  /**
+   * @return true if the application is running and its deferred bindings are successfully
+   * initialized.
+   */
+  public boolean isReady() {
+    return this.isAlive() && this.initialized.getCount() == 0 && this.failure == null;
+  }
+
+  /**
+   * Blocks the calling thread until the deferred bindings are initialized or the timeout elapses.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return true if the application is ready, false otherwise
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public boolean awaitReady(final long timeout, final TimeUnit unit) throws InterruptedException {
+    Preconditions.checkNotNull(unit);
+
+    this.initialized.await(timeout, unit);
+    return this.isReady();
+  }
+
+  /**
+   * @return the exception thrown while initializing the deferred bindings, or null.
+   */
+  public Throwable getFailure() {
+    return this.failure;
+  }
+
+  /**
+   * Marks the deferred bindings as initialized.
+   *
+   * @param failure the exception thrown during their initialization, null if it succeeded
+   */
+  public synchronized void initialized(final Throwable failure) {
+    if (this.initialized.getCount() == 0) {
+      return;
+    }
+    this.failure = failure;
+    this.initialized.countDown();
+  }
+
+}
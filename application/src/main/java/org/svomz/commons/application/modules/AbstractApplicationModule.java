@@ -1,6 +1,7 @@
 package org.svomz.commons.application.modules;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Key;
 import org.svomz.commons.core.Command;
 
 public abstract class AbstractApplicationModule extends AbstractModule {
@@ -45,4 +46,14 @@ public abstract class AbstractApplicationModule extends AbstractModule {
     return this;
   }
 
+  public AbstractApplicationModule deferred(final Key<?> key) {
+    LifecycleModule.addDeferredBinding(binder(), key);
+    return this;
+  }
+
+  public AbstractApplicationModule deferred(final Class<?> type) {
+    LifecycleModule.addDeferredBinding(binder(), type);
+    return this;
+  }
+
 }
@@ -1,8 +1,11 @@
 package org.svomz.commons.application.modules;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
+import com.google.inject.BindingAnnotation;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
@@ -11,31 +14,136 @@ import com.google.inject.multibindings.Multibinder;
 import com.google.inject.servlet.GuiceFilter;
 import com.google.inject.servlet.GuiceServletContextListener;
 
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.svomz.commons.application.Lifecycle;
+import org.svomz.commons.application.Readiness;
 import org.svomz.commons.application.utils.Args;
 import org.svomz.commons.core.Command;
 import org.svomz.commons.net.http.HttpServer;
+import org.svomz.commons.net.http.HttpServerConfig;
 import org.svomz.commons.net.http.JettyHttpServer;
+import org.svomz.commons.net.http.metrics.MetricsServlet;
 
+import java.io.IOException;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletContextListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+/**
+ * Binds an {@link org.svomz.commons.net.http.HttpServer} and adds commands to the lifecycle to start
+ * and stop it.
+ *
+ * The server is tuned by an {@link org.svomz.commons.net.http.HttpServerConfig}, either given to the
+ * module or read from the following system properties:
+ * <ul>
+ *   <li>"http.port": the port the server listens to, required;</li>
+ *   <li>"http.threads.min" and "http.threads.max": the bounds of the request thread pool;</li>
+ *   <li>"http.threads.idle.timeout": the time in milliseconds after which an idle thread is stopped;</li>
+ *   <li>"http.queue.max": the maximum number of requests waiting for a thread, 0 for no limit;</li>
+ *   <li>"http.acceptors" and "http.selectors": the number of acceptor and selector threads;</li>
+ *   <li>"http.idle.timeout": the time in milliseconds after which an idle connection is closed;</li>
+ *   <li>"http.accept.queue.size": the size of the queue of connections waiting to be accepted;</li>
+ *   <li>"http.output.buffer.size": the size in bytes of the response buffer;</li>
+ *   <li>"http.threads.virtual": true to run each request on a virtual thread when the virtual
+ *   machine supports them;</li>
+ *   <li>"http.h2c": true to serve HTTP/2 over cleartext connections next to HTTP/1.1;</li>
+ *   <li>"http.h2.max.concurrent.streams": the maximum number of concurrent streams of an HTTP/2
+ *   connection;</li>
+ *   <li>"http.h2.initial.stream.window.size": the size in bytes of the initial flow control window
+ *   of an HTTP/2 stream;</li>
+ *   <li>"http.tls.port", "http.tls.keystore" and "http.tls.keystore.password": the port serving
+ *   HTTP/2 and HTTP/1.1 over TLS and the keystore holding the certificate of the server, TLS is
+ *   enabled when the keystore is set;</li>
+ *   <li>"http.compression": true to gzip the responses for the clients accepting it;</li>
+ *   <li>"http.compression.min.size": the size in bytes under which a response is not compressed;</li>
+ *   <li>"http.compression.level": the level of compression, from 1 to 9, -1 for the default;</li>
+ *   <li>"http.compression.mime.types": the comma separated MIME types of the compressed
+ *   responses;</li>
+ *   <li>"http.precompressed.encodings": the comma separated encodings of the precompressed
+ *   variants of static content, by order of preference.</li>
+ * </ul>
+ *
+ * The server exposes the liveness and the readiness of the application on the paths set by the
+ * "http.health.live.path" and "http.health.ready.path" system properties, like "/health/live" and
+ * "/health/ready", each check is not exposed when its path is unset. Both respond 200 when the check passes and 503 otherwise. The application is
+ * alive as soon as the lifecycle is running and ready once its deferred bindings are initialized,
+ * see {@link org.svomz.commons.application.Readiness}.
+ *
+ * The metrics of the requests handled by the server are exposed in the Prometheus text format on
+ * the path set by the "http.metrics.path" system property, like "/metrics", and not exposed when
+ * it is unset, see {@link org.svomz.commons.net.http.metrics.RequestMetrics}. The latencies are
+ * recorded by route for at most the number of routes set by the "http.metrics.max.routes" system
+ * property.
+ *
+ * When the lifecycle is stopping the server stops accepting connections and waits for the in-flight
+ * requests to complete for at most the time in milliseconds configured by the
+ * "http.shutdown.timeout" system property, 30 seconds by default.
+ */
 public class HttpServerModule extends AbstractModule {
 
+  private static final Logger LOG = Logger.getLogger(HttpServerModule.class.getName());
+
+  public static final String LIVENESS_PATH_PROPERTY = "http.health.live.path";
+  public static final String READINESS_PATH_PROPERTY = "http.health.ready.path";
+  public static final String METRICS_PATH_PROPERTY = "http.metrics.path";
+  public static final String SHUTDOWN_TIMEOUT_PROPERTY = "http.shutdown.timeout";
+  public static final long DEFAULT_SHUTDOWN_TIMEOUT = 30000;
+
+  private final HttpServerConfig config;
+
+  /**
+   * Configures the server from system properties.
+   */
+  public HttpServerModule() {
+    this.config = null;
+  }
+
+  /**
+   * @param config the configuration of the server
+   */
+  public HttpServerModule(final HttpServerConfig config) {
+    this.config = Preconditions.checkNotNull(config);
+  }
+
   @Override
   protected void configure() {
-    Args.integer(this.binder(), "http.port");
+    if (this.config != null) {
+      this.bind(HttpServerConfig.class).toInstance(this.config);
+    } else {
+      Args.integer(this.binder(), "http.port");
+      this.bind(HttpServerConfig.class).toProvider(SystemPropertiesConfigProvider.class)
+        .in(Singleton.class);
+    }
 
     this.bind(HttpServer.class).toProvider(new Provider<HttpServer>() {
       @Inject
-      @Args.Cmd
-      private int port;
+      private HttpServerConfig config;
 
       @Override
       public HttpServer get() {
-        return new JettyHttpServer(this.port);
+        return new JettyHttpServer(this.config);
       }
     }).in(Singleton.class);
+    this.bind(Long.class).annotatedWith(ShutdownTimeout.class)
+      .toInstance(Long.getLong(SHUTDOWN_TIMEOUT_PROPERTY, DEFAULT_SHUTDOWN_TIMEOUT));
+    this.bind(String.class).annotatedWith(LivenessPath.class)
+      .toInstance(System.getProperty(LIVENESS_PATH_PROPERTY, ""));
+    this.bind(String.class).annotatedWith(ReadinessPath.class)
+      .toInstance(System.getProperty(READINESS_PATH_PROPERTY, ""));
+    this.bind(String.class).annotatedWith(MetricsPath.class)
+      .toInstance(System.getProperty(METRICS_PATH_PROPERTY, ""));
 
     HttpServerModule.addContextListener(this.binder(), AppServletConfig.class);
     LifecycleModule.addStartingCommand(binder(), HttpServerLauncher.class);
@@ -54,19 +162,99 @@ public class HttpServerModule extends AbstractModule {
     return Multibinder.newSetBinder(binder, ServletContextListener.class);
   }
 
+  /**
+   * Reads the configuration of the server from system properties.
+   */
+  protected static class SystemPropertiesConfigProvider implements Provider<HttpServerConfig> {
+
+    private final int port;
+
+    @Inject
+    public SystemPropertiesConfigProvider(@Args.Cmd final int port) {
+      this.port = port;
+    }
+
+    @Override
+    public HttpServerConfig get() {
+      HttpServerConfig.Builder builder = HttpServerConfig.builder(this.port)
+        .threads(Integer.getInteger("http.threads.min", HttpServerConfig.DEFAULT_MIN_THREADS),
+          Integer.getInteger("http.threads.max", HttpServerConfig.DEFAULT_MAX_THREADS))
+        .threadIdleTimeout(Integer.getInteger("http.threads.idle.timeout",
+          HttpServerConfig.DEFAULT_THREAD_IDLE_TIMEOUT))
+        .maxQueuedRequests(Integer.getInteger("http.queue.max",
+          HttpServerConfig.DEFAULT_MAX_QUEUED_REQUESTS))
+        .acceptors(Integer.getInteger("http.acceptors", HttpServerConfig.DEFAULT_ACCEPTORS))
+        .selectors(Integer.getInteger("http.selectors", HttpServerConfig.DEFAULT_SELECTORS))
+        .idleTimeout(Long.getLong("http.idle.timeout", HttpServerConfig.DEFAULT_IDLE_TIMEOUT))
+        .acceptQueueSize(Integer.getInteger("http.accept.queue.size",
+          HttpServerConfig.DEFAULT_ACCEPT_QUEUE_SIZE))
+        .outputBufferSize(Integer.getInteger("http.output.buffer.size",
+          HttpServerConfig.DEFAULT_OUTPUT_BUFFER_SIZE))
+        .virtualThreads(Boolean.getBoolean("http.threads.virtual"))
+        .http2Cleartext(Boolean.getBoolean("http.h2c"))
+        .maxConcurrentStreams(Integer.getInteger("http.h2.max.concurrent.streams",
+          HttpServerConfig.DEFAULT_MAX_CONCURRENT_STREAMS))
+        .initialStreamWindowSize(Integer.getInteger("http.h2.initial.stream.window.size",
+          HttpServerConfig.DEFAULT_INITIAL_STREAM_WINDOW_SIZE))
+        .compression(Boolean.getBoolean("http.compression"))
+        .compressionMinSize(Integer.getInteger("http.compression.min.size",
+          HttpServerConfig.DEFAULT_COMPRESSION_MIN_SIZE))
+        .compressionLevel(Integer.getInteger("http.compression.level",
+          HttpServerConfig.DEFAULT_COMPRESSION_LEVEL))
+        .maxRoutes(Integer.getInteger("http.metrics.max.routes",
+          HttpServerConfig.DEFAULT_MAX_ROUTES));
+
+      String mimeTypes = System.getProperty("http.compression.mime.types");
+      if (mimeTypes != null) {
+        builder.compressedMimeTypes(SystemPropertiesConfigProvider.split(mimeTypes));
+      }
+      String encodings = System.getProperty("http.precompressed.encodings");
+      if (encodings != null) {
+        builder.precompressedEncodings(SystemPropertiesConfigProvider.split(encodings));
+      }
+
+      String keyStorePath = System.getProperty("http.tls.keystore");
+      if (keyStorePath != null) {
+        Integer securePort = Integer.getInteger("http.tls.port");
+        Preconditions.checkState(securePort != null, "http.tls.port is required with TLS.");
+        builder.tls(securePort, keyStorePath, System.getProperty("http.tls.keystore.password", ""));
+      }
+      return builder.build();
+    }
+
+    private static String[] split(final String values) {
+      return Iterables.toArray(Splitter.on(',').trimResults().omitEmptyStrings().split(values),
+        String.class);
+    }
+  }
+
   protected static class HttpServerLauncher implements Command {
 
     private final HttpServer httpServer;
     private final Set<ServletContextListener> contextListeners;
+    private final Readiness readiness;
+    private final String livenessPath;
+    private final String readinessPath;
+    private final String metricsPath;
 
     @Inject
     public HttpServerLauncher(final HttpServer httpServer,
-      final Set<ServletContextListener> contextListeners) {
+      final Set<ServletContextListener> contextListeners, final Readiness readiness,
+      @LivenessPath final String livenessPath, @ReadinessPath final String readinessPath,
+      @MetricsPath final String metricsPath) {
       Preconditions.checkNotNull(httpServer);
       Preconditions.checkNotNull(contextListeners);
+      Preconditions.checkNotNull(readiness);
+      Preconditions.checkNotNull(livenessPath);
+      Preconditions.checkNotNull(readinessPath);
+      Preconditions.checkNotNull(metricsPath);
 
       this.httpServer = httpServer;
       this.contextListeners = contextListeners;
+      this.readiness = readiness;
+      this.livenessPath = livenessPath;
+      this.readinessPath = readinessPath;
+      this.metricsPath = metricsPath;
     }
 
     @Override
@@ -77,33 +265,92 @@ public class HttpServerModule extends AbstractModule {
       for (ServletContextListener contextListener : this.contextListeners) {
         this.httpServer.registerListener(contextListener);
       }
+      if (!this.livenessPath.isEmpty()) {
+        this.httpServer.registerServlet(
+          new ServletHolder(new HealthServlet(this.readiness, false)), this.livenessPath);
+      }
+      if (!this.readinessPath.isEmpty()) {
+        this.httpServer.registerServlet(
+          new ServletHolder(new HealthServlet(this.readiness, true)), this.readinessPath);
+      }
+      if (!this.metricsPath.isEmpty()) {
+        this.httpServer.registerServlet(
+          new ServletHolder(new MetricsServlet(this.httpServer.getRequestMetrics())),
+          this.metricsPath);
+      }
 
       this.httpServer.start();
     }
   }
 
-  protected static class HttpServerKiller implements Command {
+  /**
+   * Drains the in-flight requests and stops the http server.
+   *
+   * The request stopping the lifecycle, if any, is not waited for: it completes once the lifecycle
+   * is stopped.
+   */
+  protected static class HttpServerKiller implements LifecycleModule.DrainingCommand {
 
     private final HttpServer httpServer;
+    private final Provider<Lifecycle> lifecycle;
+    private final long shutdownTimeout;
+
     @Inject
-    public HttpServerKiller(final HttpServer httpServer) {
+    public HttpServerKiller(final HttpServer httpServer, final Provider<Lifecycle> lifecycle,
+      @ShutdownTimeout final long shutdownTimeout) {
       Preconditions.checkNotNull(httpServer);
+      Preconditions.checkNotNull(lifecycle);
+      Preconditions.checkArgument(shutdownTimeout >= 0, "Shutdown timeout can't be negative.");
 
       this.httpServer = httpServer;
+      this.lifecycle = lifecycle;
+      this.shutdownTimeout = shutdownTimeout;
     }
 
     @Override
     public void run() {
-      new Thread(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            Thread.currentThread().sleep(1000);
-            HttpServerKiller.this.httpServer.stop();
-          } catch (Exception e) {
-          }
-        }
-      }).start();
+      if (!this.httpServer.isRunning()) {
+        return;
+      }
+      Thread stoppingThread = this.lifecycle.get().getStoppingThread();
+      Future<Void> drained = this.httpServer.stopAsync(this.shutdownTimeout, TimeUnit.MILLISECONDS,
+        stoppingThread != null ? stoppingThread : Thread.currentThread());
+      try {
+        drained.get(this.shutdownTimeout, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException ex) {
+        throw new IllegalStateException(ex.getCause());
+      } catch (TimeoutException ex) {
+        LOG.warning("The in-flight requests have not completed within the shutdown timeout.");
+      }
+    }
+  }
+
+  /**
+   * Responds 200 if the application is alive, or ready, and 503 otherwise.
+   */
+  @SuppressWarnings("serial")
+  protected static class HealthServlet extends HttpServlet {
+
+    private final Readiness readiness;
+    private final boolean checkReadiness;
+
+    public HealthServlet(final Readiness readiness, final boolean checkReadiness) {
+      Preconditions.checkNotNull(readiness);
+
+      this.readiness = readiness;
+      this.checkReadiness = checkReadiness;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+      boolean healthy = this.checkReadiness ? this.readiness.isReady() : this.readiness.isAlive();
+      response.setContentType("text/plain");
+      response.setStatus(healthy ? HttpServletResponse.SC_OK
+        : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      response.getWriter().println(healthy ? "ok" : "unavailable");
     }
   }
 
@@ -124,4 +371,44 @@ public class HttpServerModule extends AbstractModule {
     }
   }
 
+  /**
+   * Binds the maximum time in milliseconds to wait for in-flight requests when stopping the server.
+   */
+  @BindingAnnotation
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+  public @interface ShutdownTimeout {
+
+  }
+
+  /**
+   * Binds the path on which the liveness of the application is exposed, empty if it is not.
+   */
+  @BindingAnnotation
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+  public @interface LivenessPath {
+
+  }
+
+  /**
+   * Binds the path on which the readiness of the application is exposed, empty if it is not.
+   */
+  @BindingAnnotation
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+  public @interface ReadinessPath {
+
+  }
+
+  /**
+   * Binds the path on which the metrics of the server are exposed, empty if they are not.
+   */
+  @BindingAnnotation
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+  public @interface MetricsPath {
+
+  }
+
 }
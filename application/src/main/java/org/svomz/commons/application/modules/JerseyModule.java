@@ -1,6 +1,7 @@
 package org.svomz.commons.application.modules;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
 import com.google.inject.Inject;
@@ -9,13 +10,19 @@ import com.google.inject.TypeLiteral;
 
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.jersey.server.ExtendedUriInfo;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
 import org.glassfish.jersey.servlet.ServletContainer;
+import org.glassfish.jersey.uri.UriTemplate;
 import org.jvnet.hk2.guice.bridge.api.GuiceBridge;
 import org.jvnet.hk2.guice.bridge.api.GuiceIntoHK2Bridge;
 import org.svomz.commons.core.Command;
 import org.svomz.commons.net.http.HttpServer;
+import org.svomz.commons.net.http.metrics.RequestMetrics;
 
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.core.Feature;
 import javax.ws.rs.core.FeatureContext;
 
@@ -28,6 +35,10 @@ import javax.ws.rs.core.FeatureContext;
  * To properly configure Jersey you need to configure the resource config class to use. This is achived
  * by calling {@link org.svomz.commons.application.modules.JerseyModule#resourceConfig(com.google.inject.Binder, Class)}
  * from your application module.
+ *
+ * The latencies of the requests served by Jersey are recorded in the
+ * {@link org.svomz.commons.net.http.metrics.RequestMetrics} of the server by the template of the
+ * matched resource, like "/places/{id}", see {@link RouteFilter}.
  */
 public class JerseyModule extends AbstractModule {
 
@@ -84,7 +95,8 @@ public class JerseyModule extends AbstractModule {
      * to a {@link org.svomz.commons.net.http.HttpServer}.
      *
      * It also configures the "javax.ws.rs.Application" initialization property of the ServletContainer
-     * to the fully qualified name of a {@link org.glassfish.jersey.server.ResourceConfig}.
+     * to the fully qualified name of a {@link org.glassfish.jersey.server.ResourceConfig}, and
+     * registers the {@link RouteFilter}.
      *
      * After this command have been successfully run the Jersey's resources defined in the {@link org.glassfish.jersey.server.ResourceConfig}
      * are deployed onto the {@link org.svomz.commons.net.http.HttpServer}.
@@ -96,11 +108,45 @@ public class JerseyModule extends AbstractModule {
     public void run() {
       ServletHolder servletHolder = new ServletHolder(ServletContainer.class);
       servletHolder.setInitParameter("javax.ws.rs.Application", this.resourceConfig.getName());
+      servletHolder.setInitParameter(ServerProperties.PROVIDER_CLASSNAMES,
+        RouteFilter.class.getName());
 
       this.httpServer.registerServlet(servletHolder, "/*");
     }
   }
 
+  /**
+   * Sets the route of the requests matching a resource to the template of the resource, prefixed by
+   * the path of the Jersey servlet, in the {@link RequestMetrics#ROUTE_ATTRIBUTE} request attribute.
+   * Otherwise all the requests served by Jersey would be recorded under the path spec of its servlet.
+   */
+  public static final class RouteFilter implements ContainerRequestFilter {
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+      ExtendedUriInfo uriInfo = (ExtendedUriInfo) requestContext.getUriInfo();
+      StringBuilder route = new StringBuilder(uriInfo.getBaseUri().getPath());
+      // The templates are ordered from the last matched to the first.
+      for (UriTemplate template : Lists.reverse(uriInfo.getMatchedTemplates())) {
+        RouteFilter.append(route, template.getTemplate());
+      }
+      if (route.length() == 0) {
+        route.append('/');
+      }
+      requestContext.setProperty(RequestMetrics.ROUTE_ATTRIBUTE, route.toString());
+    }
+
+    private static void append(final StringBuilder route, final String template) {
+      if (route.length() > 0 && route.charAt(route.length() - 1) == '/') {
+        route.setLength(route.length() - 1);
+      }
+      if (!template.isEmpty() && template.charAt(0) != '/') {
+        route.append('/');
+      }
+      route.append(template);
+    }
+  }
+
   /**
    * Configures the {@link org.glassfish.hk2.api.ServiceLocator} injected by Jersey to be able to inject
    * the application's Guice services.
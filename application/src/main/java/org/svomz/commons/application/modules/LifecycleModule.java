@@ -1,22 +1,149 @@
 package org.svomz.commons.application.modules;
 
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
 import org.svomz.commons.application.Lifecycle;
+import org.svomz.commons.application.Readiness;
 import org.svomz.commons.core.Command;
+import org.svomz.commons.core.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Binds the application {@link org.svomz.commons.application.Lifecycle} and the sets of commands
+ * run at each of its stages.
+ *
+ * The maximum number of commands of a stage running concurrently can be configured with the
+ * "lifecycle.parallelism" system property. It defaults to the number of available processors.
+ *
+ * The maximum time in milliseconds to run the commands of a stage and the default maximum time to
+ * run a command can be configured with the "lifecycle.stage.timeout" and "lifecycle.command.timeout"
+ * system properties. Both default to 0, meaning no limit.
+ *
+ * Bindings expensive to initialize can be deferred with
+ * {@link #addDeferredBinding(com.google.inject.Binder, com.google.inject.Key)}. They are initialized
+ * in the background once the lifecycle is running, that is after the starting commands like the one
+ * binding the http port have been run, and the {@link org.svomz.commons.application.Readiness} of
+ * the application is reported once they are. A deferred binding is only deferred if nothing
+ * requires it before: it should not be an eager singleton, and the injector should be created in
+ * the {@link com.google.inject.Stage#DEVELOPMENT} stage as singletons are eagerly created in
+ * {@link com.google.inject.Stage#PRODUCTION}.
+ */
 public class LifecycleModule extends AbstractModule {
+
+  private static final Logger LOG = Logger.getLogger(LifecycleModule.class.getName());
+
+  public static final String PARALLELISM_PROPERTY = "lifecycle.parallelism";
+  public static final String STAGE_TIMEOUT_PROPERTY = "lifecycle.stage.timeout";
+  public static final String COMMAND_TIMEOUT_PROPERTY = "lifecycle.command.timeout";
+
   @Override
   protected void configure() {
     this.bind(Lifecycle.class).in(Singleton.class);
+    this.bind(Integer.class).annotatedWith(Lifecycle.Parallelism.class)
+      .toInstance(Integer.getInteger(PARALLELISM_PROPERTY, Lifecycle.DEFAULT_PARALLELISM));
+    this.bind(Long.class).annotatedWith(Lifecycle.StageTimeout.class)
+      .toInstance(Long.getLong(STAGE_TIMEOUT_PROPERTY, 0L));
+    this.bind(Long.class).annotatedWith(Lifecycle.CommandTimeout.class)
+      .toInstance(Long.getLong(COMMAND_TIMEOUT_PROPERTY, 0L));
+    this.bind(Readiness.class).in(Singleton.class);
     // Add default binding to empty sets.
     LifecycleModule.startingCommandBinder(binder());
     LifecycleModule.runningCommandBinder(binder());
     LifecycleModule.stoppingCommandBinder(binder());
     LifecycleModule.terminatedCommandBinder(binder());
+    LifecycleModule.deferredBindingBinder(binder());
+    LifecycleModule.addRunningCommand(binder(), DeferredBindingInitializer.class);
+  }
+
+  /**
+   * Defers the initialization of a binding to the background once the lifecycle is running.
+   *
+   * @param binder the binder of the module declaring the binding
+   * @param key the key of the binding
+   */
+  public static void addDeferredBinding(final Binder binder, final Key<?> key) {
+    LifecycleModule.deferredBindingBinder(binder).addBinding().toInstance(new DeferredBinding(key));
+  }
+
+  /**
+   * Defers the initialization of a binding to the background once the lifecycle is running.
+   *
+   * @param binder the binder of the module declaring the binding
+   * @param type the bound type
+   */
+  public static void addDeferredBinding(final Binder binder, final Class<?> type) {
+    LifecycleModule.addDeferredBinding(binder, Key.get(type));
+  }
+
+  /**
+   * Starts a service with the starting commands and stops it with the stopping commands, like a
+   * write-behind repository which writes its buffered changes when it is stopped.
+   *
+   * The service is stopped once the {@link DrainingCommand}s, like the one of the http server, have
+   * drained the work in progress, so that it can still use the service. The services are stopped concurrently with each other
+   * and with the other stopping commands which don't depend on them.
+   *
+   * @param binder the binder of the module declaring the service
+   * @param key the key of the binding of the service
+   */
+  public static void addService(final Binder binder, final Key<? extends Service> key) {
+    LifecycleModule.addStartingCommand(binder, new ServiceStarter(key));
+    LifecycleModule.addStoppingCommand(binder, new ServiceStopper(key));
+  }
+
+  /**
+   * Starts a service with the starting commands and stops it with the stopping commands, once the
+   * {@link DrainingCommand}s are run.
+   *
+   * @param binder the binder of the module declaring the service
+   * @param type the bound type of the service
+   */
+  public static void addService(final Binder binder, final Class<? extends Service> type) {
+    LifecycleModule.addService(binder, Key.get(type));
+  }
+
+  /**
+   * Starts a service with the starting commands and stops it with the terminated commands, once
+   * the stopping commands have drained the requests and stopped the services added with
+   * {@link #addService(Binder, Key)}, like a pool of connections they use.
+   *
+   * @param binder the binder of the module declaring the service
+   * @param key the key of the binding of the service
+   */
+  public static void addTerminatedService(final Binder binder, final Key<? extends Service> key) {
+    LifecycleModule.addStartingCommand(binder, new ServiceStarter(key));
+    LifecycleModule.addTerminatedCommand(binder, new ServiceStopper(key));
+  }
+
+  /**
+   * Starts a service with the starting commands and stops it with the terminated commands.
+   *
+   * @param binder the binder of the module declaring the service
+   * @param type the bound type of the service
+   */
+  public static void addTerminatedService(final Binder binder,
+    final Class<? extends Service> type) {
+    LifecycleModule.addTerminatedService(binder, Key.get(type));
   }
 
   public static void addStartingCommand(final Binder binder, final Command command) {
@@ -66,4 +193,166 @@ public class LifecycleModule extends AbstractModule {
   private static Multibinder<Command> terminatedCommandBinder(final Binder binder) {
     return Multibinder.newSetBinder(binder, Command.class, Lifecycle.TerminatedCommand.class);
   }
+
+  private static Multibinder<DeferredBinding> deferredBindingBinder(final Binder binder) {
+    return Multibinder.newSetBinder(binder, DeferredBinding.class);
+  }
+
+  /**
+   * Initializes the deferred bindings in the background and reports the readiness of the
+   * application once they are.
+   */
+  protected static class DeferredBindingInitializer implements Command {
+
+    private final Injector injector;
+    private final Set<DeferredBinding> deferredBindings;
+    private final Readiness readiness;
+    private final int parallelism;
+
+    @Inject
+    public DeferredBindingInitializer(final Injector injector,
+      final Set<DeferredBinding> deferredBindings, final Readiness readiness,
+      @Lifecycle.Parallelism final int parallelism) {
+      Preconditions.checkNotNull(injector);
+      Preconditions.checkNotNull(deferredBindings);
+      Preconditions.checkNotNull(readiness);
+
+      this.injector = injector;
+      this.deferredBindings = deferredBindings;
+      this.readiness = readiness;
+      this.parallelism = parallelism;
+    }
+
+    @Override
+    public void run() {
+      if (this.deferredBindings.isEmpty()) {
+        this.readiness.initialized(null);
+        return;
+      }
+
+      ListeningExecutorService executor = MoreExecutors.listeningDecorator(
+        Executors.newFixedThreadPool(Math.min(this.parallelism, this.deferredBindings.size()),
+          new ThreadFactoryBuilder().setNameFormat("deferred-binding-%d").setDaemon(true).build()));
+      List<ListenableFuture<Object>> initializations = new ArrayList<>();
+      for (DeferredBinding deferredBinding : this.deferredBindings) {
+        final Key<?> key = deferredBinding.key;
+        initializations.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() {
+            long start = System.nanoTime();
+            Object instance = DeferredBindingInitializer.this.injector.getInstance(key);
+            LOG.info(String.format("Deferred binding %s initialized in %d ms", key,
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            return instance;
+          }
+        }));
+      }
+      executor.shutdown();
+
+      Futures.addCallback(Futures.allAsList(initializations), new FutureCallback<List<Object>>() {
+        @Override
+        public void onSuccess(List<Object> instances) {
+          DeferredBindingInitializer.this.readiness.initialized(null);
+        }
+
+        @Override
+        public void onFailure(Throwable failure) {
+          LOG.log(Level.SEVERE, "Deferred bindings initialization failed.", failure);
+          DeferredBindingInitializer.this.readiness.initialized(failure);
+        }
+      });
+    }
+  }
+
+  /**
+   * Starts or stops a service.
+   */
+  protected abstract static class ServiceCommand implements Command {
+
+    private final Key<? extends Service> key;
+
+    @Inject
+    private Injector injector;
+
+    private ServiceCommand(final Key<? extends Service> key) {
+      this.key = Preconditions.checkNotNull(key);
+    }
+
+    @Override
+    public void run() {
+      Preconditions.checkState(this.injector != null, "Service command is not injected.");
+
+      this.run(this.injector.getInstance(this.key));
+    }
+
+    protected abstract void run(Service service);
+
+    protected Key<? extends Service> getKey() {
+      return this.key;
+    }
+  }
+
+  /**
+   * Starts a service.
+   */
+  protected static final class ServiceStarter extends ServiceCommand {
+
+    private ServiceStarter(final Key<? extends Service> key) {
+      super(key);
+    }
+
+    @Override
+    protected void run(final Service service) {
+      service.start();
+    }
+
+    @Override
+    public String toString() {
+      return "Start " + this.getKey();
+    }
+  }
+
+  /**
+   * Stops a service once the work in progress is drained.
+   */
+  @Lifecycle.DependsOn(DrainingCommand.class)
+  protected static final class ServiceStopper extends ServiceCommand {
+
+    private ServiceStopper(final Key<? extends Service> key) {
+      super(key);
+    }
+
+    @Override
+    protected void run(final Service service) {
+      if (service.isRunning()) {
+        service.stop();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Stop " + this.getKey();
+    }
+  }
+
+  /**
+   * A stopping command draining the work in progress, like the in-flight requests of a server. The
+   * services added with {@link #addService(Binder, Key)} are stopped once the draining commands are
+   * run.
+   */
+  public interface DrainingCommand extends Command {
+
+  }
+
+  /**
+   * Key of a binding to initialize in the background.
+   */
+  protected static final class DeferredBinding {
+
+    private final Key<?> key;
+
+    private DeferredBinding(final Key<?> key) {
+      this.key = Preconditions.checkNotNull(key);
+    }
+  }
 }
@@ -5,7 +5,11 @@ import org.junit.Test;
 import org.svomz.commons.core.Command;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -118,4 +122,370 @@ public class LifecycleUnitTest {
     Assert.assertFalse(lifecycle.isRunning());
   }
 
+  @Test
+  public void testAwaitTermination() throws InterruptedException {
+    final Lifecycle lifecycle = Lifecycle.builder().build();
+    lifecycle.start();
+
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(10);
+          lifecycle.stop();
+        } catch (InterruptedException e) {
+          e.printStackTrace();
+        }
+      }
+    }).start();
+
+    lifecycle.awaitTermination();
+    Assert.assertEquals(Lifecycle.Stage.TERMINATED, lifecycle.getStage());
+  }
+
+  @Test
+  public void testAwaitTerminationTimeout() throws InterruptedException {
+    Lifecycle lifecycle = Lifecycle.builder().build();
+    lifecycle.start();
+
+    Assert.assertFalse(lifecycle.awaitTermination(10, TimeUnit.MILLISECONDS));
+    lifecycle.stop();
+    Assert.assertTrue(lifecycle.awaitTermination(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testAwaitStageAlreadyPassed() throws InterruptedException {
+    Lifecycle lifecycle = Lifecycle.builder().build();
+    lifecycle.start();
+    lifecycle.stop();
+
+    lifecycle.awaitStage(Lifecycle.Stage.RUNNING);
+    Assert.assertEquals(Lifecycle.Stage.TERMINATED, lifecycle.getStage());
+  }
+
+  @Test
+  public void testDependenciesAndPriorities() {
+    List<String> trace = Collections.synchronizedList(new ArrayList<String>());
+
+    Lifecycle lifecycle = Lifecycle.builder()
+        .parallelism(1)
+        .addStartingCommands(new Server(trace), new Pool(trace), new Cache(trace))
+        .build();
+    lifecycle.start();
+
+    Assert.assertEquals(Arrays.asList("cache", "pool", "server"), trace);
+  }
+
+  @Test
+  public void testDependenciesWithParallelism() {
+    for (int i = 0; i < 20; i++) {
+      List<String> trace = Collections.synchronizedList(new ArrayList<String>());
+
+      Lifecycle lifecycle = Lifecycle.builder()
+          .parallelism(4)
+          .addStartingCommands(new Server(trace), new Pool(trace), new Cache(trace))
+          .build();
+      lifecycle.start();
+
+      Assert.assertEquals(3, trace.size());
+      Assert.assertEquals("server", trace.get(2));
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testIndependentCommandsRunConcurrently() {
+    final CountDownLatch latch = new CountDownLatch(2);
+    Command command = new Command() {
+      @Override
+      public void run() {
+        latch.countDown();
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    Command otherCommand = new Command() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    };
+
+    Lifecycle lifecycle = Lifecycle.builder()
+        .parallelism(2)
+        .addStartingCommands(command, otherCommand)
+        .build();
+    lifecycle.start();
+
+    Assert.assertTrue(lifecycle.isRunning());
+  }
+
+  @Test
+  public void testStartingCommandFailure() {
+    List<String> trace = Collections.synchronizedList(new ArrayList<String>());
+    Command failing = new Pool(trace) {
+      @Override
+      public void run() {
+        throw new IllegalArgumentException("pool");
+      }
+    };
+
+    Lifecycle lifecycle = Lifecycle.builder()
+        .parallelism(2)
+        .addStartingCommands(failing, new Server(trace))
+        .build();
+    try {
+      lifecycle.start();
+      Assert.fail();
+    } catch (IllegalArgumentException ex) {
+      Assert.assertEquals("pool", ex.getMessage());
+    }
+    Assert.assertTrue(trace.isEmpty());
+    Assert.assertEquals(Lifecycle.Stage.STARTING, lifecycle.getStage());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCyclicDependencies() {
+    Lifecycle.builder().addStartingCommands(new Ping(), new Pong()).build();
+  }
+
+  @Test(timeout = 5000)
+  public void testStoppingCommandTimeout() {
+    Command stoppingCommand = mock(Command.class);
+
+    Lifecycle lifecycle = Lifecycle.builder()
+        .parallelism(1)
+        .commandTimeout(50, TimeUnit.MILLISECONDS)
+        .addStoppingCommands(new Hanging(), stoppingCommand)
+        .build();
+    lifecycle.start();
+    lifecycle.stop();
+
+    verify(stoppingCommand).run();
+    Assert.assertEquals(Lifecycle.Stage.TERMINATED, lifecycle.getStage());
+  }
+
+  @Test(timeout = 5000)
+  public void testStageTimeout() {
+    Lifecycle lifecycle = Lifecycle.builder()
+        .stageTimeout(50, TimeUnit.MILLISECONDS)
+        .addStoppingCommands(new Hanging(), new Hanging())
+        .build();
+    lifecycle.start();
+    lifecycle.stop();
+
+    Assert.assertEquals(Lifecycle.Stage.TERMINATED, lifecycle.getStage());
+  }
+
+  @Test(timeout = 5000)
+  public void testSubMillisecondCommandTimeout() {
+    Lifecycle lifecycle = Lifecycle.builder()
+        .commandTimeout(500, TimeUnit.MICROSECONDS)
+        .addStoppingCommands(new Hanging())
+        .build();
+    lifecycle.start();
+    lifecycle.stop();
+
+    Assert.assertEquals(Lifecycle.Stage.TERMINATED, lifecycle.getStage());
+  }
+
+  @Test(timeout = 5000, expected = IllegalStateException.class)
+  public void testStartingCommandTimeout() {
+    Lifecycle lifecycle = Lifecycle.builder()
+        .commandTimeout(50, TimeUnit.MILLISECONDS)
+        .addStartingCommands(new Hanging())
+        .build();
+    lifecycle.start();
+  }
+
+  @Test(timeout = 5000)
+  public void testCommandTimeoutAnnotation() {
+    Lifecycle lifecycle = Lifecycle.builder()
+        .addStoppingCommands(new QuicklyTimedOut())
+        .build();
+    lifecycle.start();
+    lifecycle.stop();
+
+    Assert.assertEquals(Lifecycle.Stage.TERMINATED, lifecycle.getStage());
+  }
+
+  @Test
+  public void testReport() {
+    List<String> trace = Collections.synchronizedList(new ArrayList<String>());
+    Command failing = new Pool(trace) {
+      @Override
+      public void run() {
+        throw new IllegalArgumentException("pool");
+      }
+    };
+
+    Lifecycle lifecycle = Lifecycle.builder()
+        .addStartingCommands(new Cache(trace))
+        .addStoppingCommands(failing)
+        .build();
+    lifecycle.recordBootstrap("injector", 5, TimeUnit.MILLISECONDS);
+    lifecycle.start();
+    lifecycle.stop();
+
+    LifecycleReport report = lifecycle.getReport();
+    Assert.assertEquals(1, report.getBootstrapTimings().size());
+    Assert.assertEquals(5, report.getBootstrapTimings().get(0).getDuration(TimeUnit.MILLISECONDS));
+    Assert.assertTrue(report.getStageDuration(Lifecycle.Stage.STARTING, TimeUnit.NANOSECONDS) >= 0);
+    Assert.assertEquals(-1, report.getStageDuration(Lifecycle.Stage.NEW, TimeUnit.NANOSECONDS));
+
+    List<LifecycleReport.CommandTiming> starting = report.getCommandTimings(Lifecycle.Stage.STARTING);
+    Assert.assertEquals(1, starting.size());
+    Assert.assertEquals(Cache.class.getName(), starting.get(0).getName());
+    Assert.assertEquals(LifecycleReport.Outcome.COMPLETED, starting.get(0).getOutcome());
+
+    List<LifecycleReport.CommandTiming> stopping = report.getCommandTimings(Lifecycle.Stage.STOPPING);
+    Assert.assertEquals(1, stopping.size());
+    Assert.assertEquals(LifecycleReport.Outcome.FAILED, stopping.get(0).getOutcome());
+    Assert.assertTrue(report.toString().contains(Cache.class.getName()));
+  }
+
+  @Test(timeout = 5000)
+  public void testReportTimedOutAndSkippedCommands() {
+    List<String> trace = Collections.synchronizedList(new ArrayList<String>());
+    Command hangingPool = new Pool(trace) {
+      @Override
+      public void run() {
+        new Hanging().run();
+      }
+    };
+
+    Lifecycle lifecycle = Lifecycle.builder()
+        .stageTimeout(50, TimeUnit.MILLISECONDS)
+        .addStoppingCommands(hangingPool, new Server(trace))
+        .build();
+    lifecycle.start();
+    lifecycle.stop();
+
+    List<LifecycleReport.CommandTiming> timings =
+        lifecycle.getReport().getCommandTimings(Lifecycle.Stage.STOPPING);
+    Assert.assertEquals(2, timings.size());
+    Assert.assertEquals(LifecycleReport.Outcome.TIMED_OUT, timings.get(0).getOutcome());
+    Assert.assertEquals(Server.class.getName(), timings.get(1).getName());
+    Assert.assertEquals(LifecycleReport.Outcome.SKIPPED, timings.get(1).getOutcome());
+  }
+
+  @Test(timeout = 5000)
+  public void testReportInterruptedCommands() throws InterruptedException {
+    final CountDownLatch running = new CountDownLatch(2);
+    Command hanging = new Command() {
+      @Override
+      public void run() {
+        running.countDown();
+        new Hanging().run();
+      }
+    };
+    Command otherHanging = new Command() {
+      @Override
+      public void run() {
+        running.countDown();
+        new Hanging().run();
+      }
+    };
+
+    final Lifecycle lifecycle = Lifecycle.builder()
+        .parallelism(2)
+        .addStoppingCommands(hanging, otherHanging)
+        .build();
+    lifecycle.start();
+    Thread stopping = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        lifecycle.stop();
+      }
+    });
+    stopping.start();
+    running.await();
+    stopping.interrupt();
+    stopping.join();
+
+    List<LifecycleReport.CommandTiming> timings =
+        lifecycle.getReport().getCommandTimings(Lifecycle.Stage.STOPPING);
+    Assert.assertEquals(2, timings.size());
+    for (LifecycleReport.CommandTiming timing : timings) {
+      Assert.assertEquals(LifecycleReport.Outcome.INTERRUPTED, timing.getOutcome());
+    }
+  }
+
+  private static class Hanging implements Command {
+
+    @Override
+    public void run() {
+      while (true) {
+        try {
+          Thread.sleep(Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+          // ignores the interruption to make sure the lifecycle does not wait for the command
+        }
+      }
+    }
+  }
+
+  @Lifecycle.Timeout(50)
+  private static class QuicklyTimedOut extends Hanging {
+
+  }
+
+  private static class Traced implements Command {
+
+    private final List<String> trace;
+    private final String name;
+
+    Traced(List<String> trace, String name) {
+      this.trace = trace;
+      this.name = name;
+    }
+
+    @Override
+    public void run() {
+      this.trace.add(this.name);
+    }
+  }
+
+  @Lifecycle.DependsOn({Pool.class, Cache.class})
+  @Lifecycle.Priority(100)
+  private static class Server extends Traced {
+
+    Server(List<String> trace) {
+      super(trace, "server");
+    }
+  }
+
+  private static class Pool extends Traced {
+
+    Pool(List<String> trace) {
+      super(trace, "pool");
+    }
+  }
+
+  @Lifecycle.Priority(1)
+  private static class Cache extends Traced {
+
+    Cache(List<String> trace) {
+      super(trace, "cache");
+    }
+  }
+
+  @Lifecycle.DependsOn(Pong.class)
+  private static class Ping implements Command {
+
+    @Override
+    public void run() {
+    }
+  }
+
+  @Lifecycle.DependsOn(Ping.class)
+  private static class Pong implements Command {
+
+    @Override
+    public void run() {
+    }
+  }
+
 }
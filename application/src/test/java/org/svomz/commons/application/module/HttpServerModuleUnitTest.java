@@ -0,0 +1,280 @@
+package org.svomz.commons.application.module;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import com.google.inject.util.Modules;
+
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.svomz.commons.application.Lifecycle;
+import org.svomz.commons.application.modules.HttpServerModule;
+import org.svomz.commons.application.modules.LifecycleModule;
+import org.svomz.commons.net.http.HttpServer;
+import org.svomz.commons.net.http.HttpServerConfig;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class HttpServerModuleUnitTest {
+
+  @Test(timeout = 20000)
+  public void testStopFromRequestWithConcurrentStoppingCommands() throws IOException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    // Two stopping commands with a parallelism of 2 run on threads of the lifecycle.
+    Injector injector = Guice.createInjector(
+      Modules.override(new LifecycleModule()).with(new AbstractModule() {
+        @Override
+        protected void configure() {
+          this.bind(Integer.class).annotatedWith(Lifecycle.Parallelism.class).toInstance(2);
+        }
+      }),
+      new HttpServerModule(HttpServerConfig.builder(port).build()),
+      new ServletModule(),
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          this.bind(LifecycleModuleUnitTest.Flag.class).in(Singleton.class);
+          LifecycleModule.addService(this.binder(), LifecycleModuleUnitTest.Flag.class);
+        }
+      });
+    final Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    injector.getInstance(HttpServer.class).registerServlet(new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doPost(HttpServletRequest request, HttpServletResponse response) {
+        lifecycle.stop();
+      }
+    }), "/quit");
+    lifecycle.start();
+
+    long start = System.nanoTime();
+    HttpURLConnection connection =
+      (HttpURLConnection) new URL("http://localhost:" + port + "/quit").openConnection();
+    connection.setRequestMethod("POST");
+    Assert.assertEquals(200, connection.getResponseCode());
+
+    // The server doesn't wait the shutdown timeout for the request stopping it.
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+      < HttpServerModule.DEFAULT_SHUTDOWN_TIMEOUT / 2);
+    Assert.assertEquals(Lifecycle.Stage.TERMINATED, lifecycle.getStage());
+    Assert.assertFalse(injector.getInstance(LifecycleModuleUnitTest.Flag.class).isRunning());
+  }
+
+  @Test(timeout = 20000)
+  public void testServicesStoppedAfterRequestsDrained() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    Injector injector = Guice.createInjector(
+      Modules.override(new LifecycleModule()).with(new AbstractModule() {
+        @Override
+        protected void configure() {
+          this.bind(Integer.class).annotatedWith(Lifecycle.Parallelism.class).toInstance(4);
+        }
+      }),
+      new HttpServerModule(HttpServerConfig.builder(port).build()),
+      new ServletModule(),
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          this.bind(RequestsService.class).in(Singleton.class);
+          LifecycleModule.addService(this.binder(), RequestsService.class);
+        }
+      });
+    final RequestsService service = injector.getInstance(RequestsService.class);
+    final CountDownLatch handling = new CountDownLatch(1);
+    injector.getInstance(HttpServer.class).registerServlet(new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        handling.countDown();
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        // Fails the request if the service is already stopped.
+        response.setStatus(service.isRunning() ? 200 : 500);
+      }
+    }), "/slow");
+    Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    lifecycle.start();
+
+    final HttpURLConnection connection =
+      (HttpURLConnection) new URL("http://localhost:" + port + "/slow").openConnection();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Integer> status = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          return connection.getResponseCode();
+        }
+      });
+      handling.await();
+      lifecycle.stop();
+
+      Assert.assertEquals(200, status.get().intValue());
+      Assert.assertFalse(service.isRunning());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testStopFromRequestDrainsOtherRequests() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    Injector injector = Guice.createInjector(
+      Modules.override(new LifecycleModule()).with(new AbstractModule() {
+        @Override
+        protected void configure() {
+          this.bind(Integer.class).annotatedWith(Lifecycle.Parallelism.class).toInstance(2);
+        }
+      }),
+      new HttpServerModule(HttpServerConfig.builder(port).build()),
+      new ServletModule(),
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          this.bind(RequestsService.class).in(Singleton.class);
+          LifecycleModule.addService(this.binder(), RequestsService.class);
+        }
+      });
+    final RequestsService service = injector.getInstance(RequestsService.class);
+    final Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    final CountDownLatch handling = new CountDownLatch(1);
+    HttpServer server = injector.getInstance(HttpServer.class);
+    server.registerServlet(new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+        handling.countDown();
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        // Fails the request if the service is already stopped.
+        response.setStatus(service.isRunning() ? 200 : 500);
+      }
+    }), "/slow");
+    server.registerServlet(new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doPost(HttpServletRequest request, HttpServletResponse response) {
+        lifecycle.stop();
+      }
+    }), "/quit");
+    lifecycle.start();
+
+    final HttpURLConnection slow =
+      (HttpURLConnection) new URL("http://localhost:" + port + "/slow").openConnection();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Integer> status = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          return slow.getResponseCode();
+        }
+      });
+      handling.await();
+
+      long start = System.nanoTime();
+      HttpURLConnection quit =
+        (HttpURLConnection) new URL("http://localhost:" + port + "/quit").openConnection();
+      quit.setRequestMethod("POST");
+      Assert.assertEquals(200, quit.getResponseCode());
+
+      // Only the request stopping the server is not waited for.
+      Assert.assertEquals(200, status.get().intValue());
+      Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        < HttpServerModule.DEFAULT_SHUTDOWN_TIMEOUT / 2);
+      Assert.assertFalse(service.isRunning());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testMetricsOnlyExposedOnTheirPath() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    Injector injector = Guice.createInjector(new LifecycleModule(),
+      Modules.override(new HttpServerModule(HttpServerConfig.builder(port).build()))
+        .with(new AbstractModule() {
+          @Override
+          protected void configure() {
+            this.bind(String.class).annotatedWith(HttpServerModule.MetricsPath.class)
+              .toInstance("/internal/metrics");
+          }
+        }),
+      new ServletModule());
+    Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    lifecycle.start();
+    try {
+      Assert.assertEquals(200, this.get(port, "/internal/metrics"));
+      Assert.assertEquals(404, this.get(port, "/metrics"));
+    } finally {
+      lifecycle.stop();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testHealthOnlyExposedOnTheirPaths() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    Injector injector = Guice.createInjector(new LifecycleModule(),
+      Modules.override(new HttpServerModule(HttpServerConfig.builder(port).build()))
+        .with(new AbstractModule() {
+          @Override
+          protected void configure() {
+            this.bind(String.class).annotatedWith(HttpServerModule.ReadinessPath.class)
+              .toInstance("/internal/ready");
+          }
+        }),
+      new ServletModule());
+    Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    lifecycle.start();
+    try {
+      Assert.assertEquals(200, this.get(port, "/internal/ready"));
+      Assert.assertEquals(404, this.get(port, "/health/live"));
+      Assert.assertEquals(404, this.get(port, "/health/ready"));
+    } finally {
+      lifecycle.stop();
+    }
+  }
+
+  private int get(final int port, final String path) throws IOException {
+    HttpURLConnection connection =
+      (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+    return connection.getResponseCode();
+  }
+
+  public static class RequestsService extends LifecycleModuleUnitTest.Flag {
+
+  }
+
+}
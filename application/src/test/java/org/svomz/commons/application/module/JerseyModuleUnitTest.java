@@ -0,0 +1,91 @@
+package org.svomz.commons.application.module;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.svomz.commons.application.Lifecycle;
+import org.svomz.commons.application.modules.HttpServerModule;
+import org.svomz.commons.application.modules.JerseyModule;
+import org.svomz.commons.application.modules.LifecycleModule;
+import org.svomz.commons.core.metrics.LatencyHistogram;
+import org.svomz.commons.net.http.HttpServer;
+import org.svomz.commons.net.http.HttpServerConfig;
+import org.svomz.commons.net.http.metrics.RequestMetrics;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+
+public class JerseyModuleUnitTest {
+
+  @Test(timeout = 20000)
+  public void testRequestsRecordedByResourceTemplate() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    Injector injector = Guice.createInjector(new LifecycleModule(),
+      new HttpServerModule(HttpServerConfig.builder(port).build()),
+      new ServletModule(),
+      new JerseyModule(ThingResourceConfig.class));
+    Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    lifecycle.start();
+    try {
+      Assert.assertEquals(200, this.get(port, "/things/1"));
+      Assert.assertEquals(200, this.get(port, "/things/2"));
+      Assert.assertEquals(200, this.get(port, "/things"));
+
+      RequestMetrics metrics = injector.getInstance(HttpServer.class).getRequestMetrics();
+      // Requests are recorded once their response is sent.
+      while (metrics.getInFlightRequests() > 0) {
+        Thread.sleep(5);
+      }
+      Map<String, LatencyHistogram.Snapshot> latencies = metrics.getLatencies();
+      Assert.assertEquals(2, latencies.get("/things/{id}").getCount());
+      Assert.assertEquals(1, latencies.get("/things").getCount());
+      Assert.assertNull(latencies.get("/*"));
+    } finally {
+      lifecycle.stop();
+    }
+  }
+
+  private int get(final int port, final String path) throws IOException {
+    HttpURLConnection connection =
+      (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+    connection.getInputStream().close();
+    return connection.getResponseCode();
+  }
+
+  public static class ThingResourceConfig extends ResourceConfig {
+
+    public ThingResourceConfig() {
+      this.register(ThingResource.class);
+    }
+  }
+
+  @Path("things")
+  public static class ThingResource {
+
+    @GET
+    public String list() {
+      return "things";
+    }
+
+    @GET
+    @Path("{id}")
+    public String get(@PathParam("id") final String id) {
+      return "thing " + id;
+    }
+  }
+
+}
@@ -1,13 +1,22 @@
 package org.svomz.commons.application.module;
 
+import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
+import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.Singleton;
 
 import org.junit.Assert;
 
 import org.junit.Test;
 import org.svomz.commons.application.Lifecycle;
+import org.svomz.commons.application.Readiness;
 import org.svomz.commons.application.modules.LifecycleModule;
+import org.svomz.commons.core.Command;
+import org.svomz.commons.core.Service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class LifecycleModuleUnitTest {
 
@@ -19,4 +28,143 @@ public class LifecycleModuleUnitTest {
     Assert.assertEquals(lifecycle1, lifecycle2);
   }
 
+  @Test
+  public void testReadyWithoutDeferredBindings() throws InterruptedException {
+    Injector injector = Guice.createInjector(new LifecycleModule());
+    Readiness readiness = injector.getInstance(Readiness.class);
+    Assert.assertFalse(readiness.isAlive());
+
+    injector.getInstance(Lifecycle.class).start();
+    Assert.assertTrue(readiness.isAlive());
+    Assert.assertTrue(readiness.awaitReady(1, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 5000)
+  public void testDeferredBinding() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    Injector injector = Guice.createInjector(new LifecycleModule(), new AbstractModule() {
+      @Override
+      protected void configure() {
+        this.bind(CountDownLatch.class).toInstance(release);
+        this.bind(Heavy.class).in(Singleton.class);
+        LifecycleModule.addDeferredBinding(this.binder(), Heavy.class);
+      }
+    });
+    Readiness readiness = injector.getInstance(Readiness.class);
+
+    injector.getInstance(Lifecycle.class).start();
+    Assert.assertTrue(readiness.isAlive());
+    Assert.assertFalse(readiness.isReady());
+
+    release.countDown();
+    Assert.assertTrue(readiness.awaitReady(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 5000)
+  public void testDeferredBindingFailure() throws InterruptedException {
+    Injector injector = Guice.createInjector(new LifecycleModule(), new AbstractModule() {
+      @Override
+      protected void configure() {
+        LifecycleModule.addDeferredBinding(this.binder(), Failing.class);
+      }
+    });
+    Readiness readiness = injector.getInstance(Readiness.class);
+
+    injector.getInstance(Lifecycle.class).start();
+    Assert.assertFalse(readiness.awaitReady(5, TimeUnit.SECONDS));
+    Assert.assertNotNull(readiness.getFailure());
+  }
+
+  @Test
+  public void testService() {
+    Injector injector = Guice.createInjector(new LifecycleModule(), new AbstractModule() {
+      @Override
+      protected void configure() {
+        this.bind(Flag.class).in(Singleton.class);
+        LifecycleModule.addService(this.binder(), Flag.class);
+      }
+    });
+    Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    Flag flag = injector.getInstance(Flag.class);
+
+    lifecycle.start();
+    Assert.assertTrue(flag.isRunning());
+
+    lifecycle.stop();
+    Assert.assertFalse(flag.isRunning());
+  }
+
+  @Test
+  public void testTerminatedService() {
+    Injector injector = Guice.createInjector(new LifecycleModule(), new AbstractModule() {
+      @Override
+      protected void configure() {
+        this.bind(Flag.class).in(Singleton.class);
+        LifecycleModule.addTerminatedService(this.binder(), Flag.class);
+        LifecycleModule.addStoppingCommand(this.binder(), FlagRecorder.class);
+      }
+    });
+    Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+    Flag flag = injector.getInstance(Flag.class);
+
+    lifecycle.start();
+    Assert.assertTrue(flag.isRunning());
+
+    lifecycle.stop();
+    Assert.assertTrue(injector.getInstance(FlagRecorder.class).runningWhenStopping);
+    Assert.assertFalse(flag.isRunning());
+  }
+
+  public static class Heavy {
+
+    @Inject
+    public Heavy(CountDownLatch release) throws InterruptedException {
+      release.await();
+    }
+  }
+
+  public static class Flag implements Service {
+
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+      this.running = true;
+    }
+
+    @Override
+    public void stop() {
+      this.running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+      return this.running;
+    }
+  }
+
+  @Singleton
+  public static class FlagRecorder implements Command {
+
+    private final Flag flag;
+    private volatile boolean runningWhenStopping;
+
+    @Inject
+    public FlagRecorder(Flag flag) {
+      this.flag = flag;
+    }
+
+    @Override
+    public void run() {
+      this.runningWhenStopping = this.flag.isRunning();
+    }
+  }
+
+  public static class Failing {
+
+    public Failing() {
+      throw new IllegalStateException("failing");
+    }
+  }
+
 }
@@ -0,0 +1,80 @@
+package org.svomz.commons.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.svomz.commons.core.metrics.Counter;
+import org.svomz.commons.core.metrics.RateMeter;
+import org.svomz.commons.core.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the cost of counting events from all the processors with a shared
+ * {@link java.util.concurrent.atomic.AtomicLong} and with the striped metrics of
+ * {@link org.svomz.commons.core.metrics}, and the cost of reading them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CounterBenchmark {
+
+  private final AtomicLong atomicLong = new AtomicLong();
+  private final Counter counter = new Counter();
+  private final RateMeter meter = new RateMeter();
+  private final Timer timer = new Timer();
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public long atomicLongIncrement() {
+    return this.atomicLong.incrementAndGet();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void counterIncrement() {
+    this.counter.increment();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void rateMeterMark() {
+    this.meter.mark();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void timerUpdate() {
+    this.timer.update(100, TimeUnit.MICROSECONDS);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long atomicLongRead() {
+    return this.atomicLong.get();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long counterRead() {
+    return this.counter.getCount();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public double rateMeterRead() {
+    return this.meter.getRate(TimeUnit.SECONDS);
+  }
+
+}
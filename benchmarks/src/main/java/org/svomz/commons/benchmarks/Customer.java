@@ -0,0 +1,52 @@
+package org.svomz.commons.benchmarks;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+/**
+ * Entity stored by the repository benchmarks.
+ *
+ * Its primary key is allocated from a table by blocks, unlike an identity column this lets the
+ * inserts be batched.
+ */
+@Entity
+@Table(name = "customers")
+public class Customer {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.TABLE, generator = "customers")
+  @TableGenerator(name = "customers", allocationSize = 100)
+  private Long id;
+
+  @Column(name = "firstname", nullable = false, length = 42)
+  private String firstname;
+
+  @Column(name = "lastname", nullable = false, length = 42)
+  private String lastname;
+
+  public Long getId() {
+    return this.id;
+  }
+
+  public String getFirstname() {
+    return this.firstname;
+  }
+
+  public String getLastname() {
+    return this.lastname;
+  }
+
+  public void setFirstname(String firstname) {
+    this.firstname = firstname;
+  }
+
+  public void setLastname(String lastname) {
+    this.lastname = lastname;
+  }
+
+}
@@ -0,0 +1,111 @@
+package org.svomz.commons.benchmarks;
+
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.svomz.commons.net.http.HttpServerConfig;
+import org.svomz.commons.net.http.JettyHttpServer;
+import org.svomz.commons.net.http.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Compares the throughput of a {@link JettyHttpServer} running requests on its bounded thread pool
+ * with the one running each request on a virtual thread.
+ *
+ * The served requests block for a few milliseconds, like a resource waiting for the database, and
+ * many more clients than request threads send requests concurrently. The virtual mode needs Java 21
+ * or later: its setup fails on older virtual machines, where the benchmark should be run with
+ * {@code -p threads=platform}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(400)
+@State(Scope.Benchmark)
+public class HttpServerThreadsBenchmark {
+
+  private static final int MAX_THREADS = 50;
+  private static final int BLOCKING_MILLIS = 10;
+
+  @Param({"platform", "virtual"})
+  public String threads;
+
+  private JettyHttpServer server;
+  private URL url;
+
+  @Setup
+  public void setUp() throws Exception {
+    boolean virtual = "virtual".equals(this.threads);
+    if (virtual && !VirtualThreads.isSupported()) {
+      throw new IllegalStateException(
+        "Virtual threads are not supported, run the benchmark with -p threads=platform.");
+    }
+
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    this.server = new JettyHttpServer(HttpServerConfig.builder(port)
+      .threads(MAX_THREADS, MAX_THREADS)
+      .acceptQueueSize(1024)
+      .virtualThreads(virtual)
+      .build());
+    this.server.registerServlet(new ServletHolder(new BlockingServlet()), "/blocking");
+    this.server.start();
+    this.url = new URL("http://localhost:" + port + "/blocking");
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.server.stop();
+  }
+
+  @Benchmark
+  public int blockingRequest() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
+    try (InputStream in = connection.getInputStream()) {
+      while (in.read() != -1) {
+        // Reads the whole response so that the connection can be reused.
+      }
+    }
+    return connection.getResponseCode();
+  }
+
+  public static class BlockingServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp)
+      throws IOException {
+      try {
+        Thread.sleep(BLOCKING_MILLIS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      resp.getWriter().write("done");
+    }
+  }
+
+}
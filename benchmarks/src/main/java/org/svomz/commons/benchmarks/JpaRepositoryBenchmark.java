@@ -0,0 +1,97 @@
+package org.svomz.commons.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.jpa.AbstractJpaRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Measures {@link AbstractJpaRepository#find(Object)} and {@link AbstractJpaRepository#findAll()}
+ * against an embedded Derby database.
+ *
+ * The shared cache of EclipseLink is disabled and the persistence context is cleared before each
+ * operation, so that each of them goes to the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JpaRepositoryBenchmark {
+
+  @Param({"100", "1000"})
+  public int rows;
+
+  private EntityManagerFactory entityManagerFactory;
+  private EntityManager entityManager;
+  private CustomerRepository repository;
+  private List<Long> ids;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.entityManagerFactory = Persistence.createEntityManagerFactory("pu-benchmarks");
+    this.entityManager = this.entityManagerFactory.createEntityManager();
+    this.repository = new CustomerRepository(this.entityManager);
+
+    this.ids = new ArrayList<>();
+    this.entityManager.getTransaction().begin();
+    for (int i = 0; i < this.rows; i++) {
+      Customer customer = new Customer();
+      customer.setFirstname("John" + i);
+      customer.setLastname("Doe" + i);
+      this.repository.create(customer);
+    }
+    this.entityManager.getTransaction().commit();
+    for (Customer customer : this.repository.findAll()) {
+      this.ids.add(customer.getId());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.entityManager.close();
+    this.entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public Customer find() throws EntityNotFoundException {
+    this.entityManager.clear();
+    return this.repository.find(this.ids.get(ThreadLocalRandom.current().nextInt(this.rows)));
+  }
+
+  @Benchmark
+  public List<Customer> findAll() {
+    this.entityManager.clear();
+    return this.repository.findAll();
+  }
+
+  public static class CustomerRepository extends AbstractJpaRepository<Customer, Long> {
+
+    public CustomerRepository(EntityManager entityManager) {
+      super(entityManager);
+    }
+
+  }
+
+}
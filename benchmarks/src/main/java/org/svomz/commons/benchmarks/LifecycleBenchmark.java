@@ -0,0 +1,77 @@
+package org.svomz.commons.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.svomz.commons.application.Lifecycle;
+import org.svomz.commons.core.Command;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the transitions of a {@link Lifecycle} through all its stages, that is the overhead of
+ * scheduling its commands, sequentially or in parallel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LifecycleBenchmark {
+
+  @Param({"1", "16"})
+  public int commands;
+
+  @Param({"1", "4"})
+  public int parallelism;
+
+  private Command[] startingCommands;
+  private Command[] stoppingCommands;
+
+  @Setup
+  public void setUp() {
+    // The report logged at each start would be measured otherwise.
+    Logger.getLogger(Lifecycle.class.getName()).setLevel(Level.WARNING);
+
+    this.startingCommands = LifecycleBenchmark.commands(this.commands);
+    this.stoppingCommands = LifecycleBenchmark.commands(this.commands);
+  }
+
+  @Benchmark
+  public void startAndStop(final Blackhole blackhole) {
+    Lifecycle lifecycle = Lifecycle.builder()
+      .addStartingCommands(this.startingCommands)
+      .addStoppingCommands(this.stoppingCommands)
+      .parallelism(this.parallelism)
+      .build();
+    lifecycle.start();
+    lifecycle.stop();
+    blackhole.consume(lifecycle.getStage());
+  }
+
+  private static Command[] commands(final int count) {
+    Command[] commands = new Command[count];
+    for (int i = 0; i < count; i++) {
+      commands[i] = new Command() {
+        @Override
+        public void run() {
+          Blackhole.consumeCPU(100);
+        }
+      };
+    }
+    return commands;
+  }
+
+}
@@ -0,0 +1,130 @@
+package org.svomz.commons.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Stage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.svomz.commons.application.Lifecycle;
+import org.svomz.commons.application.modules.HttpServerModule;
+import org.svomz.commons.application.modules.LifecycleModule;
+import org.svomz.commons.samples.placesapi.PlaceApi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the places sample application in process: its requests go through the
+ * {@link org.svomz.commons.net.http.JettyHttpServer}, the {@link com.google.inject.servlet.GuiceFilter}
+ * and the Jersey {@link org.glassfish.jersey.servlet.ServletContainer} before the resource
+ * serializes the places with Jackson.
+ *
+ * The liveness check is served by a plain servlet of the same server, it measures the dispatch
+ * without Jersey.
+ *
+ * Like the tests run by the "jdk9+" profile, the forked virtual machine opens java.lang to the
+ * class generation of Guice, so this benchmark requires Java 9 or later.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@Threads(16)
+@State(Scope.Benchmark)
+public class PlaceApiBenchmark {
+
+  private static final int PLACES = 20;
+
+  private Lifecycle lifecycle;
+  private URL places;
+  private URL liveness;
+
+  @Setup
+  public void setUp() throws IOException {
+    Logger.getLogger(Lifecycle.class.getName()).setLevel(Level.WARNING);
+
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    System.setProperty("http.port", String.valueOf(port));
+    System.setProperty(HttpServerModule.LIVENESS_PATH_PROPERTY, "/health/live");
+
+    Injector injector = Guice.createInjector(Stage.PRODUCTION, ImmutableList.<Module>builder()
+      .add(new LifecycleModule())
+      .addAll(new PlaceApi().getModules())
+      .build());
+    this.lifecycle = injector.getInstance(Lifecycle.class);
+    this.lifecycle.start();
+
+    this.places = new URL("http://localhost:" + port + "/places");
+    this.liveness = new URL("http://localhost:" + port + "/health/live");
+    for (int i = 0; i < PLACES; i++) {
+      this.addPlace("{\"name\":\"place-" + i + "\",\"longitude\":2.35,\"latitude\":48.85}");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.lifecycle.stop();
+  }
+
+  @Benchmark
+  public int getPlaces() throws IOException {
+    return PlaceApiBenchmark.get(this.places);
+  }
+
+  @Benchmark
+  public int liveness() throws IOException {
+    return PlaceApiBenchmark.get(this.liveness);
+  }
+
+  private void addPlace(final String json) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) this.places.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(json.getBytes(StandardCharsets.UTF_8));
+    }
+    if (PlaceApiBenchmark.read(connection) != HttpURLConnection.HTTP_OK) {
+      throw new IllegalStateException("The place could not be added: " + json);
+    }
+  }
+
+  private static int get(final URL url) throws IOException {
+    return PlaceApiBenchmark.read((HttpURLConnection) url.openConnection());
+  }
+
+  private static int read(final HttpURLConnection connection) throws IOException {
+    try (InputStream in = connection.getInputStream()) {
+      while (in.read() != -1) {
+        // Reads the whole response so that the connection can be reused.
+      }
+    }
+    return connection.getResponseCode();
+  }
+
+}
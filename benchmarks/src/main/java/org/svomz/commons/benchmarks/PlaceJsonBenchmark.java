@@ -0,0 +1,69 @@
+package org.svomz.commons.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.svomz.commons.samples.placesapi.domain.Place;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Jackson serialization and deserialization of lists of
+ * {@link org.svomz.commons.samples.placesapi.domain.Place}, as done by the places resource.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlaceJsonBenchmark {
+
+  @Param({"1", "100"})
+  public int places;
+
+  private ObjectWriter writer;
+  private ObjectReader reader;
+  private List<Place> list;
+  private byte[] json;
+
+  @Setup
+  public void setUp() throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    this.writer = mapper.writerWithType(new TypeReference<List<Place>>() {});
+    this.reader = mapper.reader(new TypeReference<List<Place>>() {});
+
+    this.list = new ArrayList<>();
+    for (int i = 0; i < this.places; i++) {
+      this.list.add(new Place("place-" + i, 2.35 + i / 1000.0, 48.85 - i / 1000.0));
+    }
+    this.json = this.writer.writeValueAsBytes(this.list);
+  }
+
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    return this.writer.writeValueAsBytes(this.list);
+  }
+
+  @Benchmark
+  public List<Place> deserialize() throws IOException {
+    return this.reader.readValue(this.json);
+  }
+
+}
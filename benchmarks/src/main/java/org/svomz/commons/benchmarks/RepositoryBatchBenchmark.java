@@ -0,0 +1,114 @@
+package org.svomz.commons.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.svomz.commons.persistence.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Compares the creation, update and deletion of entities one by one, flushed after each of them,
+ * with the batch operations of {@link Repository}, with and without the JDBC batch writing of
+ * EclipseLink, against an embedded Derby database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RepositoryBatchBenchmark {
+
+  private static final int ENTITIES = 1000;
+
+  @Param({"None", "JDBC"})
+  public String batchWriting;
+
+  private EntityManagerFactory entityManagerFactory;
+  private EntityManager entityManager;
+  private JpaRepositoryBenchmark.CustomerRepository repository;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.entityManagerFactory = Persistence.createEntityManagerFactory("pu-benchmarks",
+      ImmutableMap.of(
+        "eclipselink.jdbc.batch-writing", this.batchWriting,
+        "eclipselink.jdbc.batch-writing.size", "100"));
+    this.entityManager = this.entityManagerFactory.createEntityManager();
+    this.repository = new JpaRepositoryBenchmark.CustomerRepository(this.entityManager);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.entityManager.close();
+    this.entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public void oneByOne() {
+    List<Customer> customers = RepositoryBatchBenchmark.customers();
+    this.entityManager.getTransaction().begin();
+    for (Customer customer : customers) {
+      this.repository.create(customer);
+      this.entityManager.flush();
+    }
+    for (Customer customer : customers) {
+      customer.setLastname("Smith");
+      this.repository.update(customer);
+      this.entityManager.flush();
+    }
+    for (Customer customer : customers) {
+      this.repository.delete(customer);
+      this.entityManager.flush();
+    }
+    this.entityManager.getTransaction().commit();
+    this.entityManager.clear();
+  }
+
+  @Benchmark
+  public void batched() {
+    List<Customer> customers = RepositoryBatchBenchmark.customers();
+    this.entityManager.getTransaction().begin();
+    this.repository.createAll(customers);
+    List<Long> ids = new ArrayList<>();
+    for (Customer customer : customers) {
+      customer.setLastname("Smith");
+      ids.add(customer.getId());
+    }
+    this.repository.updateAll(customers);
+    this.repository.deleteAllByPrimaryKeys(ids);
+    this.entityManager.getTransaction().commit();
+    this.entityManager.clear();
+  }
+
+  private static List<Customer> customers() {
+    List<Customer> customers = new ArrayList<>(ENTITIES);
+    for (int i = 0; i < ENTITIES; i++) {
+      Customer customer = new Customer();
+      customer.setFirstname("John" + i);
+      customer.setLastname("Doe" + i);
+      customers.add(customer);
+    }
+    return customers;
+  }
+
+}
@@ -0,0 +1,49 @@
+package org.svomz.commons.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events from many threads.
+ *
+ * The count is striped across cells, so that threads incrementing it concurrently don't contend on
+ * a single cache line as they would with an {@link java.util.concurrent.atomic.AtomicLong}. Reading
+ * the count sums the cells, it is not an atomic snapshot when the counter is concurrently updated.
+ *
+ * Instances are thread safe.
+ */
+public final class Counter implements Metric {
+
+  private final LongAdder count;
+
+  public Counter() {
+    this.count = new LongAdder();
+  }
+
+  public void increment() {
+    this.count.increment();
+  }
+
+  public void decrement() {
+    this.count.decrement();
+  }
+
+  /**
+   * @param delta the value to add, may be negative
+   */
+  public void add(final long delta) {
+    this.count.add(delta);
+  }
+
+  /**
+   * @return the current count.
+   */
+  public long getCount() {
+    return this.count.sum();
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(this.getCount());
+  }
+
+}
@@ -0,0 +1,17 @@
+package org.svomz.commons.core.metrics;
+
+/**
+ * Reads an instantaneous value, like the size of a queue, when the metrics are reported.
+ *
+ * Reading a gauge should be cheap and must be thread safe.
+ *
+ * @param <T> the type of the value
+ */
+public interface Gauge<T> extends Metric {
+
+  /**
+   * @return the current value.
+   */
+  T getValue();
+
+}
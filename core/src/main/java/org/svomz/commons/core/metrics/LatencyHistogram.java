@@ -0,0 +1,263 @@
+package org.svomz.commons.core.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies in log-linear buckets, in the manner of an HDR histogram, and reports their
+ * percentiles over a sliding time window.
+ *
+ * Latencies are recorded in microseconds, from 0 to about 18 minutes. Each power of two range is
+ * split in 64 buckets, so that a percentile is reported with a relative error lower than 1.6%.
+ * Longer latencies are recorded as the highest trackable value.
+ *
+ * Recording is lock-free: it increments an atomic bucket of the slice of the window covering the
+ * current time. The window is made of slices which are cleared when they are reused, a latency
+ * recorded concurrently with the clearing of its slice may be lost. The count and the sum of the
+ * latencies are cumulative, since the creation of the histogram.
+ *
+ * Instances are thread safe.
+ */
+public final class LatencyHistogram implements Metric {
+
+  public static final long DEFAULT_WINDOW = TimeUnit.MINUTES.toNanos(1);
+  public static final int DEFAULT_SLICES = 6;
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+  private static final long HIGHEST_TRACKABLE_VALUE = (1L << 30) - 1;
+  private static final int BUCKET_COUNT = LatencyHistogram.index(HIGHEST_TRACKABLE_VALUE) + 1;
+
+  private final Ticker ticker;
+  private final long origin;
+  private final long sliceDuration;
+  private final int windowSlices;
+  private final Slice[] slices;
+  private final LongAdder count;
+  private final LongAdder sum;
+
+  /**
+   * Creates a histogram reporting the percentiles of the last minute.
+   */
+  public LatencyHistogram() {
+    this(DEFAULT_WINDOW, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param window the duration over which percentiles are reported
+   * @param unit the unit of the window
+   */
+  public LatencyHistogram(final long window, final TimeUnit unit) {
+    this(window, unit, DEFAULT_SLICES);
+  }
+
+  /**
+   * Each slice holds about 13 KB of buckets. With fewer slices the histogram takes less memory but
+   * the window slides by larger steps, dropping the latencies of a whole slice at once.
+   *
+   * @param window the duration over which percentiles are reported
+   * @param unit the unit of the window
+   * @param slices the number of slices the window is made of
+   */
+  public LatencyHistogram(final long window, final TimeUnit unit, final int slices) {
+    this(window, unit, slices, Ticker.systemTicker());
+  }
+
+  LatencyHistogram(final long window, final TimeUnit unit, final Ticker ticker) {
+    this(window, unit, DEFAULT_SLICES, ticker);
+  }
+
+  LatencyHistogram(final long window, final TimeUnit unit, final int slices,
+    final Ticker ticker) {
+    Preconditions.checkArgument(window > 0, "Window must be positive.");
+    Preconditions.checkNotNull(unit);
+    Preconditions.checkArgument(slices > 0, "Slices must be positive.");
+    Preconditions.checkNotNull(ticker);
+
+    this.ticker = ticker;
+    this.origin = ticker.read();
+    this.sliceDuration = Math.max(1, unit.toNanos(window) / slices);
+    this.windowSlices = slices;
+    // One more slice than the window so that the oldest one can be cleared while the others are
+    // reported.
+    this.slices = new Slice[slices + 1];
+    for (int i = 0; i < this.slices.length; i++) {
+      this.slices[i] = new Slice();
+    }
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+  }
+
+  /**
+   * @param latency the latency to record
+   * @param unit the unit of the latency
+   */
+  public void record(final long latency, final TimeUnit unit) {
+    long micros = Math.max(0, unit.toMicros(latency));
+    long epoch = this.epoch();
+    Slice slice = this.slices[(int) (epoch % this.slices.length)];
+    slice.roll(epoch);
+    slice.counts.incrementAndGet(
+      LatencyHistogram.index(Math.min(micros, HIGHEST_TRACKABLE_VALUE)));
+    slice.max(micros);
+    this.count.increment();
+    this.sum.add(micros);
+  }
+
+  /**
+   * @return the latencies recorded during the window.
+   */
+  public Snapshot snapshot() {
+    long epoch = this.epoch();
+    long[] counts = new long[BUCKET_COUNT];
+    long windowCount = 0;
+    long max = 0;
+    for (Slice slice : this.slices) {
+      long sliceEpoch = slice.epoch.get();
+      if (sliceEpoch > epoch - this.windowSlices && sliceEpoch <= epoch) {
+        for (int i = 0; i < counts.length; i++) {
+          long bucket = slice.counts.get(i);
+          counts[i] += bucket;
+          windowCount += bucket;
+        }
+        max = Math.max(max, slice.max.get());
+      }
+    }
+    return new Snapshot(counts, windowCount, max, this.count.sum(), this.sum.sum());
+  }
+
+  private long epoch() {
+    return (this.ticker.read() - this.origin) / this.sliceDuration;
+  }
+
+  private static int index(final long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return magnitude * SUB_BUCKET_HALF_COUNT + (int) (value >>> magnitude);
+  }
+
+  private static long highestValueAt(final int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int magnitude = index / SUB_BUCKET_HALF_COUNT - 1;
+    long subBucket = index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << magnitude) - 1;
+  }
+
+  /**
+   * Latencies recorded during a slice of the window.
+   */
+  private static final class Slice {
+
+    private final AtomicLong epoch = new AtomicLong(-1);
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    private void roll(final long current) {
+      long previous = this.epoch.get();
+      if (previous < current && this.epoch.compareAndSet(previous, current)) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+          this.counts.set(i, 0);
+        }
+        this.max.set(0);
+      }
+    }
+
+    private void max(final long value) {
+      long current = this.max.get();
+      while (value > current && !this.max.compareAndSet(current, value)) {
+        current = this.max.get();
+      }
+    }
+  }
+
+  /**
+   * Immutable view of the latencies of a histogram.
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long windowCount;
+    private final long max;
+    private final long count;
+    private final long sum;
+
+    private Snapshot(final long[] counts, final long windowCount, final long max,
+      final long count, final long sum) {
+      this.counts = counts;
+      this.windowCount = windowCount;
+      this.max = max;
+      this.count = count;
+      this.sum = sum;
+    }
+
+    /**
+     * @return the number of latencies recorded since the creation of the histogram.
+     */
+    public long getCount() {
+      return this.count;
+    }
+
+    /**
+     * @param unit the unit of the returned sum
+     * @return the sum of the latencies recorded since the creation of the histogram.
+     */
+    public double getSum(final TimeUnit unit) {
+      return Snapshot.convert(this.sum, unit);
+    }
+
+    /**
+     * @return the number of latencies recorded during the window.
+     */
+    public long getWindowCount() {
+      return this.windowCount;
+    }
+
+    /**
+     * @param unit the unit of the returned latency
+     * @return the highest latency recorded during the window, 0 if none.
+     */
+    public double getMax(final TimeUnit unit) {
+      return Snapshot.convert(this.max, unit);
+    }
+
+    /**
+     * @param quantile the quantile, between 0 and 1, like 0.99 for the 99th percentile
+     * @param unit the unit of the returned latency
+     * @return the latency under which the given quantile of the latencies recorded during the
+     * window are, 0 if none.
+     */
+    public double getQuantile(final double quantile, final TimeUnit unit) {
+      Preconditions.checkArgument(quantile >= 0 && quantile <= 1,
+        "Quantile must be between 0 and 1.");
+      Preconditions.checkNotNull(unit);
+
+      if (this.windowCount == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * this.windowCount));
+      long seen = 0;
+      for (int i = 0; i < this.counts.length; i++) {
+        seen += this.counts[i];
+        if (seen >= rank) {
+          return Snapshot.convert(Math.min(LatencyHistogram.highestValueAt(i), this.max), unit);
+        }
+      }
+      return Snapshot.convert(this.max, unit);
+    }
+
+    private static double convert(final long micros, final TimeUnit unit) {
+      return micros * (double) TimeUnit.MICROSECONDS.toNanos(1) / unit.toNanos(1);
+    }
+  }
+
+}
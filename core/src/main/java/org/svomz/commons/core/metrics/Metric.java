@@ -0,0 +1,7 @@
+package org.svomz.commons.core.metrics;
+
+/**
+ * A value measured by an application and registered in a {@link MetricRegistry}.
+ */
+public interface Metric {
+}
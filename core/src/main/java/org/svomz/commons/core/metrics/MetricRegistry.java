@@ -0,0 +1,119 @@
+package org.svomz.commons.core.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Holds the metrics of an application by name.
+ *
+ * Metrics are created on their first lookup and shared by all the components looking them up with
+ * the same name, so that components can keep a reference to their metrics and update them without
+ * going through the registry:
+ *
+ * <pre>
+ * this.requests = registry.counter("http.requests");
+ * </pre>
+ *
+ * The registry is a singleton of the injector it is injected from.
+ *
+ * Instances are thread safe.
+ */
+@Singleton
+public final class MetricRegistry {
+
+  private final ConcurrentMap<String, Metric> metrics;
+
+  @Inject
+  public MetricRegistry() {
+    this.metrics = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @param name the name of the counter
+   * @return the counter registered with this name, created if needed.
+   * @throws IllegalArgumentException if another kind of metric is registered with this name
+   */
+  public Counter counter(final String name) {
+    Metric metric = this.metrics.get(Preconditions.checkNotNull(name));
+    return this.getOrAdd(name, metric != null ? metric : new Counter(), Counter.class);
+  }
+
+  /**
+   * @param name the name of the meter
+   * @return the meter registered with this name, created if needed.
+   * @throws IllegalArgumentException if another kind of metric is registered with this name
+   */
+  public RateMeter meter(final String name) {
+    Metric metric = this.metrics.get(Preconditions.checkNotNull(name));
+    return this.getOrAdd(name, metric != null ? metric : new RateMeter(), RateMeter.class);
+  }
+
+  /**
+   * @param name the name of the timer
+   * @return the timer registered with this name, created if needed.
+   * @throws IllegalArgumentException if another kind of metric is registered with this name
+   */
+  public Timer timer(final String name) {
+    Metric metric = this.metrics.get(Preconditions.checkNotNull(name));
+    return this.getOrAdd(name, metric != null ? metric : new Timer(), Timer.class);
+  }
+
+  /**
+   * @param name the name of the histogram
+   * @return the latency histogram registered with this name, created if needed.
+   * @throws IllegalArgumentException if another kind of metric is registered with this name
+   */
+  public LatencyHistogram histogram(final String name) {
+    Metric metric = this.metrics.get(Preconditions.checkNotNull(name));
+    return this.getOrAdd(name, metric != null ? metric : new LatencyHistogram(),
+      LatencyHistogram.class);
+  }
+
+  /**
+   * Registers a gauge.
+   *
+   * @param name the name of the gauge
+   * @param gauge the gauge
+   * @throws IllegalArgumentException if a metric is already registered with this name
+   */
+  public <T> void register(final String name, final Gauge<T> gauge) {
+    Preconditions.checkNotNull(name);
+    Preconditions.checkNotNull(gauge);
+
+    Preconditions.checkArgument(this.metrics.putIfAbsent(name, gauge) == null,
+      "A metric named %s is already registered.", name);
+  }
+
+  /**
+   * @param name the name of a metric
+   * @return true if the metric was registered.
+   */
+  public boolean remove(final String name) {
+    return this.metrics.remove(Preconditions.checkNotNull(name)) != null;
+  }
+
+  /**
+   * @return the metrics registered, sorted by name.
+   */
+  public SortedMap<String, Metric> getMetrics() {
+    return ImmutableSortedMap.copyOf(this.metrics);
+  }
+
+  private <T extends Metric> T getOrAdd(final String name, final Metric metric,
+    final Class<T> type) {
+    Metric previous = this.metrics.putIfAbsent(name, metric);
+    Metric registered = previous != null ? previous : metric;
+    Preconditions.checkArgument(type.isInstance(registered),
+      "A metric named %s is already registered as a %s.", name,
+      registered.getClass().getSimpleName());
+    return type.cast(registered);
+  }
+
+}
@@ -0,0 +1,134 @@
+package org.svomz.commons.core.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the rate of events over a sliding time window, like the number of requests per second
+ * during the last minute.
+ *
+ * The window is split in slices, each counting its events with a striped counter. Marking an event
+ * increments the slice covering the current time, the slice is cleared when it is reused for a new
+ * period of time. An event marked concurrently with the clearing of its slice may be lost. The rate
+ * is computed when it is read, from the slices of the window.
+ *
+ * Instances are thread safe.
+ */
+public final class RateMeter implements Metric {
+
+  public static final long DEFAULT_WINDOW = TimeUnit.MINUTES.toNanos(1);
+
+  private static final int SLICES = 12;
+
+  private final Ticker ticker;
+  private final long origin;
+  private final long sliceDuration;
+  private final Slice[] slices;
+  private final LongAdder count;
+
+  /**
+   * Creates a meter measuring the rate of the last minute.
+   */
+  public RateMeter() {
+    this(DEFAULT_WINDOW, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param window the duration over which the rate is measured
+   * @param unit the unit of the window
+   */
+  public RateMeter(final long window, final TimeUnit unit) {
+    this(window, unit, Ticker.systemTicker());
+  }
+
+  RateMeter(final long window, final TimeUnit unit, final Ticker ticker) {
+    Preconditions.checkArgument(window > 0, "Window must be positive.");
+    Preconditions.checkNotNull(unit);
+    Preconditions.checkNotNull(ticker);
+
+    this.ticker = ticker;
+    this.origin = ticker.read();
+    this.sliceDuration = Math.max(1, unit.toNanos(window) / SLICES);
+    // One more slice than the window so that the oldest one can be cleared while the others are
+    // read.
+    this.slices = new Slice[SLICES + 1];
+    for (int i = 0; i < this.slices.length; i++) {
+      this.slices[i] = new Slice();
+    }
+    this.count = new LongAdder();
+  }
+
+  public void mark() {
+    this.mark(1);
+  }
+
+  /**
+   * @param events the number of events that occurred
+   */
+  public void mark(final long events) {
+    long epoch = this.elapsed() / this.sliceDuration;
+    Slice slice = this.slices[(int) (epoch % this.slices.length)];
+    slice.roll(epoch);
+    slice.count.add(events);
+    this.count.add(events);
+  }
+
+  /**
+   * @return the number of events marked since the creation of the meter.
+   */
+  public long getCount() {
+    return this.count.sum();
+  }
+
+  /**
+   * @param unit the unit of time of the rate
+   * @return the number of events per unit of time during the window.
+   */
+  public double getRate(final TimeUnit unit) {
+    Preconditions.checkNotNull(unit);
+
+    long elapsed = this.elapsed();
+    long epoch = elapsed / this.sliceDuration;
+    long events = 0;
+    for (Slice slice : this.slices) {
+      long sliceEpoch = slice.epoch.get();
+      if (sliceEpoch > epoch - SLICES && sliceEpoch <= epoch) {
+        events += slice.count.sum();
+      }
+    }
+    // The current slice is only partially elapsed.
+    long covered = Math.min(elapsed,
+      (SLICES - 1) * this.sliceDuration + elapsed % this.sliceDuration);
+    return covered > 0 ? events * (double) unit.toNanos(1) / covered : 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%.2f/s", this.getRate(TimeUnit.SECONDS));
+  }
+
+  private long elapsed() {
+    return this.ticker.read() - this.origin;
+  }
+
+  /**
+   * Events marked during a slice of the window.
+   */
+  private static final class Slice {
+
+    private final AtomicLong epoch = new AtomicLong(-1);
+    private final LongAdder count = new LongAdder();
+
+    private void roll(final long current) {
+      long previous = this.epoch.get();
+      if (previous < current && this.epoch.compareAndSet(previous, current)) {
+        this.count.reset();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+package org.svomz.commons.core.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the duration and the rate of an operation.
+ *
+ * <pre>
+ * try (Timer.Context context = timer.time()) {
+ *   // the timed operation
+ * }
+ * </pre>
+ *
+ * The durations are recorded by a {@link LatencyHistogram}, which reports their percentiles and
+ * their maximum over its window, and keeps their count and their total since the creation of the
+ * timer. The rate is measured by a {@link RateMeter} over the same window. All of them are recorded
+ * without locks.
+ *
+ * Instances are thread safe.
+ */
+public final class Timer implements Metric {
+
+  private final Ticker ticker;
+  private final RateMeter meter;
+  private final LatencyHistogram histogram;
+
+  public Timer() {
+    this(Ticker.systemTicker());
+  }
+
+  Timer(final Ticker ticker) {
+    this.ticker = Preconditions.checkNotNull(ticker);
+    this.meter = new RateMeter(RateMeter.DEFAULT_WINDOW, TimeUnit.NANOSECONDS, ticker);
+    this.histogram = new LatencyHistogram(LatencyHistogram.DEFAULT_WINDOW, TimeUnit.NANOSECONDS,
+      ticker);
+  }
+
+  /**
+   * @return a context recording the time elapsed until it is closed.
+   */
+  public Context time() {
+    return new Context(this, this.ticker.read());
+  }
+
+  /**
+   * @param duration the duration of an operation
+   * @param unit the unit of the duration
+   */
+  public void update(final long duration, final TimeUnit unit) {
+    Preconditions.checkArgument(duration >= 0, "Duration can't be negative.");
+    Preconditions.checkNotNull(unit);
+
+    this.meter.mark();
+    this.histogram.record(duration, unit);
+  }
+
+  /**
+   * @return the number of operations timed.
+   */
+  public long getCount() {
+    return this.meter.getCount();
+  }
+
+  /**
+   * @param unit the unit of time of the rate
+   * @return the number of operations per unit of time during the window of the timer.
+   */
+  public double getRate(final TimeUnit unit) {
+    return this.meter.getRate(unit);
+  }
+
+  /**
+   * @param unit the unit of the returned duration
+   * @return the total duration of the operations timed, with a microsecond resolution.
+   */
+  public double getTotal(final TimeUnit unit) {
+    return this.histogram.snapshot().getSum(unit);
+  }
+
+  /**
+   * @param unit the unit of the returned duration
+   * @return the mean duration of the operations timed, 0 if none.
+   */
+  public double getMean(final TimeUnit unit) {
+    LatencyHistogram.Snapshot snapshot = this.histogram.snapshot();
+    return snapshot.getCount() > 0 ? snapshot.getSum(unit) / snapshot.getCount() : 0;
+  }
+
+  /**
+   * @param unit the unit of the returned duration
+   * @return the longest duration of the operations timed during the window of the timer, 0 if
+   * none.
+   */
+  public double getMax(final TimeUnit unit) {
+    return this.histogram.snapshot().getMax(unit);
+  }
+
+  /**
+   * @return the durations of the operations timed, with their percentiles during the window of the
+   * timer.
+   */
+  public LatencyHistogram.Snapshot snapshot() {
+    return this.histogram.snapshot();
+  }
+
+  @Override
+  public String toString() {
+    LatencyHistogram.Snapshot snapshot = this.histogram.snapshot();
+    return String.format("count=%d mean=%.3fms p99=%.3fms max=%.3fms", snapshot.getCount(),
+      snapshot.getCount() > 0
+        ? snapshot.getSum(TimeUnit.MILLISECONDS) / snapshot.getCount() : 0,
+      snapshot.getQuantile(0.99, TimeUnit.MILLISECONDS), snapshot.getMax(TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Times an operation from its creation until it is closed.
+   */
+  public static final class Context implements AutoCloseable {
+
+    private final Timer timer;
+    private final long start;
+    private boolean closed;
+
+    private Context(final Timer timer, final long start) {
+      this.timer = timer;
+      this.start = start;
+    }
+
+    /**
+     * Records the time elapsed since the creation of the context, only once.
+     *
+     * @return the time elapsed in nanoseconds
+     */
+    public long stop() {
+      long elapsed = this.timer.ticker.read() - this.start;
+      if (!this.closed) {
+        this.closed = true;
+        this.timer.update(elapsed, TimeUnit.NANOSECONDS);
+      }
+      return elapsed;
+    }
+
+    @Override
+    public void close() {
+      this.stop();
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+package org.svomz.commons.core.metrics;
+
+import com.google.common.base.Ticker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramUnitTest {
+
+  private long now;
+
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return LatencyHistogramUnitTest.this.now;
+    }
+  };
+
+  @Test
+  public void quantilesShouldBeReportedWithinTwoPercent() {
+    LatencyHistogram histogram = new LatencyHistogram(1, TimeUnit.MINUTES, this.ticker);
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i, TimeUnit.MILLISECONDS);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    Assert.assertEquals(10000, snapshot.getCount());
+    Assert.assertEquals(10000, snapshot.getWindowCount());
+    Assert.assertEquals(5000, snapshot.getQuantile(0.5, TimeUnit.MILLISECONDS), 100);
+    Assert.assertEquals(9900, snapshot.getQuantile(0.99, TimeUnit.MILLISECONDS), 198);
+    Assert.assertEquals(10, snapshot.getMax(TimeUnit.SECONDS), 0);
+    Assert.assertEquals(50005, snapshot.getSum(TimeUnit.SECONDS), 0.001);
+  }
+
+  @Test
+  public void quantilesShouldOnlyCoverTheWindow() {
+    LatencyHistogram histogram = new LatencyHistogram(1, TimeUnit.MINUTES, this.ticker);
+    histogram.record(5, TimeUnit.SECONDS);
+    this.now += TimeUnit.SECONDS.toNanos(30);
+    histogram.record(10, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(5, histogram.snapshot().getMax(TimeUnit.SECONDS), 0);
+
+    this.now += TimeUnit.SECONDS.toNanos(31);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    Assert.assertEquals(2, snapshot.getCount());
+    Assert.assertEquals(1, snapshot.getWindowCount());
+    Assert.assertEquals(10, snapshot.getQuantile(0.99, TimeUnit.MILLISECONDS), 0);
+
+    this.now += TimeUnit.MINUTES.toNanos(1);
+    Assert.assertEquals(0, histogram.snapshot().getWindowCount());
+    Assert.assertEquals(0, histogram.snapshot().getQuantile(0.99, TimeUnit.MILLISECONDS), 0);
+  }
+
+  @Test
+  public void quantilesShouldOnlyCoverTheSlicesOfTheWindow() {
+    LatencyHistogram histogram = new LatencyHistogram(1, TimeUnit.MINUTES, 2, this.ticker);
+    histogram.record(5, TimeUnit.SECONDS);
+    this.now += TimeUnit.SECONDS.toNanos(30);
+    histogram.record(10, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(2, histogram.snapshot().getWindowCount());
+
+    this.now += TimeUnit.SECONDS.toNanos(30);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    Assert.assertEquals(1, snapshot.getWindowCount());
+    Assert.assertEquals(10, snapshot.getMax(TimeUnit.MILLISECONDS), 0);
+  }
+
+}
@@ -0,0 +1,62 @@
+package org.svomz.commons.core.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MetricRegistryUnitTest {
+
+  private final MetricRegistry registry = new MetricRegistry();
+
+  @Test
+  public void metricsShouldBeSharedByName() {
+    Assert.assertSame(this.registry.counter("requests"), this.registry.counter("requests"));
+    Assert.assertSame(this.registry.meter("rate"), this.registry.meter("rate"));
+    Assert.assertSame(this.registry.timer("latency"), this.registry.timer("latency"));
+    this.registry.register("queue", new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        return 3;
+      }
+    });
+
+    Assert.assertEquals(4, this.registry.getMetrics().size());
+    Assert.assertEquals("latency", this.registry.getMetrics().firstKey());
+    Assert.assertTrue(this.registry.remove("queue"));
+    Assert.assertFalse(this.registry.remove("queue"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void metricsOfAnotherKindShouldBeRejected() {
+    this.registry.counter("requests");
+    this.registry.timer("requests");
+  }
+
+  @Test(timeout = 10000)
+  public void counterShouldNotLoseConcurrentIncrements() throws InterruptedException {
+    final Counter counter = this.registry.counter("requests");
+    final CountDownLatch done = new CountDownLatch(8);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 100000; j++) {
+            counter.increment();
+          }
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+
+    Assert.assertEquals(800000, counter.getCount());
+  }
+
+}
@@ -0,0 +1,65 @@
+package org.svomz.commons.core.metrics;
+
+import com.google.common.base.Ticker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RateMeterUnitTest {
+
+  private long now;
+
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return RateMeterUnitTest.this.now;
+    }
+  };
+
+  @Test
+  public void rateShouldCoverTheWindow() {
+    RateMeter meter = new RateMeter(1, TimeUnit.MINUTES, this.ticker);
+    Assert.assertEquals(0, meter.getRate(TimeUnit.SECONDS), 0);
+
+    for (int second = 0; second < 60; second++) {
+      meter.mark(10);
+      this.now += TimeUnit.SECONDS.toNanos(1);
+    }
+    Assert.assertEquals(600, meter.getCount());
+    Assert.assertEquals(10, meter.getRate(TimeUnit.SECONDS), 0.5);
+    Assert.assertEquals(600, meter.getRate(TimeUnit.MINUTES), 30);
+
+    this.now += TimeUnit.SECONDS.toNanos(30);
+    Assert.assertEquals(5, meter.getRate(TimeUnit.SECONDS), 0.5);
+    this.now += TimeUnit.MINUTES.toNanos(1);
+    Assert.assertEquals(0, meter.getRate(TimeUnit.SECONDS), 0);
+    Assert.assertEquals(600, meter.getCount());
+  }
+
+  @Test
+  public void timerShouldRecordDurations() {
+    Timer timer = new Timer(this.ticker);
+    try (Timer.Context context = timer.time()) {
+      this.now += TimeUnit.MILLISECONDS.toNanos(30);
+    }
+    timer.update(10, TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals(2, timer.getCount());
+    Assert.assertEquals(40, timer.getTotal(TimeUnit.MILLISECONDS), 0);
+    Assert.assertEquals(20, timer.getMean(TimeUnit.MILLISECONDS), 0);
+    Assert.assertEquals(30, timer.getMax(TimeUnit.MILLISECONDS), 0);
+    Assert.assertEquals(10, timer.snapshot().getQuantile(0.5, TimeUnit.MILLISECONDS), 0.2);
+    Assert.assertEquals(30, timer.snapshot().getQuantile(0.99, TimeUnit.MILLISECONDS), 0);
+
+    // The maximum and the percentiles are reported over the window, the count and the total
+    // since the creation of the timer.
+    this.now += TimeUnit.MINUTES.toNanos(2);
+    Assert.assertEquals(0, timer.getMax(TimeUnit.MILLISECONDS), 0);
+    Assert.assertEquals(0, timer.snapshot().getWindowCount());
+    Assert.assertEquals(2, timer.getCount());
+    Assert.assertEquals(40, timer.getTotal(TimeUnit.MILLISECONDS), 0);
+  }
+
+}
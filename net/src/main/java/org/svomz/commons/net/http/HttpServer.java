@@ -2,6 +2,10 @@ package org.svomz.commons.net.http;
 
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.svomz.commons.core.Service;
+import org.svomz.commons.net.http.metrics.RequestMetrics;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.Filter;
 import javax.servlet.ServletContextListener;
@@ -16,6 +20,39 @@ import javax.servlet.http.HttpServlet;
  */
 public interface HttpServer extends Service {
 
+  /**
+   * Stops the server gracefully: it stops accepting connections, waits for the in-flight requests
+   * to complete for at most the given timeout and then closes the remaining connections.
+   *
+   * @param timeout the maximum time to wait for in-flight requests, 0 to stop immediately
+   * @param unit the unit of the timeout
+   */
+  void stop(final long timeout, final TimeUnit unit);
+
+  /**
+   * Stops the server gracefully like {@link #stop(long, TimeUnit)}, but by another thread. The
+   * returned future doesn't wait for the request handled by the given thread, if any, since that
+   * thread waits for the server to stop, for instance while it stops the application. The server
+   * still waits for that request, within the timeout, before closing its connection.
+   *
+   * @param timeout the maximum time to wait for in-flight requests, 0 to stop immediately
+   * @param unit the unit of the timeout
+   * @param requestThread the thread waiting for the server to stop
+   * @return a future completed once the in-flight requests, apart from the one of the given
+   * thread, are completed or once the server is stopped.
+   */
+  Future<Void> stopAsync(final long timeout, final TimeUnit unit, final Thread requestThread);
+
+  /**
+   * @return the number of requests being handled by the server.
+   */
+  int getInFlightRequests();
+
+  /**
+   * @return the metrics of the requests handled by the server.
+   */
+  RequestMetrics getRequestMetrics();
+
   /**
    * Registers a servlet class to the http server.
    *
@@ -40,6 +77,16 @@ public interface HttpServer extends Service {
    */
   void registerServlet(final String className, final String path);
 
+  /**
+   * Serves the files of a directory. Precompressed variants of the files are served to the clients
+   * accepting their encoding, see
+   * {@link org.svomz.commons.net.http.HttpServerConfig#getPrecompressedEncodings()}.
+   *
+   * @param resourceBase the directory, or the url of the directory, holding the files
+   * @param path the url served by the files, like "/static/*"
+   */
+  void registerStaticContent(final String resourceBase, final String path);
+
   /**
    * Registers a filter class to the http server.
    *
@@ -0,0 +1,479 @@
+package org.svomz.commons.net.http;
+
+import com.google.common.base.Preconditions;
+
+import com.google.common.collect.ImmutableList;
+
+import org.svomz.commons.net.http.metrics.RequestMetrics;
+
+import java.io.File;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Tuning of an {@link org.svomz.commons.net.http.HttpServer}: the port it listens to, its request
+ * thread pool and its connector.
+ *
+ * Acceptors and selectors set to -1 let the implementation pick a value based on the number of
+ * processors. An accept queue size of 0 uses the operating system default. A max queued requests of
+ * 0 means an unbounded queue of requests waiting for a thread.
+ *
+ * With virtual threads enabled, each request runs on a new virtual thread instead of a thread of
+ * the pool, so that requests blocked on IO don't cap the number of concurrent requests. The thread
+ * and queue bounds don't apply then. Virtual threads require Java 21; on older virtual machines the
+ * thread pool is used.
+ *
+ * Besides HTTP/1.1, the server can serve HTTP/2 over cleartext connections (h2c) on the same port,
+ * and HTTP/2 over TLS on a secure port, where the protocol is negotiated with ALPN. The keystore
+ * holding the certificate of the server is read from the local file system. HTTP/2 over TLS
+ * requires the ALPN support of Java 9 or later.
+ *
+ * When compression is enabled, responses larger than a minimum size and of an allowed MIME type are
+ * gzipped for the clients accepting it. Static content registered with
+ * {@link org.svomz.commons.net.http.HttpServer#registerStaticContent(String, String)} is served from
+ * its precompressed variants, like "app.js.br" or "app.js.gz", when the client accepts their
+ * encoding, saving the compression of each response. A variant is only served if it is smaller and
+ * not older than the original file.
+ *
+ * The latencies of the requests are recorded by route, for a bounded number of routes, see
+ * {@link org.svomz.commons.net.http.metrics.RequestMetrics}.
+ *
+ * Instances are immutable.
+ */
+public final class HttpServerConfig {
+
+  public static final int DEFAULT_MIN_THREADS = 8;
+  public static final int DEFAULT_MAX_THREADS = 200;
+  public static final int DEFAULT_THREAD_IDLE_TIMEOUT = 60000;
+  public static final int DEFAULT_MAX_QUEUED_REQUESTS = 0;
+  public static final int DEFAULT_ACCEPTORS = -1;
+  public static final int DEFAULT_SELECTORS = -1;
+  public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+  public static final int DEFAULT_ACCEPT_QUEUE_SIZE = 0;
+  public static final int DEFAULT_OUTPUT_BUFFER_SIZE = 32768;
+  public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 128;
+  public static final int DEFAULT_INITIAL_STREAM_WINDOW_SIZE = 524288;
+  public static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+  public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+  public static final List<String> DEFAULT_COMPRESSED_MIME_TYPES = ImmutableList.of(
+    "application/json", "application/javascript", "application/xml", "image/svg+xml", "text/css",
+    "text/html", "text/plain", "text/xml");
+  public static final List<String> DEFAULT_PRECOMPRESSED_ENCODINGS = ImmutableList.of("br", "gzip");
+  public static final int DEFAULT_MAX_ROUTES = RequestMetrics.DEFAULT_MAX_ROUTES;
+
+  private final int port;
+  private final int minThreads;
+  private final int maxThreads;
+  private final int threadIdleTimeout;
+  private final int maxQueuedRequests;
+  private final int acceptors;
+  private final int selectors;
+  private final long idleTimeout;
+  private final int acceptQueueSize;
+  private final int outputBufferSize;
+  private final boolean virtualThreads;
+  private final boolean http2Cleartext;
+  private final int maxConcurrentStreams;
+  private final int initialStreamWindowSize;
+  private final int securePort;
+  private final String keyStorePath;
+  private final String keyStorePassword;
+  private final boolean compression;
+  private final int compressionMinSize;
+  private final int compressionLevel;
+  private final List<String> compressedMimeTypes;
+  private final List<String> precompressedEncodings;
+  private final int maxRoutes;
+
+  private HttpServerConfig(final Builder builder) {
+    this.port = builder.port;
+    this.minThreads = builder.minThreads;
+    this.maxThreads = builder.maxThreads;
+    this.threadIdleTimeout = builder.threadIdleTimeout;
+    this.maxQueuedRequests = builder.maxQueuedRequests;
+    this.acceptors = builder.acceptors;
+    this.selectors = builder.selectors;
+    this.idleTimeout = builder.idleTimeout;
+    this.acceptQueueSize = builder.acceptQueueSize;
+    this.outputBufferSize = builder.outputBufferSize;
+    this.virtualThreads = builder.virtualThreads;
+    this.http2Cleartext = builder.http2Cleartext;
+    this.maxConcurrentStreams = builder.maxConcurrentStreams;
+    this.initialStreamWindowSize = builder.initialStreamWindowSize;
+    this.securePort = builder.securePort;
+    this.keyStorePath = builder.keyStorePath;
+    this.keyStorePassword = builder.keyStorePassword;
+    this.compression = builder.compression;
+    this.compressionMinSize = builder.compressionMinSize;
+    this.compressionLevel = builder.compressionLevel;
+    this.compressedMimeTypes = builder.compressedMimeTypes;
+    this.precompressedEncodings = builder.precompressedEncodings;
+    this.maxRoutes = builder.maxRoutes;
+  }
+
+  /**
+   * @return the port on which the http server listens to.
+   */
+  public int getPort() {
+    return this.port;
+  }
+
+  /**
+   * @return the number of request threads kept alive when idle.
+   */
+  public int getMinThreads() {
+    return this.minThreads;
+  }
+
+  /**
+   * @return the maximum number of request threads.
+   */
+  public int getMaxThreads() {
+    return this.maxThreads;
+  }
+
+  /**
+   * @return the time in milliseconds after which an idle request thread above the minimum is
+   * stopped.
+   */
+  public int getThreadIdleTimeout() {
+    return this.threadIdleTimeout;
+  }
+
+  /**
+   * @return the maximum number of requests waiting for a thread, 0 for no limit.
+   */
+  public int getMaxQueuedRequests() {
+    return this.maxQueuedRequests;
+  }
+
+  /**
+   * @return the number of threads accepting connections, -1 for the default.
+   */
+  public int getAcceptors() {
+    return this.acceptors;
+  }
+
+  /**
+   * @return the number of threads selecting the connections ready for IO, -1 for the default.
+   */
+  public int getSelectors() {
+    return this.selectors;
+  }
+
+  /**
+   * @return the time in milliseconds after which an idle connection is closed.
+   */
+  public long getIdleTimeout() {
+    return this.idleTimeout;
+  }
+
+  /**
+   * @return the size of the queue of connections waiting to be accepted, 0 for the default.
+   */
+  public int getAcceptQueueSize() {
+    return this.acceptQueueSize;
+  }
+
+  /**
+   * @return the size in bytes of the response buffer.
+   */
+  public int getOutputBufferSize() {
+    return this.outputBufferSize;
+  }
+
+  /**
+   * @return true if requests should run on virtual threads when the virtual machine supports them.
+   */
+  public boolean isVirtualThreads() {
+    return this.virtualThreads;
+  }
+
+  /**
+   * @return true if HTTP/2 over cleartext connections is served next to HTTP/1.1.
+   */
+  public boolean isHttp2Cleartext() {
+    return this.http2Cleartext;
+  }
+
+  /**
+   * @return the maximum number of streams an HTTP/2 client can open concurrently on a connection.
+   */
+  public int getMaxConcurrentStreams() {
+    return this.maxConcurrentStreams;
+  }
+
+  /**
+   * @return the size in bytes of the initial flow control window of an HTTP/2 stream.
+   */
+  public int getInitialStreamWindowSize() {
+    return this.initialStreamWindowSize;
+  }
+
+  /**
+   * @return true if the server listens to a secure port.
+   */
+  public boolean isTls() {
+    return this.keyStorePath != null;
+  }
+
+  /**
+   * @return the port on which the http server listens to TLS connections, 0 if TLS is disabled.
+   */
+  public int getSecurePort() {
+    return this.securePort;
+  }
+
+  /**
+   * @return the path of the keystore holding the certificate of the server, null if TLS is
+   * disabled.
+   */
+  public String getKeyStorePath() {
+    return this.keyStorePath;
+  }
+
+  /**
+   * @return the password of the keystore, null if TLS is disabled.
+   */
+  public String getKeyStorePassword() {
+    return this.keyStorePassword;
+  }
+
+  /**
+   * @return true if the responses are compressed for the clients accepting it.
+   */
+  public boolean isCompression() {
+    return this.compression;
+  }
+
+  /**
+   * @return the size in bytes under which a response is not compressed.
+   */
+  public int getCompressionMinSize() {
+    return this.compressionMinSize;
+  }
+
+  /**
+   * @return the level of compression, from 1 (fastest) to 9 (smallest), -1 for the default.
+   */
+  public int getCompressionLevel() {
+    return this.compressionLevel;
+  }
+
+  /**
+   * @return the MIME types of the responses that are compressed.
+   */
+  public List<String> getCompressedMimeTypes() {
+    return this.compressedMimeTypes;
+  }
+
+  /**
+   * @return the encodings of the precompressed variants of static content, by order of preference.
+   */
+  public List<String> getPrecompressedEncodings() {
+    return this.precompressedEncodings;
+  }
+
+  /**
+   * @return the maximum number of routes whose latencies are recorded apart.
+   */
+  public int getMaxRoutes() {
+    return this.maxRoutes;
+  }
+
+  /**
+   * @param port the port on which the http server will listen to
+   * @return a builder initialized with the default settings.
+   */
+  public static Builder builder(final int port) {
+    return new Builder(port);
+  }
+
+  /**
+   * Builds a {@link org.svomz.commons.net.http.HttpServerConfig}.
+   */
+  public static class Builder {
+
+    private int port;
+    private int minThreads = DEFAULT_MIN_THREADS;
+    private int maxThreads = DEFAULT_MAX_THREADS;
+    private int threadIdleTimeout = DEFAULT_THREAD_IDLE_TIMEOUT;
+    private int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+    private int acceptors = DEFAULT_ACCEPTORS;
+    private int selectors = DEFAULT_SELECTORS;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private int acceptQueueSize = DEFAULT_ACCEPT_QUEUE_SIZE;
+    private int outputBufferSize = DEFAULT_OUTPUT_BUFFER_SIZE;
+    private boolean virtualThreads;
+    private boolean http2Cleartext;
+    private int maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+    private int initialStreamWindowSize = DEFAULT_INITIAL_STREAM_WINDOW_SIZE;
+    private int securePort;
+    private String keyStorePath;
+    private String keyStorePassword;
+    private boolean compression;
+    private int compressionMinSize = DEFAULT_COMPRESSION_MIN_SIZE;
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private List<String> compressedMimeTypes = DEFAULT_COMPRESSED_MIME_TYPES;
+    private List<String> precompressedEncodings = DEFAULT_PRECOMPRESSED_ENCODINGS;
+    private int maxRoutes = DEFAULT_MAX_ROUTES;
+
+    public Builder(final int port) {
+      this.port(port);
+    }
+
+    public Builder port(final int port) {
+      Preconditions.checkArgument(port >= 1 && port <= 65535, "Invalid port range.");
+      this.port = port;
+      return this;
+    }
+
+    public Builder threads(final int minThreads, final int maxThreads) {
+      Preconditions.checkArgument(minThreads > 0, "Min threads must be positive.");
+      Preconditions.checkArgument(maxThreads >= minThreads,
+        "Max threads must be greater than or equal to min threads.");
+      this.minThreads = minThreads;
+      this.maxThreads = maxThreads;
+      return this;
+    }
+
+    public Builder threadIdleTimeout(final int threadIdleTimeout) {
+      Preconditions.checkArgument(threadIdleTimeout > 0, "Thread idle timeout must be positive.");
+      this.threadIdleTimeout = threadIdleTimeout;
+      return this;
+    }
+
+    public Builder maxQueuedRequests(final int maxQueuedRequests) {
+      Preconditions.checkArgument(maxQueuedRequests >= 0, "Max queued requests can't be negative.");
+      this.maxQueuedRequests = maxQueuedRequests;
+      return this;
+    }
+
+    public Builder acceptors(final int acceptors) {
+      Preconditions.checkArgument(acceptors == -1 || acceptors > 0,
+        "Acceptors must be positive or -1.");
+      this.acceptors = acceptors;
+      return this;
+    }
+
+    public Builder selectors(final int selectors) {
+      Preconditions.checkArgument(selectors == -1 || selectors > 0,
+        "Selectors must be positive or -1.");
+      this.selectors = selectors;
+      return this;
+    }
+
+    public Builder idleTimeout(final long idleTimeout) {
+      Preconditions.checkArgument(idleTimeout > 0, "Idle timeout must be positive.");
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    public Builder acceptQueueSize(final int acceptQueueSize) {
+      Preconditions.checkArgument(acceptQueueSize >= 0, "Accept queue size can't be negative.");
+      this.acceptQueueSize = acceptQueueSize;
+      return this;
+    }
+
+    public Builder outputBufferSize(final int outputBufferSize) {
+      Preconditions.checkArgument(outputBufferSize > 0, "Output buffer size must be positive.");
+      this.outputBufferSize = outputBufferSize;
+      return this;
+    }
+
+    public Builder virtualThreads(final boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
+    public Builder http2Cleartext(final boolean http2Cleartext) {
+      this.http2Cleartext = http2Cleartext;
+      return this;
+    }
+
+    public Builder maxConcurrentStreams(final int maxConcurrentStreams) {
+      Preconditions.checkArgument(maxConcurrentStreams > 0,
+        "Max concurrent streams must be positive.");
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      return this;
+    }
+
+    public Builder initialStreamWindowSize(final int initialStreamWindowSize) {
+      // 65535 bytes is the minimum window size of the HTTP/2 specification.
+      Preconditions.checkArgument(initialStreamWindowSize >= 65535,
+        "Initial stream window size must be at least 65535 bytes.");
+      this.initialStreamWindowSize = initialStreamWindowSize;
+      return this;
+    }
+
+    /**
+     * Enables HTTP/1.1 and HTTP/2 over TLS.
+     *
+     * @param securePort the port on which the http server will listen to TLS connections
+     * @param keyStorePath the path of the keystore holding the certificate of the server
+     * @param keyStorePassword the password of the keystore
+     */
+    public Builder tls(final int securePort, final String keyStorePath,
+      final String keyStorePassword) {
+      Preconditions.checkArgument(securePort >= 1 && securePort <= 65535, "Invalid port range.");
+      Preconditions.checkNotNull(keyStorePath);
+      Preconditions.checkNotNull(keyStorePassword);
+      Preconditions.checkArgument(new File(keyStorePath).isFile(), "Keystore not found.");
+      this.securePort = securePort;
+      this.keyStorePath = keyStorePath;
+      this.keyStorePassword = keyStorePassword;
+      return this;
+    }
+
+    public Builder compression(final boolean compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    public Builder compressionMinSize(final int compressionMinSize) {
+      Preconditions.checkArgument(compressionMinSize >= 0,
+        "Compression min size can't be negative.");
+      this.compressionMinSize = compressionMinSize;
+      return this;
+    }
+
+    public Builder compressionLevel(final int compressionLevel) {
+      Preconditions.checkArgument(compressionLevel == Deflater.DEFAULT_COMPRESSION
+          || (compressionLevel >= Deflater.BEST_SPEED && compressionLevel <= Deflater.BEST_COMPRESSION),
+        "Compression level must be between 1 and 9 or -1.");
+      this.compressionLevel = compressionLevel;
+      return this;
+    }
+
+    public Builder compressedMimeTypes(final String... compressedMimeTypes) {
+      Preconditions.checkArgument(compressedMimeTypes.length > 0,
+        "At least one MIME type must be compressed.");
+      this.compressedMimeTypes = ImmutableList.copyOf(compressedMimeTypes);
+      return this;
+    }
+
+    /**
+     * @param precompressedEncodings the encodings of the precompressed variants of static content
+     * ("br", "gzip", ...), by order of preference. A variant has the extension of its encoding,
+     * ".gz" for gzip.
+     */
+    public Builder precompressedEncodings(final String... precompressedEncodings) {
+      this.precompressedEncodings = ImmutableList.copyOf(precompressedEncodings);
+      return this;
+    }
+
+    public Builder maxRoutes(final int maxRoutes) {
+      Preconditions.checkArgument(maxRoutes > 0, "Max routes must be positive.");
+      this.maxRoutes = maxRoutes;
+      return this;
+    }
+
+    public HttpServerConfig build() {
+      Preconditions.checkState(this.keyStorePath == null || this.securePort != this.port,
+        "Secure port must differ from port.");
+      return new HttpServerConfig(this);
+    }
+
+  }
+
+}
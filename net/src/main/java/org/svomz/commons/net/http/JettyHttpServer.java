@@ -1,18 +1,63 @@
 package org.svomz.commons.net.http;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.SettableFuture;
 
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.pathmap.MatchedResource;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.Graceful;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.svomz.commons.net.http.metrics.RequestMetrics;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.ServletContextListener;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Implements {@link org.svomz.commons.net.http.HttpServer} using Jetty.
@@ -21,6 +66,27 @@ import javax.servlet.http.HttpServlet;
  * as context path.
  *
  * This implementation has no session nor security handlers.
+ *
+ * The request thread pool and the connector are tuned by a
+ * {@link org.svomz.commons.net.http.HttpServerConfig}. When the number of queued requests is bounded
+ * and the queue is full, the connections of the requests that can't be queued are closed. When
+ * virtual threads are enabled and supported, the thread pool is replaced by an executor starting a
+ * virtual thread per task.
+ *
+ * The server serves HTTP/1.1 on its port and, when enabled, HTTP/2 over cleartext connections on the
+ * same port. When TLS is enabled, a second connector serves HTTP/2 and HTTP/1.1 over TLS on the
+ * secure port, negotiating the protocol with ALPN.
+ *
+ * When compression is enabled, a {@link org.eclipse.jetty.server.handler.gzip.GzipHandler} gzips
+ * the responses for the clients accepting it, and adds "Vary: Accept-Encoding" to them. Responses
+ * already encoded, like the precompressed variants of static content, are left untouched.
+ *
+ * The requests, their latencies by route and the time tasks wait for a thread are recorded in
+ * {@link org.svomz.commons.net.http.metrics.RequestMetrics}.
+ *
+ * Requests are counted by a {@link org.eclipse.jetty.server.handler.StatisticsHandler}, and until
+ * their response is completed, error pages included, which lets
+ * {@link #stop(long, java.util.concurrent.TimeUnit)} drain the in-flight requests before stopping.
  */
 public class JettyHttpServer implements HttpServer {
 
@@ -28,18 +94,174 @@ public class JettyHttpServer implements HttpServer {
 
   private final ServletContextHandler servletContextHandler;
 
+  private final StatisticsHandler statisticsHandler;
+
+  private final ResponseDrain responseDrain;
+
   private final Server server;
 
+  private final HttpServerConfig config;
+
+  private final RequestMetrics metrics;
+
   /**
    * @param port the port on which the http server will listen to
    */
   public JettyHttpServer(final int port) {
-    Preconditions.checkArgument(port >= 1 && port <= 65535, "Invalid port range.");
+    this(HttpServerConfig.builder(port).build());
+  }
 
-    this.server = new Server(port);
+  /**
+   * @param config the port and the tuning of the server
+   */
+  public JettyHttpServer(final HttpServerConfig config) {
+    Preconditions.checkNotNull(config);
+
+    this.config = config;
+    this.metrics = new RequestMetrics(config.getMaxRoutes());
+    this.server = new Server(JettyHttpServer.createThreadPool(config, this.metrics));
+    this.responseDrain = new ResponseDrain();
+    this.server.addConnector(JettyHttpServer.createConnector(this.server, config));
+    if (config.isTls()) {
+      this.server.addConnector(JettyHttpServer.createSecureConnector(this.server, config));
+    }
+    for (Connector connector : this.server.getConnectors()) {
+      // Notified once the responses are completed.
+      connector.addBean(this.responseDrain.completionListener);
+    }
     this.servletContextHandler = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
     this.servletContextHandler.setContextPath("/");
-    this.server.setHandler(this.servletContextHandler);
+
+    HandlerWrapper metricsHandler = new RequestMetricsHandler(this.metrics,
+      this.servletContextHandler);
+    this.statisticsHandler = new StatisticsHandler();
+    this.statisticsHandler.setHandler(this.responseDrain);
+    this.responseDrain.setHandler(metricsHandler);
+    if (config.isCompression()) {
+      GzipHandler gzipHandler = new GzipHandler();
+      gzipHandler.setMinGzipSize(config.getCompressionMinSize());
+      gzipHandler.setCompressionLevel(config.getCompressionLevel());
+      // Compresses for all user agents, so that responses only vary on Accept-Encoding.
+      gzipHandler.setExcludedAgentPatterns();
+      gzipHandler.setIncludedMimeTypes(
+        config.getCompressedMimeTypes().toArray(new String[0]));
+      gzipHandler.setHandler(this.servletContextHandler);
+      metricsHandler.setHandler(gzipHandler);
+    } else {
+      metricsHandler.setHandler(this.servletContextHandler);
+    }
+    this.server.setHandler(this.statisticsHandler);
+  }
+
+  private static ThreadPool createThreadPool(final HttpServerConfig config,
+    final RequestMetrics metrics) {
+    if (config.isVirtualThreads()) {
+      try {
+        return new ExecutorServiceThreadPool(
+          VirtualThreads.newThreadPerTaskExecutor("http-virtual-"), metrics);
+      } catch (UnsupportedOperationException ex) {
+        LOG.warning(ex.getMessage() + " Requests run on a thread pool.");
+      }
+    }
+
+    int capacity = config.getMaxQueuedRequests() > 0
+      ? Math.min(config.getMinThreads(), config.getMaxQueuedRequests())
+      : config.getMinThreads();
+    BlockingArrayQueue<Runnable> queue = config.getMaxQueuedRequests() > 0
+      ? new BlockingArrayQueue<Runnable>(capacity, capacity, config.getMaxQueuedRequests())
+      : new BlockingArrayQueue<Runnable>(capacity, capacity);
+    final QueuedThreadPool threadPool = new QueuedThreadPool(config.getMaxThreads(),
+      config.getMinThreads(), config.getThreadIdleTimeout(), queue) {
+      @Override
+      public void execute(final Runnable task) {
+        super.execute(new QueueWaitRecorder(task, metrics));
+      }
+    };
+    threadPool.setName("http");
+    metrics.setThreadPoolUsage(new RequestMetrics.ThreadPoolUsage() {
+      @Override
+      public int getThreads() {
+        return threadPool.getThreads();
+      }
+
+      @Override
+      public int getIdleThreads() {
+        return threadPool.getIdleThreads();
+      }
+
+      @Override
+      public int getMaxThreads() {
+        return threadPool.getMaxThreads();
+      }
+
+      @Override
+      public int getQueueSize() {
+        return threadPool.getQueueSize();
+      }
+    });
+    return threadPool;
+  }
+
+  private static ServerConnector createConnector(final Server server,
+    final HttpServerConfig config) {
+    HttpConfiguration httpConfiguration = new HttpConfiguration();
+    httpConfiguration.setOutputBufferSize(config.getOutputBufferSize());
+
+    ServerConnector connector;
+    if (config.isHttp2Cleartext()) {
+      HTTP2CServerConnectionFactory http2 = new HTTP2CServerConnectionFactory(httpConfiguration);
+      JettyHttpServer.configure(http2, config);
+      connector = new ServerConnector(server, config.getAcceptors(), config.getSelectors(),
+        new HttpConnectionFactory(httpConfiguration), http2);
+    } else {
+      connector = new ServerConnector(server, config.getAcceptors(), config.getSelectors(),
+        new HttpConnectionFactory(httpConfiguration));
+    }
+    connector.setPort(config.getPort());
+    JettyHttpServer.configure(connector, config);
+    return connector;
+  }
+
+  private static ServerConnector createSecureConnector(final Server server,
+    final HttpServerConfig config) {
+    HttpConfiguration httpConfiguration = new HttpConfiguration();
+    httpConfiguration.setOutputBufferSize(config.getOutputBufferSize());
+    httpConfiguration.setSecurePort(config.getSecurePort());
+    httpConfiguration.addCustomizer(new SecureRequestCustomizer());
+
+    SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+    sslContextFactory.setKeyStorePath(config.getKeyStorePath());
+    sslContextFactory.setKeyStorePassword(config.getKeyStorePassword());
+    // HTTP/2 forbids the cipher suites blacklisted by its specification.
+    sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+
+    HTTP2ServerConnectionFactory http2 = new HTTP2ServerConnectionFactory(httpConfiguration);
+    JettyHttpServer.configure(http2, config);
+    HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfiguration);
+    ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory(http2.getProtocol(),
+      http1.getProtocol());
+    alpn.setDefaultProtocol(http1.getProtocol());
+
+    ServerConnector connector = new ServerConnector(server, config.getAcceptors(),
+      config.getSelectors(), new SslConnectionFactory(sslContextFactory, alpn.getProtocol()), alpn,
+      http2, http1);
+    connector.setPort(config.getSecurePort());
+    JettyHttpServer.configure(connector, config);
+    return connector;
+  }
+
+  private static void configure(final ServerConnector connector, final HttpServerConfig config) {
+    connector.setIdleTimeout(config.getIdleTimeout());
+    connector.setAcceptQueueSize(config.getAcceptQueueSize());
+  }
+
+  private static void configure(final AbstractHTTP2ServerConnectionFactory http2,
+    final HttpServerConfig config) {
+    http2.setMaxConcurrentStreams(config.getMaxConcurrentStreams());
+    http2.setInitialStreamRecvWindow(config.getInitialStreamWindowSize());
+    // The window of a stream can't grow beyond the window of its connection.
+    http2.setInitialSessionRecvWindow(Math.max(http2.getInitialSessionRecvWindow(),
+      config.getInitialStreamWindowSize()));
   }
 
   @Override
@@ -55,16 +277,73 @@ public class JettyHttpServer implements HttpServer {
 
 
   @Override
-  public synchronized void stop() {
+  public void stop() {
+    this.stop(0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * When called while handling a request of this server, as the request can't complete before the
+   * method returns, the server is stopped by another thread and this method returns immediately.
+   */
+  @Override
+  public synchronized void stop(final long timeout, final TimeUnit unit) {
     Preconditions.checkState(this.isRunning(), "Jetty server is not running.");
+    Preconditions.checkArgument(timeout >= 0, "Timeout can't be negative.");
+    Preconditions.checkNotNull(unit);
 
+    if (this.responseDrain.isHandling(Thread.currentThread())) {
+      this.stopAsync(timeout, unit, Thread.currentThread());
+      return;
+    }
+    this.server.setStopTimeout(unit.toMillis(timeout));
+    this.stopServer();
+  }
+
+  @Override
+  public synchronized Future<Void> stopAsync(final long timeout, final TimeUnit unit,
+    final Thread requestThread) {
+    Preconditions.checkState(this.isRunning(), "Jetty server is not running.");
+    Preconditions.checkArgument(timeout >= 0, "Timeout can't be negative.");
+    Preconditions.checkNotNull(unit);
+    Preconditions.checkNotNull(requestThread);
+
+    this.server.setStopTimeout(unit.toMillis(timeout));
+    final SettableFuture<Void> drained = this.responseDrain.drain(requestThread);
+    Thread stopper = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          JettyHttpServer.this.stopServer();
+        } finally {
+          drained.set(null);
+        }
+      }
+    }, "jetty-http-server-stop");
+    stopper.setDaemon(true);
+    stopper.start();
+    return drained;
+  }
+
+  private void stopServer() {
     try {
       this.server.stop();
-    } catch (Exception e) {
-      //TODO log exception
+    } catch (Exception ex) {
+      LOG.log(Level.WARNING, "Jetty server has not been stopped gracefully.", ex);
     }
   }
 
+  @Override
+  public int getInFlightRequests() {
+    return this.statisticsHandler.getRequestsActive();
+  }
+
+  @Override
+  public RequestMetrics getRequestMetrics() {
+    return this.metrics;
+  }
+
   @Override
   public boolean isRunning() {
     return this.server.isRunning();
@@ -94,6 +373,26 @@ public class JettyHttpServer implements HttpServer {
     this.servletContextHandler.addServlet(className, path);
   }
 
+  @Override
+  public void registerStaticContent(final String resourceBase, final String path) {
+    Preconditions.checkNotNull(resourceBase);
+    Preconditions.checkNotNull(path);
+
+    ServletHolder holder = new ServletHolder(DefaultServlet.class);
+    holder.setInitParameter("resourceBase", resourceBase);
+    holder.setInitParameter("dirAllowed", "false");
+    // The content is served relatively to the path the servlet is mapped to.
+    holder.setInitParameter("pathInfoOnly", "true");
+    if (!this.config.getPrecompressedEncodings().isEmpty()) {
+      List<String> precompressed = new ArrayList<>();
+      for (String encoding : this.config.getPrecompressedEncodings()) {
+        precompressed.add(encoding + "=." + ("gzip".equals(encoding) ? "gz" : encoding));
+      }
+      holder.setInitParameter("precompressed", Joiner.on(',').join(precompressed));
+    }
+    this.servletContextHandler.addServlet(holder, path);
+  }
+
   @Override
   public void registerFilter(Class<? extends Filter> filter, String pathSpec) {
     Preconditions.checkNotNull(filter);
@@ -117,4 +416,272 @@ public class JettyHttpServer implements HttpServer {
     this.servletContextHandler.setInitParameter(name, value);
   }
 
+  /**
+   * Runs the tasks of the server with an executor service, which is shut down when the server
+   * stops. The number of threads of the executor is unknown to Jetty.
+   */
+  private static final class ExecutorServiceThreadPool extends AbstractLifeCycle
+    implements ThreadPool {
+
+    private final ExecutorService executor;
+    private final RequestMetrics metrics;
+
+    private ExecutorServiceThreadPool(final ExecutorService executor,
+      final RequestMetrics metrics) {
+      this.executor = executor;
+      this.metrics = metrics;
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+      this.executor.shutdown();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+      this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getThreads() {
+      return 0;
+    }
+
+    @Override
+    public int getIdleThreads() {
+      return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+      return false;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+      this.executor.execute(new QueueWaitRecorder(task, this.metrics));
+    }
+  }
+
+  /**
+   * Records the time a task waits for a thread of the pool.
+   */
+  private static final class QueueWaitRecorder implements Runnable {
+
+    private final Runnable task;
+    private final RequestMetrics metrics;
+    private final long submitted;
+
+    private QueueWaitRecorder(final Runnable task, final RequestMetrics metrics) {
+      this.task = task;
+      this.metrics = metrics;
+      this.submitted = System.nanoTime();
+    }
+
+    @Override
+    public void run() {
+      this.metrics.queueWaited(System.nanoTime() - this.submitted, TimeUnit.NANOSECONDS);
+      this.task.run();
+    }
+
+    @Override
+    public String toString() {
+      return this.task.toString();
+    }
+  }
+
+  /**
+   * Records the metrics of the requests, once their response is complete.
+   */
+  private static final class RequestMetricsHandler extends HandlerWrapper {
+
+    private final RequestMetrics metrics;
+    private final ServletContextHandler servletContextHandler;
+
+    private RequestMetricsHandler(final RequestMetrics metrics,
+      final ServletContextHandler servletContextHandler) {
+      this.metrics = metrics;
+      this.servletContextHandler = servletContextHandler;
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest,
+      final HttpServletRequest request, final HttpServletResponse response)
+      throws IOException, ServletException {
+      final long start = System.nanoTime();
+      this.metrics.requestStarted();
+      boolean failed = true;
+      try {
+        super.handle(target, baseRequest, request, response);
+        failed = false;
+      } finally {
+        if (!failed && request.isAsyncStarted()) {
+          request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+              RequestMetricsHandler.this.completed(target, request, response.getStatus(), start);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+              // onComplete is called next.
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+              // onComplete is called next.
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+              event.getAsyncContext().addListener(this);
+            }
+          });
+        } else {
+          this.completed(target, request,
+            failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), start);
+        }
+      }
+    }
+
+    private void completed(final String target, final HttpServletRequest request,
+      final int status, final long start) {
+      this.metrics.requestCompleted(this.route(target, request), status,
+        System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private String route(final String target, final HttpServletRequest request) {
+      Object route = request.getAttribute(RequestMetrics.ROUTE_ATTRIBUTE);
+      if (route instanceof String) {
+        return (String) route;
+      }
+      MatchedResource<ServletHolder> servlet =
+        this.servletContextHandler.getServletHandler().getMatchedServlet(target);
+      return servlet != null ? servlet.getPathSpec().getDeclaration() : RequestMetrics.OTHER_ROUTE;
+    }
+  }
+
+  /**
+   * Counts the requests until their response is completed, and lets a graceful stop wait for them.
+   *
+   * The {@link org.eclipse.jetty.server.handler.StatisticsHandler} counts a synchronous request as
+   * completed when the handlers return, before the server writes the rest of its response or its
+   * error page: a stop waiting for it alone could close the connection of the request first.
+   *
+   * The threads handling a request are recorded while they run the handlers only, so that a stop
+   * requested by a request, even from another thread, doesn't wait for that request to drain.
+   */
+  private static final class ResponseDrain extends HandlerWrapper implements Graceful {
+
+    private static final String COUNTED_ATTRIBUTE = ResponseDrain.class.getName() + ".counted";
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ConcurrentMap<Thread, Request> handling = new ConcurrentHashMap<>();
+
+    /**
+     * The requests waiting for the server to stop, which the drain doesn't wait for.
+     */
+    private final Set<Request> excluded =
+      Collections.newSetFromMap(new ConcurrentHashMap<Request, Boolean>());
+
+    private volatile SettableFuture<Void> drained;
+
+    private final Shutdown shutdown = new Shutdown() {
+      @Override
+      protected FutureCallback newShutdownCallback() {
+        return new FutureCallback(ResponseDrain.this.inFlight.get() == 0);
+      }
+    };
+
+    private final HttpChannel.Listener completionListener = new HttpChannel.Listener() {
+      @Override
+      public void onComplete(final Request request) {
+        if (request.getAttribute(COUNTED_ATTRIBUTE) != null) {
+          ResponseDrain.this.excluded.remove(request);
+          ResponseDrain.this.completed();
+        }
+      }
+    };
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+      HttpServletResponse response) throws IOException, ServletException {
+      // Asynchronous and error dispatches of a request are counted once.
+      if (baseRequest.getAttribute(COUNTED_ATTRIBUTE) == null) {
+        baseRequest.setAttribute(COUNTED_ATTRIBUTE, Boolean.TRUE);
+        this.inFlight.incrementAndGet();
+      }
+      Thread thread = Thread.currentThread();
+      Request previous = this.handling.put(thread, baseRequest);
+      try {
+        super.handle(target, baseRequest, request, response);
+      } finally {
+        if (previous != null) {
+          this.handling.put(thread, previous);
+        } else {
+          this.handling.remove(thread);
+        }
+      }
+    }
+
+    private boolean isHandling(final Thread thread) {
+      return this.handling.containsKey(thread);
+    }
+
+    /**
+     * @param requestThread the thread whose request, if any, is not waited for
+     * @return a future completed once the other requests are completed
+     */
+    private SettableFuture<Void> drain(final Thread requestThread) {
+      SettableFuture<Void> drained = SettableFuture.create();
+      this.drained = drained;
+      Request request = this.handling.get(requestThread);
+      if (request != null) {
+        this.excluded.add(request);
+      }
+      this.checkDrained();
+      return drained;
+    }
+
+    private void checkDrained() {
+      SettableFuture<Void> drained = this.drained;
+      if (drained != null && this.inFlight.get() <= this.excluded.size()) {
+        drained.set(null);
+      }
+    }
+
+    private void completed() {
+      int inFlight = this.inFlight.decrementAndGet();
+      this.checkDrained();
+      if (inFlight == 0) {
+        FutureCallback shutdown = this.shutdown.get();
+        if (shutdown != null) {
+          shutdown.succeeded();
+        }
+      }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+      this.shutdown.cancel();
+      super.doStart();
+    }
+
+    @Override
+    public Future<Void> shutdown() {
+      Future<Void> future = this.shutdown.shutdown();
+      // The last response may have completed while the shutdown was initiated.
+      if (this.inFlight.get() == 0) {
+        this.shutdown.get().succeeded();
+      }
+      return future;
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return this.shutdown.isShutdown();
+    }
+  }
+
 }
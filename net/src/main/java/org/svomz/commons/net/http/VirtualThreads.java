@@ -0,0 +1,80 @@
+package org.svomz.commons.net.http;
+
+import com.google.common.base.Preconditions;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Detects virtual threads and creates executors running each task on a new virtual thread.
+ *
+ * Virtual threads are only available from Java 21. They are looked up by reflection so that this
+ * code can run on older virtual machines, where {@link #isSupported()} returns false.
+ */
+public final class VirtualThreads {
+
+  private static final Method OF_VIRTUAL = VirtualThreads.method(Thread.class, "ofVirtual");
+  private static final Method NAME = VirtualThreads.method("java.lang.Thread$Builder", "name",
+    String.class, long.class);
+  private static final Method FACTORY = VirtualThreads.method("java.lang.Thread$Builder",
+    "factory");
+  private static final Method NEW_THREAD_PER_TASK_EXECUTOR = VirtualThreads.method(
+    Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+  private VirtualThreads() {
+    throw new RuntimeException();
+  }
+
+  /**
+   * @return true if the running virtual machine supports virtual threads.
+   */
+  public static boolean isSupported() {
+    return OF_VIRTUAL != null && NAME != null && FACTORY != null
+      && NEW_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Creates an executor starting a new virtual thread for each task.
+   *
+   * @param prefix the prefix of the names of the threads, followed by a counter
+   * @return the executor
+   * @throws UnsupportedOperationException if virtual threads are not supported, or are a disabled
+   * preview feature of the virtual machine
+   */
+  public static ExecutorService newThreadPerTaskExecutor(final String prefix) {
+    Preconditions.checkNotNull(prefix);
+    if (!VirtualThreads.isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later.");
+    }
+
+    try {
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = NAME.invoke(builder, prefix, 0L);
+      ThreadFactory factory = (ThreadFactory) FACTORY.invoke(builder);
+      return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+    } catch (ReflectiveOperationException ex) {
+      throw new UnsupportedOperationException("Virtual threads can't be created.", ex);
+    }
+  }
+
+  private static Method method(final String className, final String name,
+    final Class<?>... parameterTypes) {
+    try {
+      return VirtualThreads.method(Class.forName(className), name, parameterTypes);
+    } catch (ClassNotFoundException ex) {
+      return null;
+    }
+  }
+
+  private static Method method(final Class<?> type, final String name,
+    final Class<?>... parameterTypes) {
+    try {
+      return type.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException ex) {
+      return null;
+    }
+  }
+
+}
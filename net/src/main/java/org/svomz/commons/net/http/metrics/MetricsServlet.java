@@ -0,0 +1,96 @@
+package org.svomz.commons.net.http.metrics;
+
+import com.google.common.base.Preconditions;
+
+import org.svomz.commons.core.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Exposes {@link RequestMetrics} in the Prometheus text format.
+ *
+ * Latencies are reported in seconds as summaries, whose quantiles cover the window of their
+ * {@link LatencyHistogram} while their count and sum are cumulative. The request rate is obtained
+ * from the "http_requests_total" counter by the monitoring system.
+ */
+@SuppressWarnings("serial")
+public class MetricsServlet extends HttpServlet {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final RequestMetrics metrics;
+
+  public MetricsServlet(final RequestMetrics metrics) {
+    this.metrics = Preconditions.checkNotNull(metrics);
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+    throws IOException {
+    response.setContentType(CONTENT_TYPE);
+    // Metrics are read at each scrape.
+    response.setHeader("Cache-Control", "no-cache");
+    PrintWriter writer = response.getWriter();
+
+    writer.println("# TYPE http_requests_total counter");
+    writer.println("http_requests_total " + this.metrics.getRequests());
+    writer.println("# TYPE http_requests_in_flight gauge");
+    writer.println("http_requests_in_flight " + this.metrics.getInFlightRequests());
+
+    writer.println("# TYPE http_responses_total counter");
+    for (Map.Entry<String, Long> entry : this.metrics.getResponses().entrySet()) {
+      writer.println("http_responses_total{status=\"" + entry.getKey() + "\"} "
+        + entry.getValue());
+    }
+
+    writer.println("# TYPE http_request_duration_seconds summary");
+    for (Map.Entry<String, LatencyHistogram.Snapshot> entry
+      : this.metrics.getLatencies().entrySet()) {
+      MetricsServlet.writeSummary(writer, "http_request_duration_seconds",
+        "route=\"" + MetricsServlet.escape(entry.getKey()) + "\"", entry.getValue());
+    }
+
+    writer.println("# TYPE http_thread_pool_queue_wait_seconds summary");
+    MetricsServlet.writeSummary(writer, "http_thread_pool_queue_wait_seconds", null,
+      this.metrics.getQueueWait());
+
+    RequestMetrics.ThreadPoolUsage usage = this.metrics.getThreadPoolUsage();
+    if (usage != null) {
+      writer.println("# TYPE http_thread_pool_threads gauge");
+      writer.println("http_thread_pool_threads " + usage.getThreads());
+      writer.println("# TYPE http_thread_pool_threads_idle gauge");
+      writer.println("http_thread_pool_threads_idle " + usage.getIdleThreads());
+      writer.println("# TYPE http_thread_pool_threads_max gauge");
+      writer.println("http_thread_pool_threads_max " + usage.getMaxThreads());
+      writer.println("# TYPE http_thread_pool_queue_size gauge");
+      writer.println("http_thread_pool_queue_size " + usage.getQueueSize());
+    }
+  }
+
+  private static void writeSummary(final PrintWriter writer, final String name,
+    final String labels, final LatencyHistogram.Snapshot snapshot) {
+    String prefix = labels != null ? labels + "," : "";
+    for (double quantile : QUANTILES) {
+      writer.println(name + "{" + prefix + "quantile=\"" + quantile + "\"} "
+        + snapshot.getQuantile(quantile, TimeUnit.SECONDS));
+    }
+    String suffix = labels != null ? "{" + labels + "}" : "";
+    writer.println(name + "_max" + suffix + " " + snapshot.getMax(TimeUnit.SECONDS));
+    writer.println(name + "_sum" + suffix + " " + snapshot.getSum(TimeUnit.SECONDS));
+    writer.println(name + "_count" + suffix + " " + snapshot.getCount());
+  }
+
+  private static String escape(final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+}
@@ -0,0 +1,214 @@
+package org.svomz.commons.net.http.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+
+import org.svomz.commons.core.metrics.Counter;
+import org.svomz.commons.core.metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Instruments the requests handled by an {@link org.svomz.commons.net.http.HttpServer}: the number
+ * of requests, the number of in-flight requests, the number of responses by status class and the
+ * latency of the requests by route.
+ *
+ * The route of a request is the path spec of the servlet serving it, like "/api/*", unless a more
+ * specific one is set in the {@link #ROUTE_ATTRIBUTE} request attribute. The latencies of a route
+ * take about 40 KB, so the number of routes is bounded, {@link #DEFAULT_MAX_ROUTES} by default: the
+ * latencies of the requests of the routes beyond are recorded under {@link #OTHER_ROUTE}.
+ *
+ * The server also records the time its tasks wait for a thread and exposes the usage of its thread
+ * pool.
+ *
+ * Instances are thread safe.
+ */
+public final class RequestMetrics {
+
+  /**
+   * Name of the request attribute which overrides the route of a request.
+   */
+  public static final String ROUTE_ATTRIBUTE = RequestMetrics.class.getName() + ".route";
+  public static final String OTHER_ROUTE = "other";
+  public static final int DEFAULT_MAX_ROUTES = 32;
+
+  private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+  // The latencies of a route slide by halves of the window to save the memory of the buckets.
+  private static final int ROUTE_SLICES = 2;
+
+  private final int maxRoutes;
+  private final Counter requests;
+  private final AtomicLong inFlightRequests;
+  private final Counter[] responses;
+  private final ConcurrentMap<String, LatencyHistogram> latencies;
+  private final LatencyHistogram queueWait;
+
+  private volatile ThreadPoolUsage threadPoolUsage;
+
+  public RequestMetrics() {
+    this(DEFAULT_MAX_ROUTES);
+  }
+
+  /**
+   * @param maxRoutes the maximum number of routes whose latencies are recorded apart
+   */
+  public RequestMetrics(final int maxRoutes) {
+    Preconditions.checkArgument(maxRoutes > 0, "Max routes must be positive.");
+
+    this.maxRoutes = maxRoutes;
+    this.requests = new Counter();
+    this.inFlightRequests = new AtomicLong();
+    this.responses = new Counter[STATUS_CLASSES.length];
+    for (int i = 0; i < this.responses.length; i++) {
+      this.responses[i] = new Counter();
+    }
+    this.latencies = new ConcurrentHashMap<>();
+    this.queueWait = new LatencyHistogram();
+  }
+
+  /**
+   * Records the beginning of a request.
+   */
+  public void requestStarted() {
+    this.requests.increment();
+    this.inFlightRequests.incrementAndGet();
+  }
+
+  /**
+   * Records the completion of a request.
+   *
+   * @param route the route of the request
+   * @param status the status of the response
+   * @param latency the time spent to handle the request
+   * @param unit the unit of the latency
+   */
+  public void requestCompleted(final String route, final int status, final long latency,
+    final TimeUnit unit) {
+    Preconditions.checkNotNull(route);
+    Preconditions.checkNotNull(unit);
+
+    this.inFlightRequests.decrementAndGet();
+    int statusClass = status / 100 - 1;
+    if (statusClass >= 0 && statusClass < this.responses.length) {
+      this.responses[statusClass].increment();
+    }
+    this.latency(route).record(latency, unit);
+  }
+
+  /**
+   * Records the time a task of the server waited for a thread.
+   */
+  public void queueWaited(final long wait, final TimeUnit unit) {
+    this.queueWait.record(wait, unit);
+  }
+
+  /**
+   * @param threadPoolUsage the usage of the thread pool of the server
+   */
+  public void setThreadPoolUsage(final ThreadPoolUsage threadPoolUsage) {
+    this.threadPoolUsage = Preconditions.checkNotNull(threadPoolUsage);
+  }
+
+  /**
+   * @return the number of requests received.
+   */
+  public long getRequests() {
+    return this.requests.getCount();
+  }
+
+  /**
+   * @return the number of requests being handled.
+   */
+  public long getInFlightRequests() {
+    return this.inFlightRequests.get();
+  }
+
+  /**
+   * @return the number of responses by status class, from "1xx" to "5xx".
+   */
+  public Map<String, Long> getResponses() {
+    ImmutableSortedMap.Builder<String, Long> responses = ImmutableSortedMap.naturalOrder();
+    for (int i = 0; i < STATUS_CLASSES.length; i++) {
+      responses.put(STATUS_CLASSES[i], this.responses[i].getCount());
+    }
+    return responses.build();
+  }
+
+  /**
+   * @return the latencies of the requests by route.
+   */
+  public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+    ImmutableSortedMap.Builder<String, LatencyHistogram.Snapshot> latencies =
+      ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<String, LatencyHistogram> entry : this.latencies.entrySet()) {
+      latencies.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return latencies.build();
+  }
+
+  /**
+   * @return the time the tasks of the server waited for a thread.
+   */
+  public LatencyHistogram.Snapshot getQueueWait() {
+    return this.queueWait.snapshot();
+  }
+
+  /**
+   * @return the usage of the thread pool of the server, null if unknown.
+   */
+  public ThreadPoolUsage getThreadPoolUsage() {
+    return this.threadPoolUsage;
+  }
+
+  private LatencyHistogram latency(final String route) {
+    LatencyHistogram latency = this.latencies.get(route);
+    if (latency != null) {
+      return latency;
+    }
+    String key = this.latencies.size() < this.maxRoutes ? route : OTHER_ROUTE;
+    latency = this.latencies.get(key);
+    if (latency != null) {
+      return latency;
+    }
+    // A histogram is only allocated for a route actually added.
+    return this.latencies.computeIfAbsent(key, new Function<String, LatencyHistogram>() {
+      @Override
+      public LatencyHistogram apply(final String route) {
+        return new LatencyHistogram(LatencyHistogram.DEFAULT_WINDOW, TimeUnit.NANOSECONDS,
+          ROUTE_SLICES);
+      }
+    });
+  }
+
+  /**
+   * Usage of the thread pool of a server, read when the metrics are reported.
+   */
+  public interface ThreadPoolUsage {
+
+    /**
+     * @return the number of threads of the pool.
+     */
+    int getThreads();
+
+    /**
+     * @return the number of threads waiting for a task.
+     */
+    int getIdleThreads();
+
+    /**
+     * @return the maximum number of threads of the pool.
+     */
+    int getMaxThreads();
+
+    /**
+     * @return the number of tasks waiting for a thread.
+     */
+    int getQueueSize();
+  }
+
+}
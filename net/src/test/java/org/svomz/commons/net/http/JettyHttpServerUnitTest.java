@@ -0,0 +1,423 @@
+package org.svomz.commons.net.http;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.svomz.commons.core.metrics.LatencyHistogram;
+import org.svomz.commons.net.http.metrics.MetricsServlet;
+import org.svomz.commons.net.http.metrics.RequestMetrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class JettyHttpServerUnitTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private int port;
+  private JettyHttpServer server;
+  private ExecutorService clients;
+
+  @Before
+  public void setUp() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      this.port = socket.getLocalPort();
+    }
+    this.server = new JettyHttpServer(this.port);
+    this.server.registerServlet(new ServletHolder(new SlowServlet()), "/slow");
+    this.clients = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    this.clients.shutdownNow();
+    if (this.server.isRunning()) {
+      this.server.stop();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void stopShouldDrainInFlightRequests() throws Exception {
+    this.server.start();
+    Future<String> response = this.clients.submit(this.get("/slow"));
+    while (this.server.getInFlightRequests() == 0) {
+      Thread.sleep(5);
+    }
+
+    this.server.stop(5, TimeUnit.SECONDS);
+
+    Assert.assertFalse(this.server.isRunning());
+    Assert.assertEquals("200 done", response.get());
+  }
+
+  @Test(timeout = 10000)
+  public void stopShouldNotWaitLongerThanTimeout() throws Exception {
+    this.server.start();
+    this.clients.submit(this.get("/slow?millis=5000"));
+    while (this.server.getInFlightRequests() == 0) {
+      Thread.sleep(5);
+    }
+
+    long start = System.nanoTime();
+    this.server.stop(100, TimeUnit.MILLISECONDS);
+
+    Assert.assertFalse(this.server.isRunning());
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 4000);
+  }
+
+  @Test(timeout = 10000)
+  public void sendErrorShouldRenderTheErrorPage() throws Exception {
+    this.server.registerServlet(new ServletHolder(new ErrorServlet()), "/error");
+    this.server.start();
+
+    HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + this.port
+      + "/error").openConnection();
+    Assert.assertEquals(503, connection.getResponseCode());
+    try (InputStream in = connection.getErrorStream()) {
+      Assert.assertTrue(new String(ByteStreams.toByteArray(in), Charsets.UTF_8)
+        .contains("Try again later"));
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void stopShouldDrainErrorResponses() throws Exception {
+    this.server.registerServlet(new ServletHolder(new ErrorServlet()), "/error");
+    this.server.start();
+    Future<String> response = this.clients.submit(new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:"
+          + JettyHttpServerUnitTest.this.port + "/error?millis=300").openConnection();
+        int status = connection.getResponseCode();
+        try (InputStream in = connection.getErrorStream()) {
+          return status + " " + new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+        }
+      }
+    });
+    while (this.server.getInFlightRequests() == 0) {
+      Thread.sleep(5);
+    }
+
+    this.server.stop(5, TimeUnit.SECONDS);
+
+    String body = response.get();
+    Assert.assertTrue(body.startsWith("503 "));
+    Assert.assertTrue(body.contains("Try again later"));
+  }
+
+  @Test(timeout = 10000)
+  public void configuredServerShouldServeRequests() throws Exception {
+    this.server = new JettyHttpServer(HttpServerConfig.builder(this.port)
+        .threads(4, 8)
+        .maxQueuedRequests(16)
+        .acceptors(1)
+        .selectors(1)
+        .idleTimeout(5000)
+        .acceptQueueSize(64)
+        .outputBufferSize(8192)
+        .build());
+    this.server.registerServlet(new ServletHolder(new SlowServlet()), "/slow");
+    this.server.start();
+
+    Assert.assertEquals("200 done", this.get("/slow?millis=0").call());
+  }
+
+  @Test(timeout = 10000)
+  public void virtualThreadsServerShouldServeRequests() throws Exception {
+    this.server = new JettyHttpServer(HttpServerConfig.builder(this.port)
+        .virtualThreads(true)
+        .build());
+    this.server.registerServlet(new ServletHolder(new SlowServlet()), "/slow");
+    this.server.start();
+
+    // served by virtual threads on java 21+ and by the thread pool before
+    Assert.assertEquals("200 done", this.get("/slow?millis=0").call());
+  }
+
+  @Test(timeout = 10000)
+  public void http2CleartextServerShouldServeBothProtocols() throws Exception {
+    this.server = new JettyHttpServer(HttpServerConfig.builder(this.port)
+        .http2Cleartext(true)
+        .maxConcurrentStreams(16)
+        .initialStreamWindowSize(1048576)
+        .build());
+    this.server.registerServlet(new ServletHolder(new SlowServlet()), "/slow");
+    this.server.start();
+
+    HttpClient client = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()), null);
+    client.start();
+    try {
+      ContentResponse response = client.GET(
+        "http://localhost:" + this.port + "/slow?millis=0");
+      Assert.assertEquals(HttpVersion.HTTP_2, response.getVersion());
+      Assert.assertEquals("done", response.getContentAsString());
+    } finally {
+      client.stop();
+    }
+    Assert.assertEquals("200 done", this.get("/slow?millis=0").call());
+  }
+
+  @Test(timeout = 30000)
+  public void tlsServerShouldNegotiateHttp2() throws Exception {
+    int securePort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      securePort = socket.getLocalPort();
+    }
+    this.server = new JettyHttpServer(HttpServerConfig.builder(this.port)
+        .tls(securePort, this.selfSignedKeyStore("secret"), "secret")
+        .build());
+    this.server.registerServlet(new ServletHolder(new SlowServlet()), "/slow");
+    this.server.start();
+    String url = "https://localhost:" + securePort + "/slow?millis=0";
+
+    HttpClient http2Client = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()),
+      new SslContextFactory.Client(true));
+    HttpClient http1Client = new HttpClient(new SslContextFactory.Client(true));
+    http2Client.start();
+    http1Client.start();
+    try {
+      ContentResponse response = http2Client.GET(url);
+      Assert.assertEquals(HttpVersion.HTTP_2, response.getVersion());
+      Assert.assertEquals("done", response.getContentAsString());
+
+      // Clients not negotiating h2 fall back to HTTP/1.1.
+      response = http1Client.GET(url);
+      Assert.assertEquals(HttpVersion.HTTP_1_1, response.getVersion());
+      Assert.assertEquals("done", response.getContentAsString());
+    } finally {
+      http2Client.stop();
+      http1Client.stop();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void compressionShouldGzipLargeResponsesOfAllowedTypes() throws Exception {
+    this.server = new JettyHttpServer(HttpServerConfig.builder(this.port)
+        .compression(true)
+        .compressionMinSize(512)
+        .compressionLevel(1)
+        .compressedMimeTypes("text/plain")
+        .build());
+    this.server.registerServlet(new ServletHolder(new TextServlet()), "/text");
+    this.server.start();
+
+    HttpURLConnection large = this.open("/text?size=4096&type=text/plain", "gzip");
+    Assert.assertEquals("gzip", large.getHeaderField("Content-Encoding"));
+    Assert.assertEquals("Accept-Encoding", large.getHeaderField("Vary"));
+    try (InputStream in = new GZIPInputStream(large.getInputStream())) {
+      Assert.assertEquals(4096, ByteStreams.toByteArray(in).length);
+    }
+    Assert.assertNull(this.open("/text?size=100&type=text/plain", "gzip")
+      .getHeaderField("Content-Encoding"));
+    Assert.assertNull(this.open("/text?size=4096&type=image/png", "gzip")
+      .getHeaderField("Content-Encoding"));
+    Assert.assertNull(this.open("/text?size=4096&type=text/plain", "gzip;q=0")
+      .getHeaderField("Content-Encoding"));
+    Assert.assertNull(this.open("/text?size=4096&type=text/plain", null)
+      .getHeaderField("Content-Encoding"));
+  }
+
+  @Test(timeout = 10000)
+  public void staticContentShouldServePrecompressedVariants() throws Exception {
+    File directory = this.folder.newFolder("static");
+    String script = Strings.repeat("var a = 1;", 100);
+    Files.write(script, new File(directory, "app.js"), Charsets.UTF_8);
+    // A variant is served if it is smaller and not older than the original file.
+    try (OutputStream out = new GZIPOutputStream(
+        new FileOutputStream(new File(directory, "app.js.gz")))) {
+      out.write(script.getBytes(Charsets.UTF_8));
+    }
+    this.server = new JettyHttpServer(HttpServerConfig.builder(this.port)
+        .compression(true)
+        .build());
+    this.server.registerStaticContent(directory.getAbsolutePath(), "/static/*");
+    this.server.start();
+
+    HttpURLConnection precompressed = this.open("/static/app.js", "gzip, deflate");
+    Assert.assertEquals("gzip", precompressed.getHeaderField("Content-Encoding"));
+    try (InputStream in = new GZIPInputStream(precompressed.getInputStream())) {
+      Assert.assertEquals(script, new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+    }
+    HttpURLConnection plain = this.open("/static/app.js", null);
+    Assert.assertNull(plain.getHeaderField("Content-Encoding"));
+    Assert.assertEquals(script, this.read(plain));
+  }
+
+  @Test(timeout = 10000)
+  public void requestMetricsShouldBeRecordedByRoute() throws Exception {
+    this.server.registerServlet(new ServletHolder(new MetricsServlet(
+      this.server.getRequestMetrics())), "/metrics");
+    this.server.start();
+
+    this.get("/slow?millis=20").call();
+    this.get("/slow?millis=0").call();
+    Assert.assertEquals(404, ((HttpURLConnection) new URL("http://localhost:" + this.port
+      + "/missing").openConnection()).getResponseCode());
+
+    RequestMetrics metrics = this.server.getRequestMetrics();
+    // Requests are recorded once their response is sent.
+    while (metrics.getInFlightRequests() > 0) {
+      Thread.sleep(5);
+    }
+    Assert.assertEquals(3, metrics.getRequests());
+    Assert.assertEquals(Long.valueOf(2), metrics.getResponses().get("2xx"));
+    Assert.assertEquals(Long.valueOf(1), metrics.getResponses().get("4xx"));
+    LatencyHistogram.Snapshot slow = metrics.getLatencies().get("/slow");
+    Assert.assertEquals(2, slow.getCount());
+    Assert.assertTrue(slow.getMax(TimeUnit.MILLISECONDS) >= 20);
+    Assert.assertTrue(metrics.getQueueWait().getCount() > 0);
+    Assert.assertTrue(metrics.getThreadPoolUsage().getThreads() > 0);
+
+    HttpURLConnection connection = this.open("/metrics", null);
+    Assert.assertEquals(MetricsServlet.CONTENT_TYPE, connection.getContentType());
+    String body = this.read(connection);
+    Assert.assertTrue(body.contains("http_requests_total 4"));
+    Assert.assertTrue(body.contains("http_responses_total{status=\"4xx\"} 1"));
+    Assert.assertTrue(body.contains(
+      "http_request_duration_seconds{route=\"/slow\",quantile=\"0.99\"} "));
+    Assert.assertTrue(body.contains("http_request_duration_seconds_count{route=\"/slow\"} 2"));
+    Assert.assertTrue(body.contains("http_thread_pool_threads_max 200"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void configShouldRejectMissingKeyStore() {
+    HttpServerConfig.builder(this.port).tls(this.port + 1, "missing.jks", "secret");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void configShouldRejectInconsistentThreadBounds() {
+    HttpServerConfig.builder(this.port).threads(8, 4);
+  }
+
+  /**
+   * Generates a keystore holding a self-signed certificate for localhost with the keytool of the
+   * running virtual machine.
+   */
+  private String selfSignedKeyStore(final String password) throws Exception {
+    File keyStore = new File(this.folder.getRoot(), "keystore.p12");
+    Process keytool = new ProcessBuilder(
+        new File(System.getProperty("java.home"), "bin/keytool").getPath(),
+        "-genkeypair", "-alias", "localhost", "-keyalg", "RSA", "-keysize", "2048",
+        "-validity", "1", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost",
+        "-storetype", "PKCS12", "-keystore", keyStore.getPath(),
+        "-storepass", password, "-keypass", password)
+      .redirectErrorStream(true)
+      .start();
+    ByteStreams.toByteArray(keytool.getInputStream());
+    Assert.assertEquals(0, keytool.waitFor());
+    return keyStore.getAbsolutePath();
+  }
+
+  private HttpURLConnection open(final String path, final String acceptEncoding)
+      throws IOException {
+    URL url = new URL("http://localhost:" + this.port + path);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    if (acceptEncoding != null) {
+      connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+    }
+    Assert.assertEquals(200, connection.getResponseCode());
+    return connection;
+  }
+
+  private String read(final HttpURLConnection connection) throws IOException {
+    try (InputStream in = connection.getInputStream()) {
+      return new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+    }
+  }
+
+  private Callable<String> get(final String path) {
+    return new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        URL url = new URL("http://localhost:" + JettyHttpServerUnitTest.this.port + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(connection.getInputStream(), "UTF-8"))) {
+          return connection.getResponseCode() + " " + reader.readLine();
+        }
+      }
+    };
+  }
+
+  @SuppressWarnings("serial")
+  private static class TextServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+      response.setContentType(request.getParameter("type"));
+      response.getWriter().print(Strings.repeat("a", Integer.parseInt(request.getParameter("size"))));
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static class ErrorServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+      String millis = request.getParameter("millis");
+      if (millis != null) {
+        try {
+          Thread.sleep(Long.parseLong(millis));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Try again later");
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static class SlowServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+      String millis = request.getParameter("millis");
+      try {
+        Thread.sleep(millis != null ? Long.parseLong(millis) : 300);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      response.setContentType("text/plain");
+      response.getWriter().print("done");
+    }
+  }
+
+}
@@ -0,0 +1,25 @@
+package org.svomz.commons.net.http.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RequestMetricsUnitTest {
+
+  @Test
+  public void routesBeyondTheMaximumShouldBeRecordedAsOther() {
+    RequestMetrics metrics = new RequestMetrics(8);
+    for (int i = 0; i < 8 + 10; i++) {
+      metrics.requestStarted();
+      metrics.requestCompleted("/route/" + i, 200, 1, TimeUnit.MILLISECONDS);
+    }
+    metrics.requestStarted();
+    metrics.requestCompleted("/route/0", 200, 1, TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals(8 + 1, metrics.getLatencies().size());
+    Assert.assertEquals(10, metrics.getLatencies().get(RequestMetrics.OTHER_ROUTE).getCount());
+    Assert.assertEquals(2, metrics.getLatencies().get("/route/0").getCount());
+  }
+
+}
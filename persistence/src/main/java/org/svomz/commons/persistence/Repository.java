@@ -1,6 +1,9 @@
 package org.svomz.commons.persistence;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Exposes a basic set of methods to store and retrieve domain objects from a persistence system like
@@ -25,8 +28,80 @@ public interface Repository<T, PK> {
    */
   public T find(PK primaryKey) throws EntityNotFoundException;
 
+  /**
+   * Gets a reference to an entity without necessarily reading it, typically to associate it with
+   * another entity.
+   *
+   * The existence of the entity is not checked when the reference is returned but deferred until
+   * its state is first accessed or the association is written, where a missing entity fails with
+   * an unchecked exception, like {@link javax.persistence.EntityNotFoundException} for JPA, or a
+   * constraint violation. Depending on the implementation the entity may still be read right away,
+   * in which case a missing entity fails immediately. {@link #find(Object)} should be used to read
+   * an entity which may not exist.
+   *
+   * @param primaryKey the primary key of the entity
+   * @return the reference to the entity.
+   */
+  public T getReference(PK primaryKey);
+
   public List<T> findAll();
 
+  /**
+   * @return the number of entities.
+   */
+  public long count();
+
+  /**
+   * @param primaryKey the primary key of an entity
+   * @return true if the entity exists.
+   */
+  public boolean exists(PK primaryKey);
+
+  /**
+   * Finds the entities with the given primary keys at once.
+   *
+   * @param primaryKeys the primary keys of the entities to retrieve
+   * @return the entities found by primary key, in the order of the supplied primary keys. The
+   * primary keys of the entities not found are absent.
+   */
+  public Map<PK, T> findAll(Collection<PK> primaryKeys);
+
+  /**
+   * Finds a page of entities, ordered by primary key.
+   *
+   * The cost of a page grows with its offset since the skipped entities are still read by the
+   * persistence system, {@link #findAllAfter(Object, int)} should be preferred to go through large
+   * sets of entities.
+   *
+   * @param offset the number of entities to skip
+   * @param limit the maximum number of entities to return
+   * @return the entities of the page, empty if the offset is beyond the last entity.
+   */
+  public List<T> findAll(int offset, int limit);
+
+  /**
+   * Finds the entities whose primary key follows the given one, ordered by primary key. The next
+   * page is found with the primary key of the last entity of a page.
+   *
+   * @param primaryKey the primary key of the last entity of the previous page, null for the first
+   * page
+   * @param limit the maximum number of entities to return
+   * @return the entities of the page, empty after the last entity.
+   */
+  public List<T> findAllAfter(PK primaryKey, int limit);
+
+  /**
+   * Streams all the entities, ordered by primary key, so that they can be read without holding all
+   * of them in memory.
+   *
+   * The entities are lazily fetched by batches as the stream is consumed, the stream must be
+   * consumed while the repository can still be used.
+   *
+   * @param fetchSize the number of entities fetched at once
+   * @return the entities.
+   */
+  public Stream<T> stream(int fetchSize);
+
   /**
    * Persists an entity in the persistence system.
    *
@@ -54,5 +129,39 @@ public interface Repository<T, PK> {
 
   public void delete(T entity);
 
+  /**
+   * Persists entities in the persistence system, like {@link #create(Object)} does for each of
+   * them but with fewer round trips.
+   *
+   * @param entities the entities to persist
+   * @return the persisted entities with their primary key, in the same order.
+   */
+  public List<T> createAll(Iterable<T> entities);
+
+  /**
+   * Updates entities in the persistence system, like {@link #update(Object)} does for each of them
+   * but with fewer round trips.
+   *
+   * @param entities the entities to update
+   * @return the updated entities, in the same order.
+   */
+  public List<T> updateAll(Iterable<T> entities);
+
+  /**
+   * Deletes entities from the persistence system, like {@link #delete(Object)} does for each of
+   * them but with fewer round trips.
+   *
+   * @param entities the entities to delete
+   */
+  public void deleteAll(Iterable<T> entities);
+
+  /**
+   * Deletes the entities with the given primary keys, ignoring the ones which don't exist.
+   *
+   * @param primaryKeys the primary keys of the entities to delete
+   * @return the number of entities deleted.
+   */
+  public int deleteAllByPrimaryKeys(Iterable<PK> primaryKeys);
+
 }
 
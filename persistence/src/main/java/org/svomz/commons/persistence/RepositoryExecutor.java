@@ -0,0 +1,192 @@
+package org.svomz.commons.persistence;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.svomz.commons.core.metrics.Counter;
+import org.svomz.commons.core.metrics.LatencyHistogram;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the database operations of the asynchronous repositories, off the threads handling the
+ * requests.
+ *
+ * The executor has a fixed number of threads, which should not exceed the number of connections
+ * of the database, and a bounded queue. Once the queue is full the tasks are rejected with a
+ * {@link RejectedExecutionException} rather than queued without limit, so that a slow database
+ * pushes back on the callers instead of exhausting the memory.
+ *
+ * It exposes its usage: the threads running a task, the tasks waiting for a thread, the time they
+ * waited, the time they ran and the tasks rejected.
+ *
+ * Instances are thread safe.
+ */
+public final class RepositoryExecutor implements Executor {
+
+  public static final int DEFAULT_THREADS = 10;
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  private final ThreadPoolExecutor executor;
+  private final LatencyHistogram queueWait;
+  private final LatencyHistogram executionTime;
+  private final Counter rejectedTasks;
+
+  private RepositoryExecutor(final Builder builder) {
+    this.executor = new ThreadPoolExecutor(builder.threads, builder.threads, 0,
+      TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(builder.queueCapacity),
+      new ThreadFactoryBuilder().setNameFormat(builder.name + "-%d").setDaemon(true).build());
+    this.queueWait = new LatencyHistogram();
+    this.executionTime = new LatencyHistogram();
+    this.rejectedTasks = new Counter();
+  }
+
+  /**
+   * @throws RejectedExecutionException if the queue is full or the executor is shut down
+   */
+  @Override
+  public void execute(final Runnable task) {
+    Preconditions.checkNotNull(task);
+
+    try {
+      this.executor.execute(new Recorder(task, this));
+    } catch (RejectedExecutionException ex) {
+      this.rejectedTasks.increment();
+      throw ex;
+    }
+  }
+
+  /**
+   * Stops accepting tasks, the tasks already submitted are still run.
+   */
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+
+  /**
+   * Waits for the tasks submitted before the shutdown to complete.
+   *
+   * @return true if they completed before the timeout.
+   */
+  public boolean awaitTermination(final long timeout, final TimeUnit unit)
+    throws InterruptedException {
+    return this.executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * @return the number of threads running a task.
+   */
+  public int getActiveThreads() {
+    return this.executor.getActiveCount();
+  }
+
+  /**
+   * @return the number of tasks waiting for a thread.
+   */
+  public int getQueueSize() {
+    return this.executor.getQueue().size();
+  }
+
+  /**
+   * @return the time the tasks waited for a thread.
+   */
+  public LatencyHistogram.Snapshot getQueueWait() {
+    return this.queueWait.snapshot();
+  }
+
+  /**
+   * @return the time the tasks ran.
+   */
+  public LatencyHistogram.Snapshot getExecutionTime() {
+    return this.executionTime.snapshot();
+  }
+
+  /**
+   * @return the number of tasks rejected because the queue was full or the executor shut down.
+   */
+  public long getRejectedTasks() {
+    return this.rejectedTasks.getCount();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private int threads = DEFAULT_THREADS;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private String name = "repository";
+
+    private Builder() {
+    }
+
+    /**
+     * @param threads the number of threads, {@link #DEFAULT_THREADS} by default
+     */
+    public Builder threads(final int threads) {
+      Preconditions.checkArgument(threads > 0, "Threads must be positive.");
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * @param queueCapacity the number of tasks which can wait for a thread,
+     * {@link #DEFAULT_QUEUE_CAPACITY} by default
+     */
+    public Builder queueCapacity(final int queueCapacity) {
+      Preconditions.checkArgument(queueCapacity > 0, "Queue capacity must be positive.");
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * @param name the prefix of the names of the threads, followed by a counter
+     */
+    public Builder name(final String name) {
+      this.name = Preconditions.checkNotNull(name);
+      return this;
+    }
+
+    public RepositoryExecutor build() {
+      return new RepositoryExecutor(this);
+    }
+  }
+
+  /**
+   * Records the time a task waits for a thread and the time it runs.
+   */
+  private static final class Recorder implements Runnable {
+
+    private final Runnable task;
+    private final RepositoryExecutor executor;
+    private final long submitted;
+
+    private Recorder(final Runnable task, final RepositoryExecutor executor) {
+      this.task = task;
+      this.executor = executor;
+      this.submitted = System.nanoTime();
+    }
+
+    @Override
+    public void run() {
+      long started = System.nanoTime();
+      this.executor.queueWait.record(started - this.submitted, TimeUnit.NANOSECONDS);
+      try {
+        this.task.run();
+      } finally {
+        this.executor.executionTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return this.task.toString();
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+package org.svomz.commons.persistence;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many times an operation which failed because of a concurrent change is attempted, and how
+ * long to wait between the attempts.
+ *
+ * The backoff grows exponentially from the initial backoff, up to the maximum backoff, and a
+ * random part of it is waited so that the conflicting callers don't retry all at once.
+ *
+ * Instances are immutable.
+ */
+public final class RetryPolicy {
+
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+  public static final long DEFAULT_INITIAL_BACKOFF = TimeUnit.MILLISECONDS.toNanos(10);
+  public static final long DEFAULT_MAX_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Attempts an operation {@link #DEFAULT_MAX_ATTEMPTS} times, waiting from
+   * {@link #DEFAULT_INITIAL_BACKOFF} up to {@link #DEFAULT_MAX_BACKOFF} nanoseconds.
+   */
+  public static final RetryPolicy DEFAULT = RetryPolicy.builder().build();
+
+  /**
+   * Attempts an operation once.
+   */
+  public static final RetryPolicy NONE = RetryPolicy.builder().maxAttempts(1).build();
+
+  private final int maxAttempts;
+  private final long initialBackoff;
+  private final long maxBackoff;
+
+  private RetryPolicy(final Builder builder) {
+    this.maxAttempts = builder.maxAttempts;
+    this.initialBackoff = builder.initialBackoff;
+    this.maxBackoff = builder.maxBackoff;
+  }
+
+  /**
+   * @return the number of times an operation is attempted, the first attempt included.
+   */
+  public int getMaxAttempts() {
+    return this.maxAttempts;
+  }
+
+  /**
+   * @param attempt the number of the attempt which failed, starting from 1
+   * @param unit the unit of the backoff
+   * @return the time to wait before the next attempt.
+   */
+  public long getBackoff(final int attempt, final TimeUnit unit) {
+    Preconditions.checkArgument(attempt > 0, "Attempt must be positive.");
+    Preconditions.checkNotNull(unit);
+
+    long backoff = this.maxBackoff;
+    if (attempt < Long.numberOfLeadingZeros(this.initialBackoff)) {
+      backoff = Math.min(this.initialBackoff << (attempt - 1), this.maxBackoff);
+    }
+    // Waits between half of the backoff and the backoff.
+    long half = backoff / 2;
+    return unit.convert(half + ThreadLocalRandom.current().nextLong(backoff - half + 1),
+      TimeUnit.NANOSECONDS);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    private Builder() {
+    }
+
+    /**
+     * @param maxAttempts the number of times an operation is attempted, the first attempt included
+     */
+    public Builder maxAttempts(final int maxAttempts) {
+      Preconditions.checkArgument(maxAttempts > 0, "Max attempts must be positive.");
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * @param initialBackoff the time to wait after the first failed attempt
+     * @param maxBackoff the maximum time to wait between two attempts
+     */
+    public Builder backoff(final long initialBackoff, final long maxBackoff, final TimeUnit unit) {
+      Preconditions.checkArgument(initialBackoff >= 0, "Initial backoff can't be negative.");
+      Preconditions.checkArgument(maxBackoff >= initialBackoff,
+        "Max backoff can't be less than the initial backoff.");
+      this.initialBackoff = unit.toNanos(initialBackoff);
+      this.maxBackoff = unit.toNanos(maxBackoff);
+      return this;
+    }
+
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+
+}
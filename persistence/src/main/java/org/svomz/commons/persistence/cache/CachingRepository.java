@@ -0,0 +1,396 @@
+package org.svomz.commons.persistence.cache;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.Repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Repository} serving {@link #find(Object)} from an in-memory cache in front of another
+ * repository, for the entities which are read much more often than they change.
+ *
+ * The cache is configured for the entity class of the decorated repository:
+ * <pre>
+ * Repository&lt;Country, String&gt; countries = CachingRepository.builder(
+ *     new CountryRepository(entityManager), countryCode)
+ *   .maximumSize(500)
+ *   .expireAfterWrite(1, TimeUnit.HOURS)
+ *   .build();
+ * </pre>
+ *
+ * The cache is bounded: the least recently used entities are evicted when it is full. An entity is
+ * loaded once when it is looked up concurrently and entities not found are not cached. Entities are
+ * invalidated when they are updated or deleted through this repository, changes made by other means
+ * are seen once the entity expires or is invalidated with {@link #invalidate(Object)}. A lookup
+ * racing with a change doesn't keep the state it loaded cached once the entity is invalidated
+ * during the load: the invalidations are counted by stripes of primary keys, and a value loaded
+ * while the count of its stripe changed is discarded, which may also discard an entity invalidated
+ * with another key of the stripe.
+ *
+ * The cached instances are shared by all the callers, they should be treated as read-only and
+ * changed through {@link #update(Object)} only. With JPA, they stay managed by the entity manager
+ * which loaded them.
+ *
+ * Instances are thread safe if the decorated repository is.
+ *
+ * @param <T> the type of entity the repository will store and retrieve
+ * @param <PK> the type of the entity primary key
+ */
+public class CachingRepository<T, PK> implements Repository<T, PK> {
+
+  public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+  private static final int INVALIDATION_STRIPES = 64;
+
+  private final Repository<T, PK> repository;
+  private final Function<? super T, ? extends PK> primaryKey;
+  private final Cache<PK, T> cache;
+  private final AtomicLongArray invalidations;
+
+  private CachingRepository(final Builder<T, PK> builder) {
+    this.repository = builder.repository;
+    this.primaryKey = builder.primaryKey;
+
+    CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+      .maximumSize(builder.maximumSize)
+      .ticker(builder.ticker)
+      .recordStats();
+    if (builder.expireAfterWrite > 0) {
+      cacheBuilder.expireAfterWrite(builder.expireAfterWrite, TimeUnit.NANOSECONDS);
+    }
+    if (builder.expireAfterAccess > 0) {
+      cacheBuilder.expireAfterAccess(builder.expireAfterAccess, TimeUnit.NANOSECONDS);
+    }
+    this.cache = cacheBuilder.build();
+    this.invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+  }
+
+  @Override
+  public T find(final PK primaryKey) throws EntityNotFoundException {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    long invalidations = this.invalidations.get(CachingRepository.stripe(primaryKey));
+    try {
+      T entity = this.cache.get(primaryKey, new Callable<T>() {
+        @Override
+        public T call() throws EntityNotFoundException {
+          return CachingRepository.this.repository.find(primaryKey);
+        }
+      });
+      this.discardIfInvalidated(primaryKey, entity, invalidations);
+      return entity;
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof EntityNotFoundException) {
+        throw (EntityNotFoundException) ex.getCause();
+      }
+      throw new IllegalStateException(ex.getCause());
+    } catch (UncheckedExecutionException | ExecutionError ex) {
+      // Rethrows the runtime exception or the error of the decorated repository as is.
+      throw Throwables.propagate(ex.getCause());
+    }
+  }
+
+  @Override
+  public long count() {
+    return this.repository.count();
+  }
+
+  /**
+   * An entity cached exists, the others are looked up in the decorated repository without being
+   * cached.
+   */
+  @Override
+  public boolean exists(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    return this.cache.getIfPresent(primaryKey) != null || this.repository.exists(primaryKey);
+  }
+
+  /**
+   * Finds the cached entities in the cache and the others at once from the decorated repository,
+   * which are then cached.
+   */
+  @Override
+  public Map<PK, T> findAll(final Collection<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    Map<PK, T> cached = this.cache.getAllPresent(primaryKeys);
+    Map<PK, T> loaded = Collections.emptyMap();
+    if (cached.size() < primaryKeys.size()) {
+      Set<PK> missing = new LinkedHashSet<>(primaryKeys);
+      missing.removeAll(cached.keySet());
+      if (!missing.isEmpty()) {
+        Map<PK, Long> invalidations = new HashMap<>();
+        for (PK primaryKey : missing) {
+          invalidations.put(primaryKey,
+            this.invalidations.get(CachingRepository.stripe(primaryKey)));
+        }
+        loaded = this.repository.findAll(missing);
+        this.cache.putAll(loaded);
+        for (Map.Entry<PK, T> entity : loaded.entrySet()) {
+          this.discardIfInvalidated(entity.getKey(), entity.getValue(),
+            invalidations.get(entity.getKey()));
+        }
+      }
+    }
+
+    Map<PK, T> entities = new LinkedHashMap<>();
+    for (PK primaryKey : primaryKeys) {
+      T entity = cached.containsKey(primaryKey) ? cached.get(primaryKey) : loaded.get(primaryKey);
+      if (entity != null) {
+        entities.put(primaryKey, entity);
+      }
+    }
+    return entities;
+  }
+
+  /**
+   * Returns the cached entity if any, otherwise the reference of the decorated repository which is
+   * not cached since the entity may not exist.
+   */
+  @Override
+  public T getReference(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    T entity = this.cache.getIfPresent(primaryKey);
+    return entity != null ? entity : this.repository.getReference(primaryKey);
+  }
+
+  /**
+   * Not cached, like the other queries the entities are read from the decorated repository.
+   */
+  @Override
+  public List<T> findAll() {
+    return this.repository.findAll();
+  }
+
+  @Override
+  public List<T> findAll(final int offset, final int limit) {
+    return this.repository.findAll(offset, limit);
+  }
+
+  @Override
+  public List<T> findAllAfter(final PK primaryKey, final int limit) {
+    return this.repository.findAllAfter(primaryKey, limit);
+  }
+
+  @Override
+  public Stream<T> stream(final int fetchSize) {
+    return this.repository.stream(fetchSize);
+  }
+
+  @Override
+  public T create(final T entity) {
+    return this.repository.create(entity);
+  }
+
+  /**
+   * Updates the entity and invalidates its cached instance.
+   */
+  @Override
+  public T update(final T entity) {
+    T updated = this.repository.update(entity);
+    this.invalidateEntity(updated);
+    return updated;
+  }
+
+  /**
+   * Deletes the entity and invalidates its cached instance.
+   */
+  @Override
+  public void delete(final T entity) {
+    this.repository.delete(entity);
+    this.invalidateEntity(entity);
+  }
+
+  @Override
+  public List<T> createAll(final Iterable<T> entities) {
+    return this.repository.createAll(entities);
+  }
+
+  /**
+   * Updates the entities and invalidates their cached instances.
+   */
+  @Override
+  public List<T> updateAll(final Iterable<T> entities) {
+    List<T> updated = this.repository.updateAll(entities);
+    for (T entity : updated) {
+      this.invalidateEntity(entity);
+    }
+    return updated;
+  }
+
+  /**
+   * Deletes the entities and invalidates their cached instances.
+   */
+  @Override
+  public void deleteAll(final Iterable<T> entities) {
+    this.repository.deleteAll(entities);
+    for (T entity : entities) {
+      this.invalidateEntity(entity);
+    }
+  }
+
+  /**
+   * Deletes the entities and invalidates their cached instances.
+   */
+  @Override
+  public int deleteAllByPrimaryKeys(final Iterable<PK> primaryKeys) {
+    int deleted = this.repository.deleteAllByPrimaryKeys(primaryKeys);
+    for (PK primaryKey : primaryKeys) {
+      this.invalidate(primaryKey);
+    }
+    return deleted;
+  }
+
+  /**
+   * Discards the cached instance of an entity, for instance when it was changed by another
+   * application.
+   *
+   * @param primaryKey the primary key of the entity
+   */
+  public void invalidate(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey);
+
+    // Counted first, so that a load completing in the meantime is discarded by its lookup.
+    this.invalidations.incrementAndGet(CachingRepository.stripe(primaryKey));
+    this.cache.invalidate(primaryKey);
+  }
+
+  /**
+   * Discards all the cached entities.
+   */
+  public void invalidateAll() {
+    for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+      this.invalidations.incrementAndGet(i);
+    }
+    this.cache.invalidateAll();
+  }
+
+  /**
+   * @return the number of entities cached.
+   */
+  public long size() {
+    return this.cache.size();
+  }
+
+  /**
+   * @return the hits, misses, loads and evictions of the cache since its creation.
+   */
+  public CacheStats getStats() {
+    return this.cache.stats();
+  }
+
+  private void invalidateEntity(final T entity) {
+    PK key = this.primaryKey.apply(entity);
+    if (key != null) {
+      this.invalidate(key);
+    }
+  }
+
+  /**
+   * Removes an entity from the cache if it was invalidated since the given count of invalidations
+   * of its stripe was read, the load may have read the state preceding the invalidation.
+   */
+  private void discardIfInvalidated(final PK primaryKey, final T entity,
+    final long invalidations) {
+    if (this.invalidations.get(CachingRepository.stripe(primaryKey)) != invalidations) {
+      this.cache.asMap().remove(primaryKey, entity);
+    }
+  }
+
+  private static int stripe(final Object primaryKey) {
+    int hash = primaryKey.hashCode();
+    return (hash ^ (hash >>> 16)) & (INVALIDATION_STRIPES - 1);
+  }
+
+  /**
+   * @param repository the repository to decorate
+   * @param primaryKey returns the primary key of an entity, used to invalidate it when it is
+   * updated or deleted
+   */
+  public static <T, PK> Builder<T, PK> builder(final Repository<T, PK> repository,
+    final Function<? super T, ? extends PK> primaryKey) {
+    return new Builder<>(repository, primaryKey);
+  }
+
+  public static class Builder<T, PK> {
+
+    private final Repository<T, PK> repository;
+    private final Function<? super T, ? extends PK> primaryKey;
+    private long maximumSize;
+    private long expireAfterWrite;
+    private long expireAfterAccess;
+    private Ticker ticker;
+
+    private Builder(final Repository<T, PK> repository,
+      final Function<? super T, ? extends PK> primaryKey) {
+      this.repository = Preconditions.checkNotNull(repository);
+      this.primaryKey = Preconditions.checkNotNull(primaryKey);
+      this.maximumSize = DEFAULT_MAXIMUM_SIZE;
+      this.ticker = Ticker.systemTicker();
+    }
+
+    /**
+     * @param maximumSize the number of entities above which the least recently used ones are
+     * evicted, {@link #DEFAULT_MAXIMUM_SIZE} by default
+     */
+    public Builder<T, PK> maximumSize(final long maximumSize) {
+      Preconditions.checkArgument(maximumSize > 0, "Maximum size must be positive.");
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * @param duration the time after which an entity is reloaded once cached, it never expires by
+     * default
+     */
+    public Builder<T, PK> expireAfterWrite(final long duration, final TimeUnit unit) {
+      Preconditions.checkArgument(duration > 0, "Duration must be positive.");
+      this.expireAfterWrite = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * @param duration the time after which an entity which was not looked up is evicted, it never
+     * expires by default
+     */
+    public Builder<T, PK> expireAfterAccess(final long duration, final TimeUnit unit) {
+      Preconditions.checkArgument(duration > 0, "Duration must be positive.");
+      this.expireAfterAccess = unit.toNanos(duration);
+      return this;
+    }
+
+    Builder<T, PK> ticker(final Ticker ticker) {
+      this.ticker = Preconditions.checkNotNull(ticker);
+      return this;
+    }
+
+    public CachingRepository<T, PK> build() {
+      return new CachingRepository<>(this);
+    }
+  }
+
+}
@@ -0,0 +1,175 @@
+package org.svomz.commons.persistence.jdbc;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import org.svomz.commons.core.metrics.Gauge;
+import org.svomz.commons.core.metrics.LatencyHistogram;
+import org.svomz.commons.core.metrics.MetricRegistry;
+
+import javax.sql.DataSource;
+
+/**
+ * Binds a {@link PooledDataSource} and its {@link javax.sql.DataSource}.
+ *
+ * The pool is a {@link org.svomz.commons.core.Service}. In an application, it is warmed up when
+ * the application starts and closed once the application is terminated, after the in-flight
+ * requests have been drained and the services using it have been stopped, by registering it to
+ * the lifecycle:
+ * <pre>
+ * LifecycleModule.addTerminatedService(binder(), PooledDataSource.class);
+ * </pre>
+ *
+ * Installed with the {@link org.svomz.commons.persistence.jpa.JpaPersistenceModule}, the entity
+ * manager factory gets its connections from the pool.
+ *
+ * The pool is tuned by a {@link PooledDataSourceConfig}, either given to the module or read from
+ * the following system properties:
+ * <ul>
+ *   <li>"jdbc.url": the JDBC url of the database, required;</li>
+ *   <li>"jdbc.user" and "jdbc.password": the credentials of the connections;</li>
+ *   <li>"jdbc.pool.max.size" and "jdbc.pool.min.idle": the maximum number of connections and the
+ *   minimum number of idle ones, equal by default;</li>
+ *   <li>"jdbc.pool.acquisition.timeout": the maximum time in milliseconds to wait for a
+ *   connection;</li>
+ *   <li>"jdbc.pool.idle.timeout": the time in milliseconds after which an idle connection above the
+ *   minimum is closed;</li>
+ *   <li>"jdbc.pool.max.lifetime": the time in milliseconds after which a connection is replaced;</li>
+ *   <li>"jdbc.pool.leak.detection.threshold": the time in milliseconds after which a connection
+ *   not returned to the pool is logged, 0 to disable the detection.</li>
+ * </ul>
+ *
+ * The usage of the pool is registered in the {@link MetricRegistry} when the pool is created, as
+ * the "jdbc.pool.connections.active", "jdbc.pool.connections.idle", "jdbc.pool.waiting.threads"
+ * and "jdbc.pool.acquire.timeouts" gauges and the "jdbc.pool.acquire.time" gauge reading a snapshot
+ * of the acquisition times.
+ */
+public class DataSourceModule extends AbstractModule {
+
+  private final PooledDataSourceConfig config;
+
+  /**
+   * Configures the pool from system properties.
+   */
+  public DataSourceModule() {
+    this.config = null;
+  }
+
+  /**
+   * @param config the configuration of the pool
+   */
+  public DataSourceModule(final PooledDataSourceConfig config) {
+    this.config = Preconditions.checkNotNull(config);
+  }
+
+  @Override
+  protected void configure() {
+    if (this.config != null) {
+      this.bind(PooledDataSourceConfig.class).toInstance(this.config);
+    } else {
+      this.bind(PooledDataSourceConfig.class).toProvider(SystemPropertiesConfigProvider.class)
+        .in(Singleton.class);
+    }
+    this.bind(PooledDataSource.class).toProvider(PooledDataSourceProvider.class)
+      .in(Singleton.class);
+    this.bind(DataSource.class).toProvider(new Provider<DataSource>() {
+      @Inject
+      private PooledDataSource pooledDataSource;
+
+      @Override
+      public DataSource get() {
+        return this.pooledDataSource.getDataSource();
+      }
+    });
+  }
+
+  /**
+   * Reads the configuration of the pool from system properties.
+   */
+  protected static class SystemPropertiesConfigProvider implements Provider<PooledDataSourceConfig> {
+
+    @Override
+    public PooledDataSourceConfig get() {
+      String url = System.getProperty("jdbc.url");
+      Preconditions.checkState(url != null, "jdbc.url is required.");
+
+      PooledDataSourceConfig.Builder builder = PooledDataSourceConfig.builder(url);
+      String user = System.getProperty("jdbc.user");
+      if (user != null) {
+        builder.credentials(user, System.getProperty("jdbc.password"));
+      }
+      int maxSize = Integer.getInteger("jdbc.pool.max.size", PooledDataSourceConfig.DEFAULT_MAX_SIZE);
+      return builder
+        .size(maxSize, Integer.getInteger("jdbc.pool.min.idle", maxSize))
+        .acquisitionTimeout(Long.getLong("jdbc.pool.acquisition.timeout",
+          PooledDataSourceConfig.DEFAULT_ACQUISITION_TIMEOUT))
+        .idleTimeout(Long.getLong("jdbc.pool.idle.timeout",
+          PooledDataSourceConfig.DEFAULT_IDLE_TIMEOUT))
+        .maxLifetime(Long.getLong("jdbc.pool.max.lifetime",
+          PooledDataSourceConfig.DEFAULT_MAX_LIFETIME))
+        .leakDetectionThreshold(Long.getLong("jdbc.pool.leak.detection.threshold",
+          PooledDataSourceConfig.DEFAULT_LEAK_DETECTION_THRESHOLD))
+        .build();
+    }
+  }
+
+  /**
+   * Creates the pool and registers its metrics.
+   */
+  protected static class PooledDataSourceProvider implements Provider<PooledDataSource> {
+
+    private final PooledDataSourceConfig config;
+    private final MetricRegistry metricRegistry;
+
+    @Inject
+    public PooledDataSourceProvider(final PooledDataSourceConfig config,
+      final MetricRegistry metricRegistry) {
+      Preconditions.checkNotNull(config);
+      Preconditions.checkNotNull(metricRegistry);
+
+      this.config = config;
+      this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public PooledDataSource get() {
+      final PooledDataSource dataSource = new PooledDataSource(this.config);
+      this.metricRegistry.register("jdbc.pool.connections.active", new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return dataSource.getActiveConnections();
+        }
+      });
+      this.metricRegistry.register("jdbc.pool.connections.idle", new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return dataSource.getIdleConnections();
+        }
+      });
+      this.metricRegistry.register("jdbc.pool.waiting.threads", new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return dataSource.getWaitingThreads();
+        }
+      });
+      this.metricRegistry.register("jdbc.pool.acquire.timeouts", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return dataSource.getAcquireTimeouts();
+        }
+      });
+      this.metricRegistry.register("jdbc.pool.acquire.time",
+        new Gauge<LatencyHistogram.Snapshot>() {
+          @Override
+          public LatencyHistogram.Snapshot getValue() {
+            return dataSource.getAcquireTime();
+          }
+        });
+      return dataSource;
+    }
+  }
+
+}
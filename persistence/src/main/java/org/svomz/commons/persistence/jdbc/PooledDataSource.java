@@ -0,0 +1,187 @@
+package org.svomz.commons.persistence.jdbc;
+
+import com.google.common.base.Preconditions;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import org.svomz.commons.core.Service;
+import org.svomz.commons.core.metrics.Counter;
+import org.svomz.commons.core.metrics.LatencyHistogram;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A pool of JDBC connections, backed by HikariCP.
+ *
+ * The pool is opened by {@link #start()}, which also warms it up by opening its minimum number of
+ * idle connections, or by the first connection request, and closed by {@link #stop()}. It exposes
+ * its usage: the connections in use, the idle ones, the threads waiting for one, the time spent to
+ * acquire them and the acquisitions which timed out.
+ *
+ * The {@link DataSource} of the pool is typically handed to JPA with the
+ * "javax.persistence.nonJtaDataSource" property of the entity manager factory, like
+ * {@link org.svomz.commons.persistence.jpa.JpaPersistenceModule} does when a data source is bound.
+ *
+ * Instances are thread safe.
+ */
+public class PooledDataSource implements Service {
+
+  private static final Logger LOG = Logger.getLogger(PooledDataSource.class.getName());
+
+  private final PooledDataSourceConfig config;
+  private final HikariDataSource dataSource;
+  private final LatencyHistogram acquireTime;
+  private final Counter acquireTimeouts;
+
+  public PooledDataSource(final PooledDataSourceConfig config) {
+    this.config = Preconditions.checkNotNull(config);
+    this.acquireTime = new LatencyHistogram();
+    this.acquireTimeouts = new Counter();
+
+    // Created with its default constructor, the pool is opened by the first connection request.
+    this.dataSource = new HikariDataSource();
+    this.dataSource.setJdbcUrl(config.getUrl());
+    this.dataSource.setUsername(config.getUser());
+    this.dataSource.setPassword(config.getPassword());
+    this.dataSource.setMaximumPoolSize(config.getMaxSize());
+    this.dataSource.setMinimumIdle(config.getMinIdle());
+    this.dataSource.setConnectionTimeout(config.getAcquisitionTimeout());
+    this.dataSource.setIdleTimeout(config.getIdleTimeout());
+    this.dataSource.setMaxLifetime(config.getMaxLifetime());
+    this.dataSource.setLeakDetectionThreshold(config.getLeakDetectionThreshold());
+    this.dataSource.setMetricsTrackerFactory(new MetricsTrackerFactory() {
+      @Override
+      public IMetricsTracker create(final String poolName, final PoolStats poolStats) {
+        return new MetricsTracker();
+      }
+    });
+  }
+
+  /**
+   * Opens the pool and its minimum number of idle connections.
+   *
+   * @throws IllegalStateException if the pool is closed or the database can't be reached
+   */
+  @Override
+  public void start() {
+    Preconditions.checkState(!this.dataSource.isClosed(), "The pool is closed.");
+
+    List<Connection> connections = new ArrayList<>();
+    try {
+      // Holds the connections at once so that the pool opens new ones.
+      connections.add(this.dataSource.getConnection());
+      for (int i = 1; i < this.config.getMinIdle(); i++) {
+        connections.add(this.dataSource.getConnection());
+      }
+    } catch (SQLException | RuntimeException ex) {
+      if (connections.isEmpty()) {
+        throw new IllegalStateException("Unable to open the pool of " + this.config.getUrl(), ex);
+      }
+      LOG.log(Level.WARNING, "Unable to warm up the pool of " + this.config.getUrl(), ex);
+    } finally {
+      for (Connection connection : connections) {
+        try {
+          connection.close();
+        } catch (SQLException ex) {
+          LOG.log(Level.FINE, "Unable to return a connection to the pool.", ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the pool: its idle connections are closed and the ones in use are closed as they are
+   * returned, or aborted if they are still in use after a few seconds. A closed pool can't be
+   * started again.
+   */
+  @Override
+  public void stop() {
+    this.dataSource.close();
+  }
+
+  /**
+   * @return true until the pool is closed, it is opened by {@link #start()} or by the first
+   * connection request.
+   */
+  @Override
+  public boolean isRunning() {
+    return !this.dataSource.isClosed();
+  }
+
+  /**
+   * @return the data source of the pool, it opens the pool if it is not started yet.
+   */
+  public DataSource getDataSource() {
+    return this.dataSource;
+  }
+
+  /**
+   * @return the number of connections in use.
+   */
+  public int getActiveConnections() {
+    HikariPoolMXBean pool = this.dataSource.getHikariPoolMXBean();
+    return pool != null ? pool.getActiveConnections() : 0;
+  }
+
+  /**
+   * @return the number of idle connections.
+   */
+  public int getIdleConnections() {
+    HikariPoolMXBean pool = this.dataSource.getHikariPoolMXBean();
+    return pool != null ? pool.getIdleConnections() : 0;
+  }
+
+  /**
+   * @return the number of threads waiting for a connection.
+   */
+  public int getWaitingThreads() {
+    HikariPoolMXBean pool = this.dataSource.getHikariPoolMXBean();
+    return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+  }
+
+  /**
+   * @return the time spent by threads to acquire a connection.
+   */
+  public LatencyHistogram.Snapshot getAcquireTime() {
+    return this.acquireTime.snapshot();
+  }
+
+  /**
+   * @return the number of acquisitions which timed out.
+   */
+  public long getAcquireTimeouts() {
+    return this.acquireTimeouts.getCount();
+  }
+
+  public PooledDataSourceConfig getConfig() {
+    return this.config;
+  }
+
+  /**
+   * Records the acquisitions of the connections of the pool.
+   */
+  private class MetricsTracker implements IMetricsTracker {
+
+    @Override
+    public void recordConnectionAcquiredNanos(final long elapsedAcquiredNanos) {
+      PooledDataSource.this.acquireTime.record(elapsedAcquiredNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+      PooledDataSource.this.acquireTimeouts.increment();
+    }
+  }
+
+}
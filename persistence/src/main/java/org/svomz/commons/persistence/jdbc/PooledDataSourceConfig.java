@@ -0,0 +1,205 @@
+package org.svomz.commons.persistence.jdbc;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tuning of a {@link PooledDataSource}: the database it connects to and the bounds of its pool of
+ * connections.
+ *
+ * The pool keeps at least the minimum number of idle connections, up to its maximum size. By
+ * default both are equal, a fixed size pool avoids opening connections under load. A thread
+ * acquiring a connection while all of them are in use waits up to the acquisition timeout, after
+ * which it fails with a {@link java.sql.SQLException}.
+ *
+ * A connection held longer than the leak detection threshold is logged with the stack trace of the
+ * thread which acquired it, 0 disables the detection.
+ *
+ * Instances are immutable.
+ */
+public final class PooledDataSourceConfig {
+
+  public static final int DEFAULT_MAX_SIZE = 10;
+  public static final long DEFAULT_ACQUISITION_TIMEOUT = 30000;
+  public static final long DEFAULT_IDLE_TIMEOUT = 600000;
+  public static final long DEFAULT_MAX_LIFETIME = 1800000;
+  public static final long DEFAULT_LEAK_DETECTION_THRESHOLD = 0;
+
+  private final String url;
+  private final String user;
+  private final String password;
+  private final int maxSize;
+  private final int minIdle;
+  private final long acquisitionTimeout;
+  private final long idleTimeout;
+  private final long maxLifetime;
+  private final long leakDetectionThreshold;
+
+  private PooledDataSourceConfig(final Builder builder) {
+    this.url = builder.url;
+    this.user = builder.user;
+    this.password = builder.password;
+    this.maxSize = builder.maxSize;
+    this.minIdle = builder.minIdle;
+    this.acquisitionTimeout = builder.acquisitionTimeout;
+    this.idleTimeout = builder.idleTimeout;
+    this.maxLifetime = builder.maxLifetime;
+    this.leakDetectionThreshold = builder.leakDetectionThreshold;
+  }
+
+  /**
+   * @return the JDBC url of the database.
+   */
+  public String getUrl() {
+    return this.url;
+  }
+
+  /**
+   * @return the user connecting to the database, null if none.
+   */
+  public String getUser() {
+    return this.user;
+  }
+
+  /**
+   * @return the password of the user, null if none.
+   */
+  public String getPassword() {
+    return this.password;
+  }
+
+  /**
+   * @return the maximum number of connections, in use or idle.
+   */
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  /**
+   * @return the minimum number of idle connections.
+   */
+  public int getMinIdle() {
+    return this.minIdle;
+  }
+
+  /**
+   * @return the maximum time in milliseconds to wait for a connection.
+   */
+  public long getAcquisitionTimeout() {
+    return this.acquisitionTimeout;
+  }
+
+  /**
+   * @return the time in milliseconds after which an idle connection above the minimum is closed.
+   */
+  public long getIdleTimeout() {
+    return this.idleTimeout;
+  }
+
+  /**
+   * @return the time in milliseconds after which a connection is replaced once it is not in use.
+   */
+  public long getMaxLifetime() {
+    return this.maxLifetime;
+  }
+
+  /**
+   * @return the time in milliseconds after which a connection not returned to the pool is logged as
+   * a possible leak, 0 if disabled.
+   */
+  public long getLeakDetectionThreshold() {
+    return this.leakDetectionThreshold;
+  }
+
+  /**
+   * @param url the JDBC url of the database
+   */
+  public static Builder builder(final String url) {
+    return new Builder(url);
+  }
+
+  public static class Builder {
+
+    private String url;
+    private String user;
+    private String password;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private int minIdle = -1;
+    private long acquisitionTimeout = DEFAULT_ACQUISITION_TIMEOUT;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long maxLifetime = DEFAULT_MAX_LIFETIME;
+    private long leakDetectionThreshold = DEFAULT_LEAK_DETECTION_THRESHOLD;
+
+    public Builder(final String url) {
+      this.url(url);
+    }
+
+    public Builder url(final String url) {
+      Preconditions.checkNotNull(url);
+      Preconditions.checkArgument(url.startsWith("jdbc:"), "Invalid JDBC url.");
+      this.url = url;
+      return this;
+    }
+
+    public Builder credentials(final String user, final String password) {
+      this.user = Preconditions.checkNotNull(user);
+      this.password = password;
+      return this;
+    }
+
+    /**
+     * @param maxSize the maximum number of connections
+     * @param minIdle the minimum number of idle connections, the maximum size by default
+     */
+    public Builder size(final int maxSize, final int minIdle) {
+      Preconditions.checkArgument(maxSize > 0, "Max size must be positive.");
+      Preconditions.checkArgument(minIdle >= 0 && minIdle <= maxSize,
+        "Min idle must be between 0 and the max size.");
+      this.maxSize = maxSize;
+      this.minIdle = minIdle;
+      return this;
+    }
+
+    public Builder maxSize(final int maxSize) {
+      Preconditions.checkArgument(maxSize > 0, "Max size must be positive.");
+      this.maxSize = maxSize;
+      return this;
+    }
+
+    public Builder acquisitionTimeout(final long acquisitionTimeout) {
+      // The pool doesn't wait less than 250 milliseconds.
+      Preconditions.checkArgument(acquisitionTimeout >= 250,
+        "Acquisition timeout must be at least 250 milliseconds.");
+      this.acquisitionTimeout = acquisitionTimeout;
+      return this;
+    }
+
+    public Builder idleTimeout(final long idleTimeout) {
+      Preconditions.checkArgument(idleTimeout >= 0, "Idle timeout can't be negative.");
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    public Builder maxLifetime(final long maxLifetime) {
+      Preconditions.checkArgument(maxLifetime >= 0, "Max lifetime can't be negative.");
+      this.maxLifetime = maxLifetime;
+      return this;
+    }
+
+    public Builder leakDetectionThreshold(final long leakDetectionThreshold) {
+      Preconditions.checkArgument(leakDetectionThreshold == 0 || leakDetectionThreshold >= 2000,
+        "Leak detection threshold must be 0 or at least 2000 milliseconds.");
+      this.leakDetectionThreshold = leakDetectionThreshold;
+      return this;
+    }
+
+    public PooledDataSourceConfig build() {
+      if (this.minIdle < 0) {
+        this.minIdle = this.maxSize;
+      }
+      Preconditions.checkArgument(this.minIdle <= this.maxSize,
+        "Min idle can't be greater than the max size.");
+      return new PooledDataSourceConfig(this);
+    }
+  }
+
+}
@@ -1,24 +1,92 @@
 package org.svomz.commons.persistence.jpa;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.reflect.TypeToken;
 
 import org.svomz.commons.persistence.EntityNotFoundException;
 import org.svomz.commons.persistence.Repository;
+import org.svomz.commons.persistence.RetryPolicy;
 
-import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.inject.Provider;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.EntityType;
 
 /**
  * This implementation of the Repository interface is uses JPA to store and retrieve entities.
  *
  * This implementation let the transaction management responsibility to the caller or an higher level
- * (e.g. container).
+ * (e.g. container), like the {@link Transactional} methods.
+ *
+ * A repository created with an entity manager must only be used by one thread at a time, like the
+ * entity manager. A repository created with a provider of entity managers, like the
+ * {@link UnitOfWork}, gets the entity manager at each operation and can be shared by threads.
+ *
+ * The paginated and streamed queries order the entities by their primary key, which must be a
+ * single comparable attribute like a number or a string.
+ *
+ * The count, existence and projection queries only select the needed values, the entities are
+ * neither read nor managed by the entity manager. Subclasses expose domain specific projections
+ * with {@link #project(Class, String...)} and {@link #projectTuples(String...)}:
+ * <pre>
+ * public List&lt;PersonName&gt; findNames() {
+ *   return this.project(PersonName.class, "firstname", "lastname");
+ * }
+ * </pre>
+ *
+ * The batch operations flush the changes and clear the persistence context every
+ * {@link #getBatchSize()} entities, so that they must be called within a transaction and the
+ * entities managed before are detached. The statements of a flush are sent to the database at once
+ * if the persistence unit enables JDBC batch writing, for instance with EclipseLink:
+ * <pre>
+ * &lt;property name="eclipselink.jdbc.batch-writing" value="JDBC"/&gt;
+ * &lt;property name="eclipselink.jdbc.batch-writing.size" value="100"/&gt;
+ * </pre>
+ * EclipseLink doesn't batch the inserts of entities whose primary key is generated by an identity
+ * column, since it reads the key after each insert, a sequence or a table generator should be
+ * preferred for entities created in batches.
+ *
+ * Entities with a {@link javax.persistence.Version} attribute are updated with optimistic locking:
+ * an update based on a stale state of the entity fails with an
+ * {@link OptimisticLockException} instead of overwriting a concurrent change.
+ * {@link #update(Object, Consumer)} applies a change to the current state of an entity and retries
+ * it on such a failure, so that hot rows like counters or statuses can be updated concurrently
+ * without pessimistic locks:
+ * <pre>
+ * repository.update(orderId, new Consumer&lt;Order&gt;() {
+ *   public void accept(Order order) {
+ *     order.setStatus(Status.SHIPPED);
+ *   }
+ * });
+ * </pre>
  *
  * @author Eric Honorez
  *
@@ -27,17 +95,50 @@ import javax.persistence.criteria.Root;
  */
 public abstract class AbstractJpaRepository<T, PK> implements Repository<T, PK> {
 
-  private final EntityManager entityManager;
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  private final Provider<EntityManager> entityManager;
   private final Class<T> entityClass;
+  private final int batchSize;
 
-  @SuppressWarnings("unchecked")
   public AbstractJpaRepository(EntityManager entityManager) {
-    Preconditions.checkNotNull(entityManager, "Supplied entity manager can't be null.");
+    this(entityManager, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param entityManager the entity manager
+   * @param batchSize the number of entities after which the batch operations flush the changes and
+   * clear the persistence context
+   */
+  public AbstractJpaRepository(EntityManager entityManager, int batchSize) {
+    this(AbstractJpaRepository.provider(entityManager), batchSize);
+  }
+
+  /**
+   * @param entityManager provides the entity manager to use at each operation, like the one of the
+   * current {@link UnitOfWork}
+   */
+  public AbstractJpaRepository(Provider<EntityManager> entityManager) {
+    this(entityManager, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param entityManager provides the entity manager to use at each operation, like the one of the
+   * current {@link UnitOfWork}
+   * @param batchSize the number of entities after which the batch operations flush the changes and
+   * clear the persistence context
+   */
+  @SuppressWarnings("unchecked")
+  public AbstractJpaRepository(Provider<EntityManager> entityManager, int batchSize) {
+    Preconditions.checkNotNull(entityManager, "Supplied entity manager provider can't be null.");
+    Preconditions.checkArgument(batchSize > 0, "Supplied batch size must be positive.");
 
     this.entityManager = entityManager;
-    this.entityClass =
-        (Class<T>) ((ParameterizedType) this.getClass().getGenericSuperclass())
-            .getActualTypeArguments()[0];
+    this.batchSize = batchSize;
+    // Resolved through the hierarchy, the class may be a subclass generated by Guice to intercept
+    // the methods of the repository.
+    this.entityClass = (Class<T>) TypeToken.of(this.getClass())
+        .resolveType(AbstractJpaRepository.class.getTypeParameters()[0]).getRawType();
   }
 
   @Override
@@ -51,6 +152,18 @@ public abstract class AbstractJpaRepository<T, PK> implements Repository<T, PK>
     return entity;
   }
 
+  /**
+   * In this implementation the reference is obtained with {@link EntityManager#getReference(Class,
+   * Object)}. Providers return a lazy proxy when they can, EclipseLink does for the entities it
+   * weaves and reads the others right away.
+   */
+  @Override
+  public T getReference(PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    return this.getEntityManager().getReference(this.entityClass, primaryKey);
+  }
+
   @Override
   public List<T> findAll() {
     CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
@@ -62,6 +175,127 @@ public abstract class AbstractJpaRepository<T, PK> implements Repository<T, PK>
     return allQuery.getResultList();
   }
 
+  @Override
+  public long count() {
+    CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
+    CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+    cq.select(cb.count(cq.from(this.entityClass)));
+    return this.getEntityManager().createQuery(cq).getSingleResult();
+  }
+
+  @Override
+  public boolean exists(PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
+    CriteriaQuery<Object> cq = cb.createQuery();
+    Root<T> root = cq.from(this.entityClass);
+    Path<Object> id = root.get(this.getIdAttribute());
+    cq.select(id).where(cb.equal(id, primaryKey));
+    return !this.getEntityManager().createQuery(cq).setMaxResults(1).getResultList().isEmpty();
+  }
+
+  /**
+   * In this implementation the entities are found by queries selecting up to
+   * {@link #getBatchSize()} primary keys each.
+   */
+  @Override
+  public Map<PK, T> findAll(Collection<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    Map<PK, T> found = new HashMap<>();
+    for (List<PK> batch : Iterables.partition(ImmutableSet.copyOf(primaryKeys), this.batchSize)) {
+      CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
+      CriteriaQuery<T> cq = cb.createQuery(this.entityClass);
+      Root<T> root = cq.from(this.entityClass);
+      cq.select(root).where(root.get(this.getIdAttribute()).in(batch));
+      for (T entity : this.getEntityManager().createQuery(cq).getResultList()) {
+        found.put(this.getPrimaryKey(entity), entity);
+      }
+    }
+
+    Map<PK, T> entities = new LinkedHashMap<>();
+    for (PK primaryKey : primaryKeys) {
+      T entity = found.get(primaryKey);
+      if (entity != null) {
+        entities.put(primaryKey, entity);
+      }
+    }
+    return entities;
+  }
+
+  @Override
+  public List<T> findAll(int offset, int limit) {
+    Preconditions.checkArgument(offset >= 0, "Supplied offset can't be negative.");
+    Preconditions.checkArgument(limit > 0, "Supplied limit must be positive.");
+
+    return this.getEntityManager().createQuery(this.orderedQuery(null))
+        .setFirstResult(offset)
+        .setMaxResults(limit)
+        .getResultList();
+  }
+
+  @Override
+  public List<T> findAllAfter(PK primaryKey, int limit) {
+    Preconditions.checkArgument(limit > 0, "Supplied limit must be positive.");
+
+    return this.getEntityManager().createQuery(this.orderedQuery(primaryKey))
+        .setMaxResults(limit)
+        .getResultList();
+  }
+
+  /**
+   * In this implementation the entities are fetched by pages of the given size with
+   * {@link #findAllAfter(Object, int)}. The entities of a page are detached from the entity
+   * manager once the next page is fetched or the stream is exhausted, so that the persistence
+   * context doesn't grow with the stream. The entities which were managed before they were
+   * streamed are detached as well: the changes in progress are flushed before the first page when
+   * a transaction is active, so that they are not lost, and the later changes of these entities
+   * must be merged.
+   */
+  @Override
+  public Stream<T> stream(final int fetchSize) {
+    Preconditions.checkArgument(fetchSize > 0, "Supplied fetch size must be positive.");
+
+    Iterator<T> entities = new AbstractIterator<T>() {
+
+      private List<T> page = Collections.emptyList();
+      private int index;
+      private boolean lastPage;
+      private boolean started;
+
+      @Override
+      protected T computeNext() {
+        if (!this.started) {
+          this.started = true;
+          EntityManager entityManager = AbstractJpaRepository.this.getEntityManager();
+          if (entityManager.isJoinedToTransaction()) {
+            entityManager.flush();
+          }
+        }
+        if (this.index == this.page.size()) {
+          PK last = this.page.isEmpty() ? null
+              : AbstractJpaRepository.this.getPrimaryKey(this.page.get(this.index - 1));
+          for (T entity : this.page) {
+            AbstractJpaRepository.this.getEntityManager().detach(entity);
+          }
+          if (this.lastPage) {
+            return this.endOfData();
+          }
+          this.page = AbstractJpaRepository.this.findAllAfter(last, fetchSize);
+          this.index = 0;
+          this.lastPage = this.page.size() < fetchSize;
+          if (this.page.isEmpty()) {
+            return this.endOfData();
+          }
+        }
+        return this.page.get(this.index++);
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entities,
+        Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
   @Override
   public T create(T entity) {
     Preconditions.checkNotNull(entity, "Supplied entity key can't be null.");
@@ -74,13 +308,94 @@ public abstract class AbstractJpaRepository<T, PK> implements Repository<T, PK>
    * In this implementation the behavior of this method is a create or update. If the given entity
    * does not exist in the database it will be created. If it exists this method will simply update
    * the record in database. In this implementation this method is backed by
-   * {@link EntityManager#merge(Object)}.
+   * {@link EntityManager#merge(Object)}, unless the entity is already managed by the entity manager:
+   * its changes are then written when the entity manager is flushed and it is returned as is.
+   *
+   * The update of a detached entity with a {@link javax.persistence.Version} attribute fails with an
+   * {@link OptimisticLockException} if the entity changed since it was read.
    */
   @Override
   public T update(T entity) {
     Preconditions.checkNotNull(entity, "Supplied entity key can't be null.");
 
-    return this.getEntityManager().merge(entity);
+    EntityManager entityManager = this.getEntityManager();
+    return entityManager.contains(entity) ? entity : entityManager.merge(entity);
+  }
+
+  /**
+   * Applies a change to an entity, with the retry policy of this repository.
+   *
+   * @see #update(Object, Consumer, RetryPolicy)
+   */
+  public T update(PK primaryKey, Consumer<? super T> change) throws EntityNotFoundException {
+    return this.update(primaryKey, change, this.getRetryPolicy());
+  }
+
+  /**
+   * Applies a change to an entity in a transaction, which is committed right away. If the
+   * transaction fails because the entity was changed concurrently, which is detected for the
+   * entities with a {@link javax.persistence.Version} attribute, the entity is read again and the
+   * change applied again after a backoff, up to the maximum number of attempts of the policy.
+   * The change may thus be applied several times and should only change the entity.
+   *
+   * If a transaction is already active, the change is applied and flushed in it: a conflict fails
+   * the transaction of the caller, which should be retried as a whole.
+   *
+   * @param primaryKey the primary key of the entity
+   * @param change changes the entity, which is managed by the entity manager
+   * @param retryPolicy the number of attempts and the backoff between them
+   * @return the updated entity.
+   * @throws EntityNotFoundException if the entity doesn't exist
+   * @throws OptimisticLockException if the entity was changed concurrently at each attempt, it may
+   * also be wrapped in a {@link javax.persistence.RollbackException}
+   */
+  public T update(PK primaryKey, Consumer<? super T> change, RetryPolicy retryPolicy)
+      throws EntityNotFoundException {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+    Preconditions.checkNotNull(change, "Supplied change can't be null.");
+    Preconditions.checkNotNull(retryPolicy, "Supplied retry policy can't be null.");
+
+    EntityManager entityManager = this.getEntityManager();
+    EntityTransaction transaction = entityManager.getTransaction();
+    if (transaction.isActive()) {
+      T entity = this.find(primaryKey);
+      change.accept(entity);
+      entityManager.flush();
+      return entity;
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      T entity = null;
+      transaction.begin();
+      try {
+        entity = this.find(primaryKey);
+        change.accept(entity);
+        transaction.commit();
+        return entity;
+      } catch (RuntimeException ex) {
+        if (attempt >= retryPolicy.getMaxAttempts()
+            || !AbstractJpaRepository.isOptimisticLockFailure(ex)) {
+          throw ex;
+        }
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+        // Reads the current state of the entity at the next attempt.
+        if (entity != null && entityManager.contains(entity)) {
+          entityManager.detach(entity);
+        }
+        try {
+          TimeUnit.NANOSECONDS.sleep(retryPolicy.getBackoff(attempt, TimeUnit.NANOSECONDS));
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw ex;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
   }
 
   @Override
@@ -90,12 +405,201 @@ public abstract class AbstractJpaRepository<T, PK> implements Repository<T, PK>
     this.getEntityManager().remove(entity);
   }
 
+  @Override
+  public List<T> createAll(Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    List<T> created = new ArrayList<>();
+    for (T entity : entities) {
+      created.add(this.create(entity));
+      this.flushBatch(created.size());
+    }
+    this.getEntityManager().flush();
+    return created;
+  }
+
+  @Override
+  public List<T> updateAll(Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    List<T> updated = new ArrayList<>();
+    for (T entity : entities) {
+      updated.add(this.update(entity));
+      this.flushBatch(updated.size());
+    }
+    this.getEntityManager().flush();
+    return updated;
+  }
+
+  /**
+   * In this implementation the entities detached by a previous batch are merged back before being
+   * removed.
+   */
+  @Override
+  public void deleteAll(Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    int deleted = 0;
+    for (T entity : entities) {
+      Preconditions.checkNotNull(entity, "Supplied entity can't be null.");
+      this.delete(this.getEntityManager().contains(entity)
+          ? entity : this.getEntityManager().merge(entity));
+      this.flushBatch(++deleted);
+    }
+    this.getEntityManager().flush();
+  }
+
+  /**
+   * In this implementation the entities are deleted by bulk delete statements of
+   * {@link #getBatchSize()} primary keys. Like any JPA bulk operation, they bypass the persistence
+   * context: cascades and lifecycle callbacks are not applied and the entities already managed are
+   * not removed from it.
+   */
+  @Override
+  public int deleteAllByPrimaryKeys(Iterable<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    int deleted = 0;
+    for (List<PK> batch : Iterables.partition(primaryKeys, this.batchSize)) {
+      CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
+      CriteriaDelete<T> cd = cb.createCriteriaDelete(this.entityClass);
+      Root<T> root = cd.from(this.entityClass);
+      cd.where(root.get(this.getIdAttribute()).in(batch));
+      deleted += this.getEntityManager().createQuery(cd).executeUpdate();
+    }
+    return deleted;
+  }
+
+  /**
+   * Selects attributes of all the entities into instances of a class, like a DTO, built with the
+   * constructor taking the attributes in the same order.
+   *
+   * @param resultClass the class of the results
+   * @param attributes the names of the selected attributes
+   * @return the results, ordered by primary key.
+   */
+  protected <R> List<R> project(Class<R> resultClass, String... attributes) {
+    Preconditions.checkNotNull(resultClass, "Supplied result class can't be null.");
+    Preconditions.checkArgument(attributes.length > 0, "At least one attribute must be selected.");
+
+    CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
+    CriteriaQuery<R> cq = cb.createQuery(resultClass);
+    Root<T> root = cq.from(this.entityClass);
+    cq.select(cb.construct(resultClass, this.paths(root, attributes)))
+        .orderBy(cb.asc(root.get(this.getIdAttribute())));
+    return this.getEntityManager().createQuery(cq).getResultList();
+  }
+
+  /**
+   * Selects attributes of all the entities into tuples, whose elements are aliased with the name of
+   * their attribute.
+   *
+   * @param attributes the names of the selected attributes
+   * @return the tuples, ordered by primary key.
+   */
+  protected List<Tuple> projectTuples(String... attributes) {
+    Preconditions.checkArgument(attributes.length > 0, "At least one attribute must be selected.");
+
+    CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
+    CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+    Root<T> root = cq.from(this.entityClass);
+    cq.multiselect(this.paths(root, attributes))
+        .orderBy(cb.asc(root.get(this.getIdAttribute())));
+    return this.getEntityManager().createQuery(cq).getResultList();
+  }
+
   protected EntityManager getEntityManager() {
-    return this.entityManager;
+    return this.entityManager.get();
   }
 
   protected Class<T> getEntityClass() {
     return this.entityClass;
   }
 
+  /**
+   * @return the number of entities after which the batch operations flush the changes and clear
+   * the persistence context.
+   */
+  protected int getBatchSize() {
+    return this.batchSize;
+  }
+
+  /**
+   * @return the retry policy of {@link #update(Object, Consumer)}, {@link RetryPolicy#DEFAULT} by
+   * default.
+   */
+  protected RetryPolicy getRetryPolicy() {
+    return RetryPolicy.DEFAULT;
+  }
+
+  @SuppressWarnings("unchecked")
+  protected PK getPrimaryKey(T entity) {
+    return (PK) this.getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil()
+        .getIdentifier(entity);
+  }
+
+  /**
+   * @param after the primary key the entities must follow, null for all the entities
+   * @return a query selecting the entities ordered by primary key.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private CriteriaQuery<T> orderedQuery(PK after) {
+    String idAttribute = this.getIdAttribute();
+
+    CriteriaBuilder cb = this.getEntityManager().getCriteriaBuilder();
+    CriteriaQuery<T> cq = cb.createQuery(this.entityClass);
+    Root<T> root = cq.from(this.entityClass);
+    Path<Comparable> id = root.get(idAttribute);
+    cq.select(root).orderBy(cb.asc(id));
+    if (after != null) {
+      cq.where(cb.greaterThan(id, (Comparable) after));
+    }
+    return cq;
+  }
+
+  private static boolean isOptimisticLockFailure(Throwable ex) {
+    for (Throwable cause : Throwables.getCausalChain(ex)) {
+      if (cause instanceof OptimisticLockException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Provider<EntityManager> provider(final EntityManager entityManager) {
+    Preconditions.checkNotNull(entityManager, "Supplied entity manager can't be null.");
+
+    return new Provider<EntityManager>() {
+      @Override
+      public EntityManager get() {
+        return entityManager;
+      }
+    };
+  }
+
+  private Selection<?>[] paths(Root<T> root, String... attributes) {
+    Selection<?>[] paths = new Selection<?>[attributes.length];
+    for (int i = 0; i < attributes.length; i++) {
+      paths[i] = root.get(attributes[i]).alias(attributes[i]);
+    }
+    return paths;
+  }
+
+  private String getIdAttribute() {
+    EntityType<T> entityType = this.getEntityManager().getMetamodel().entity(this.entityClass);
+    return entityType.getId(entityType.getIdType().getJavaType()).getName();
+  }
+
+  /**
+   * Flushes the changes and clears the persistence context once a batch is complete.
+   *
+   * @param count the number of entities handled so far
+   */
+  private void flushBatch(int count) {
+    if (count % this.batchSize == 0) {
+      this.getEntityManager().flush();
+      this.getEntityManager().clear();
+    }
+  }
+
 }
@@ -0,0 +1,355 @@
+package org.svomz.commons.persistence.jpa;
+
+import com.google.common.base.Preconditions;
+
+import org.svomz.commons.persistence.EntityNotFoundException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityTransaction;
+
+/**
+ * Runs the operations of a JPA repository on an executor and returns their results as
+ * {@link CompletableFuture}s, so that a caller doesn't block on the database and can run
+ * independent queries at once:
+ * <pre>
+ * CompletableFuture&lt;Customer&gt; customer = customers.find(customerId);
+ * CompletableFuture&lt;List&lt;Order&gt;&gt; orders = orders.findAllAfter(null, 20);
+ * customer.thenCombine(orders, ...);
+ * </pre>
+ *
+ * The decorated repository must get its entity manager from the {@link UnitOfWork}. Each operation
+ * runs on a thread of the executor, in its own unit of work. The operations changing entities also
+ * run in their own transaction, which is committed when they complete. If the executor runs an
+ * operation on the calling thread, the operation joins the unit of work and the transaction in
+ * progress on that thread, if any. The entities are detached once returned, so their lazy
+ * attributes must be loaded by the operation. Subclasses expose the domain specific operations of
+ * their repository with {@link #read(Callable)} and {@link #write(Callable)}.
+ *
+ * The executor should be bounded, like the
+ * {@link org.svomz.commons.persistence.RepositoryExecutor}: an operation rejected by the executor
+ * fails its future with a {@link RejectedExecutionException}. The futures of the operations
+ * throwing an {@link EntityNotFoundException} fail with it as well.
+ *
+ * Instances are thread safe.
+ *
+ * @param <T> the type of entity the repository will store and retrieve
+ * @param <PK> the type of the entity primary key
+ */
+public class AsyncRepository<T, PK> {
+
+  private final AbstractJpaRepository<T, PK> repository;
+  private final UnitOfWork unitOfWork;
+  private final Executor executor;
+
+  /**
+   * @param repository the repository, which gets its entity manager from the unit of work
+   * @param unitOfWork the unit of work
+   * @param executor runs the operations
+   */
+  public AsyncRepository(final AbstractJpaRepository<T, PK> repository,
+    final UnitOfWork unitOfWork, final Executor executor) {
+    this.repository = Preconditions.checkNotNull(repository);
+    this.unitOfWork = Preconditions.checkNotNull(unitOfWork);
+    this.executor = Preconditions.checkNotNull(executor);
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#find(Object)
+   */
+  public CompletableFuture<T> find(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    return this.read(new Callable<T>() {
+      @Override
+      public T call() throws EntityNotFoundException {
+        return AsyncRepository.this.repository.find(primaryKey);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#findAll()
+   */
+  public CompletableFuture<List<T>> findAll() {
+    return this.read(new Callable<List<T>>() {
+      @Override
+      public List<T> call() {
+        return AsyncRepository.this.repository.findAll();
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#findAll(Collection)
+   */
+  public CompletableFuture<Map<PK, T>> findAll(final Collection<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    return this.read(new Callable<Map<PK, T>>() {
+      @Override
+      public Map<PK, T> call() {
+        return AsyncRepository.this.repository.findAll(primaryKeys);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#findAll(int, int)
+   */
+  public CompletableFuture<List<T>> findAll(final int offset, final int limit) {
+    return this.read(new Callable<List<T>>() {
+      @Override
+      public List<T> call() {
+        return AsyncRepository.this.repository.findAll(offset, limit);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#findAllAfter(Object, int)
+   */
+  public CompletableFuture<List<T>> findAllAfter(final PK primaryKey, final int limit) {
+    return this.read(new Callable<List<T>>() {
+      @Override
+      public List<T> call() {
+        return AsyncRepository.this.repository.findAllAfter(primaryKey, limit);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#count()
+   */
+  public CompletableFuture<Long> count() {
+    return this.read(new Callable<Long>() {
+      @Override
+      public Long call() {
+        return AsyncRepository.this.repository.count();
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#exists(Object)
+   */
+  public CompletableFuture<Boolean> exists(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    return this.read(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return AsyncRepository.this.repository.exists(primaryKey);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#create(Object)
+   */
+  public CompletableFuture<T> create(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity can't be null.");
+
+    return this.write(new Callable<T>() {
+      @Override
+      public T call() {
+        return AsyncRepository.this.repository.create(entity);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#update(Object)
+   */
+  public CompletableFuture<T> update(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity can't be null.");
+
+    return this.write(new Callable<T>() {
+      @Override
+      public T call() {
+        return AsyncRepository.this.repository.update(entity);
+      }
+    });
+  }
+
+  /**
+   * Applies a change to an entity, retried when the entity was changed concurrently.
+   *
+   * @see AbstractJpaRepository#update(Object, Consumer)
+   */
+  public CompletableFuture<T> update(final PK primaryKey, final Consumer<? super T> change) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+    Preconditions.checkNotNull(change, "Supplied change can't be null.");
+
+    // The update runs its own transactions to retry them.
+    return this.read(new Callable<T>() {
+      @Override
+      public T call() throws EntityNotFoundException {
+        return AsyncRepository.this.repository.update(primaryKey, change);
+      }
+    });
+  }
+
+  /**
+   * The entity is merged before being removed, since it is detached from the entity manager of
+   * the operation.
+   *
+   * @see org.svomz.commons.persistence.Repository#delete(Object)
+   */
+  public CompletableFuture<Void> delete(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity can't be null.");
+
+    return this.write(new Callable<Void>() {
+      @Override
+      public Void call() {
+        AsyncRepository.this.repository.deleteAll(Collections.singleton(entity));
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#createAll(Iterable)
+   */
+  public CompletableFuture<List<T>> createAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    return this.write(new Callable<List<T>>() {
+      @Override
+      public List<T> call() {
+        return AsyncRepository.this.repository.createAll(entities);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#updateAll(Iterable)
+   */
+  public CompletableFuture<List<T>> updateAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    return this.write(new Callable<List<T>>() {
+      @Override
+      public List<T> call() {
+        return AsyncRepository.this.repository.updateAll(entities);
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#deleteAll(Iterable)
+   */
+  public CompletableFuture<Void> deleteAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    return this.write(new Callable<Void>() {
+      @Override
+      public Void call() {
+        AsyncRepository.this.repository.deleteAll(entities);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @see org.svomz.commons.persistence.Repository#deleteAllByPrimaryKeys(Iterable)
+   */
+  public CompletableFuture<Integer> deleteAllByPrimaryKeys(final Iterable<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    return this.write(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return AsyncRepository.this.repository.deleteAllByPrimaryKeys(primaryKeys);
+      }
+    });
+  }
+
+  /**
+   * Runs an operation in a unit of work on the executor.
+   *
+   * @param operation the operation
+   * @return the result of the operation.
+   */
+  protected <R> CompletableFuture<R> read(final Callable<R> operation) {
+    return this.submit(operation, false);
+  }
+
+  /**
+   * Runs an operation in a unit of work and a transaction on the executor. The transaction is
+   * committed if the operation completes and rolled back otherwise.
+   *
+   * @param operation the operation
+   * @return the result of the operation.
+   */
+  protected <R> CompletableFuture<R> write(final Callable<R> operation) {
+    return this.submit(operation, true);
+  }
+
+  /**
+   * @return the decorated repository, to be used by the operations only.
+   */
+  protected AbstractJpaRepository<T, PK> getRepository() {
+    return this.repository;
+  }
+
+  private <R> CompletableFuture<R> submit(final Callable<R> operation,
+    final boolean transactional) {
+    Preconditions.checkNotNull(operation);
+
+    try {
+      return CompletableFuture.supplyAsync(new Supplier<R>() {
+        @Override
+        public R get() {
+          return AsyncRepository.this.call(operation, transactional);
+        }
+      }, this.executor);
+    } catch (RejectedExecutionException ex) {
+      CompletableFuture<R> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(ex);
+      return rejected;
+    }
+  }
+
+  private <R> R call(final Callable<R> operation, final boolean transactional) {
+    boolean begun = !this.unitOfWork.isActive();
+    if (begun) {
+      this.unitOfWork.begin();
+    }
+    EntityTransaction transaction = null;
+    try {
+      if (transactional && !this.unitOfWork.get().getTransaction().isActive()) {
+        transaction = this.unitOfWork.get().getTransaction();
+        transaction.begin();
+      }
+      R result = operation.call();
+      if (transaction != null) {
+        transaction.commit();
+      }
+      return result;
+    } catch (RuntimeException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      // Fails the future with the checked exception, like an EntityNotFoundException.
+      throw new CompletionException(ex);
+    } finally {
+      if (transaction != null && transaction.isActive()) {
+        transaction.rollback();
+      }
+      if (begun) {
+        this.unitOfWork.end();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package org.svomz.commons.persistence.jpa;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.matcher.Matchers;
+
+import org.svomz.commons.persistence.jdbc.PooledDataSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Binds the {@link EntityManagerFactory} of a persistence unit, the {@link UnitOfWork} managing
+ * the entity manager of each thread and the {@link Transactional} interceptor.
+ *
+ * {@link EntityManager} is bound to the entity manager of the current unit of work, repositories
+ * should be injected a {@link javax.inject.Provider} of it so that they can be singletons:
+ * <pre>
+ * &#064;Singleton
+ * public class PersonRepository extends AbstractJpaRepository&lt;Person, Long&gt; {
+ *
+ *   &#064;Inject
+ *   public PersonRepository(Provider&lt;EntityManager&gt; entityManager) {
+ *     super(entityManager);
+ *   }
+ * }
+ * </pre>
+ *
+ * The entity manager factory is created the first time it is needed and should be closed by the
+ * application when it stops. If a {@link PooledDataSource} is bound, the entity manager factory
+ * gets its connections from it instead of the connection settings of the persistence unit.
+ */
+public class JpaPersistenceModule extends AbstractModule {
+
+  public static final String NON_JTA_DATA_SOURCE_PROPERTY = "javax.persistence.nonJtaDataSource";
+
+  private final String persistenceUnitName;
+  private final Map<String, ?> properties;
+
+  /**
+   * @param persistenceUnitName the name of the persistence unit
+   */
+  public JpaPersistenceModule(final String persistenceUnitName) {
+    this(persistenceUnitName, ImmutableMap.<String, Object>of());
+  }
+
+  /**
+   * @param persistenceUnitName the name of the persistence unit
+   * @param properties the properties overriding the ones of the persistence unit
+   */
+  public JpaPersistenceModule(final String persistenceUnitName, final Map<String, ?> properties) {
+    Preconditions.checkNotNull(persistenceUnitName);
+    Preconditions.checkNotNull(properties);
+
+    this.persistenceUnitName = persistenceUnitName;
+    this.properties = ImmutableMap.copyOf(properties);
+  }
+
+  @Override
+  protected void configure() {
+    this.bind(EntityManager.class).toProvider(UnitOfWork.class);
+
+    TransactionInterceptor interceptor = new TransactionInterceptor();
+    this.requestInjection(interceptor);
+    this.bindInterceptor(Matchers.any(), Matchers.annotatedWith(Transactional.class),
+      interceptor);
+    this.bindInterceptor(Matchers.annotatedWith(Transactional.class),
+      Matchers.not(Matchers.annotatedWith(Transactional.class)), interceptor);
+  }
+
+  @Provides
+  @Singleton
+  EntityManagerFactory provideEntityManagerFactory(final DataSourceHolder dataSource) {
+    Map<String, Object> properties = new HashMap<>(this.properties);
+    if (dataSource.pooledDataSource != null) {
+      properties.put(NON_JTA_DATA_SOURCE_PROPERTY, dataSource.pooledDataSource.getDataSource());
+    }
+    return Persistence.createEntityManagerFactory(this.persistenceUnitName, properties);
+  }
+
+  /**
+   * Holds the pooled data source, if one is bound.
+   */
+  static class DataSourceHolder {
+
+    @Inject(optional = true)
+    private PooledDataSource pooledDataSource;
+  }
+
+}
@@ -0,0 +1,99 @@
+package org.svomz.commons.persistence.jpa;
+
+import com.google.common.base.Preconditions;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityTransaction;
+
+/**
+ * Runs the methods annotated with {@link Transactional} in a unit of work and a transaction.
+ */
+class TransactionInterceptor implements MethodInterceptor {
+
+  private static final Transactional DEFAULTS =
+    Defaults.class.getAnnotation(Transactional.class);
+
+  @Inject
+  private Provider<UnitOfWork> unitOfWork;
+
+  @Override
+  public Object invoke(final MethodInvocation invocation) throws Throwable {
+    Preconditions.checkState(this.unitOfWork != null, "Transaction interceptor is not injected.");
+
+    UnitOfWork unitOfWork = this.unitOfWork.get();
+    boolean begun = !unitOfWork.isActive();
+    if (begun) {
+      unitOfWork.begin();
+    }
+    try {
+      return this.invokeInTransaction(invocation, unitOfWork.get().getTransaction());
+    } finally {
+      if (begun) {
+        unitOfWork.end();
+      }
+    }
+  }
+
+  private Object invokeInTransaction(final MethodInvocation invocation,
+    final EntityTransaction transaction) throws Throwable {
+    Transactional transactional = TransactionInterceptor.transactional(invocation);
+    if (transaction.isActive()) {
+      try {
+        return invocation.proceed();
+      } catch (Throwable ex) {
+        if (TransactionInterceptor.rollsBack(transactional, ex)) {
+          transaction.setRollbackOnly();
+        }
+        throw ex;
+      }
+    }
+
+    transaction.begin();
+    Object result;
+    try {
+      result = invocation.proceed();
+    } catch (Throwable ex) {
+      if (TransactionInterceptor.rollsBack(transactional, ex) || transaction.getRollbackOnly()) {
+        transaction.rollback();
+      } else {
+        transaction.commit();
+      }
+      throw ex;
+    }
+    if (transaction.getRollbackOnly()) {
+      transaction.rollback();
+    } else {
+      transaction.commit();
+    }
+    return result;
+  }
+
+  private static Transactional transactional(final MethodInvocation invocation) {
+    Transactional transactional = invocation.getMethod().getAnnotation(Transactional.class);
+    if (transactional != null) {
+      return transactional;
+    }
+    // The method may be inherited from a class which isn't annotated, the annotation of the class
+    // of the intercepted object, or of one of its super classes, applies then.
+    transactional = invocation.getThis().getClass().getAnnotation(Transactional.class);
+    return transactional != null ? transactional : DEFAULTS;
+  }
+
+  private static boolean rollsBack(final Transactional transactional, final Throwable ex) {
+    for (Class<? extends Throwable> type : transactional.rollbackOn()) {
+      if (type.isInstance(ex)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Transactional
+  private static final class Defaults {
+  }
+
+}
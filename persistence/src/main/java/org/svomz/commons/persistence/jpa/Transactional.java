@@ -0,0 +1,34 @@
+package org.svomz.commons.persistence.jpa;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a method in a transaction of the entity manager of the current {@link UnitOfWork}.
+ *
+ * The annotated methods of the objects created by Guice are intercepted once the
+ * {@link JpaPersistenceModule} is installed. Annotating a class applies to all its methods.
+ *
+ * A unit of work is begun for the call if none is in progress on the calling thread, and ended
+ * when it returns. A transaction is begun unless one is already active, in which case the method
+ * joins it. The transaction begun by the method is committed when it returns, or if it throws an
+ * exception which is not one of the {@link #rollbackOn()} types; it is rolled back otherwise. A
+ * method joining a transaction marks it for rollback in the same case.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Transactional {
+
+  /**
+   * @return the types of the exceptions which roll back the transaction, unchecked exceptions by
+   * default.
+   */
+  Class<? extends Throwable>[] rollbackOn() default {RuntimeException.class, Error.class};
+
+}
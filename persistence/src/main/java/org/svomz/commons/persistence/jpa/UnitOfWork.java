@@ -0,0 +1,94 @@
+package org.svomz.commons.persistence.jpa;
+
+import com.google.common.base.Preconditions;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Binds an {@link EntityManager} to the calling thread from the time a unit of work is begun until
+ * it is ended, typically for the handling of a request.
+ *
+ * As a {@link Provider} it returns the entity manager of the unit of work of the calling thread,
+ * so that repositories created with it can be shared by concurrent threads while each thread
+ * works with its own entity manager:
+ * <pre>
+ * unitOfWork.begin();
+ * try {
+ *   repository.find(primaryKey);
+ * } finally {
+ *   unitOfWork.end();
+ * }
+ * </pre>
+ *
+ * The units of work are usually begun and ended around the methods annotated with
+ * {@link Transactional}.
+ *
+ * Instances are thread safe.
+ */
+@Singleton
+public class UnitOfWork implements Provider<EntityManager> {
+
+  private final EntityManagerFactory entityManagerFactory;
+  private final ThreadLocal<EntityManager> entityManager;
+
+  @Inject
+  public UnitOfWork(final EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = Preconditions.checkNotNull(entityManagerFactory);
+    this.entityManager = new ThreadLocal<>();
+  }
+
+  /**
+   * Begins a unit of work on the calling thread, with a new entity manager.
+   *
+   * @throws IllegalStateException if a unit of work is already in progress on the calling thread
+   */
+  public void begin() {
+    Preconditions.checkState(this.entityManager.get() == null,
+      "A unit of work is already in progress on this thread.");
+
+    this.entityManager.set(this.entityManagerFactory.createEntityManager());
+  }
+
+  /**
+   * Ends the unit of work of the calling thread, if any, and closes its entity manager. An active
+   * transaction of the entity manager is rolled back.
+   */
+  public void end() {
+    EntityManager entityManager = this.entityManager.get();
+    if (entityManager == null) {
+      return;
+    }
+    this.entityManager.remove();
+    try {
+      if (entityManager.getTransaction().isActive()) {
+        entityManager.getTransaction().rollback();
+      }
+    } finally {
+      entityManager.close();
+    }
+  }
+
+  /**
+   * @return true if a unit of work is in progress on the calling thread.
+   */
+  public boolean isActive() {
+    return this.entityManager.get() != null;
+  }
+
+  /**
+   * @return the entity manager of the unit of work of the calling thread.
+   * @throws IllegalStateException if no unit of work is in progress on the calling thread
+   */
+  @Override
+  public EntityManager get() {
+    EntityManager entityManager = this.entityManager.get();
+    Preconditions.checkState(entityManager != null,
+      "No unit of work in progress on this thread, begin one or call a @Transactional method.");
+    return entityManager;
+  }
+
+}
@@ -0,0 +1,617 @@
+package org.svomz.commons.persistence.memory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Repository} holding its entities in memory, for test doubles or read-mostly reference
+ * data.
+ *
+ * The entities are held by primary key in a concurrent sorted map, and can be looked up by the
+ * values of their attributes with secondary indexes:
+ * <pre>
+ * InMemoryRepository&lt;Place, Long&gt; places = InMemoryRepository.builder(Place.class, placeId)
+ *   .primaryKeyGenerator(placeIdGenerator)
+ *   .index("city", placeCity)
+ *   .build();
+ * List&lt;Place&gt; parisPlaces = places.findBy("city", "Paris");
+ * </pre>
+ *
+ * The writes are serialized, the entities and the indexes they change are updated at once. The
+ * reads don't take any lock: a lookup by primary key reads the map directly, the queries reading
+ * several entities validate that no write happened while they read, and are only run again under
+ * a read lock if one did. The queries thus return a consistent snapshot of the entities, like all
+ * the entities of a secondary index or the page of a {@link #findAll(int, int)}.
+ * {@link #stream(int)} reads a consistent snapshot of each batch.
+ *
+ * The entities are held by reference, the instances returned are shared by all the callers. They
+ * should be changed through {@link #update(Object)} only, which updates the secondary indexes with
+ * the new values of their attributes.
+ *
+ * The entities are ordered by the natural order of their primary keys, unless another comparator
+ * is given.
+ *
+ * Instances are thread safe.
+ *
+ * @param <T> the type of entity the repository will store and retrieve
+ * @param <PK> the type of the entity primary key
+ */
+public class InMemoryRepository<T, PK> implements Repository<T, PK> {
+
+  private final Class<T> entityClass;
+  private final Function<? super T, ? extends PK> primaryKey;
+  private final Function<? super T, ? extends PK> primaryKeyGenerator;
+  private final Comparator<? super PK> comparator;
+  private final Map<String, Index<T, PK>> indexes;
+  private final ConcurrentNavigableMap<PK, Entry<T>> entities;
+  private final StampedLock lock;
+
+  private volatile int size;
+
+  private InMemoryRepository(final Builder<T, PK> builder) {
+    this.entityClass = builder.entityClass;
+    this.primaryKey = builder.primaryKey;
+    this.primaryKeyGenerator = builder.primaryKeyGenerator;
+    this.comparator = builder.comparator;
+    this.indexes = new HashMap<>();
+    for (Map.Entry<String, Function<? super T, ?>> index : builder.indexes.entrySet()) {
+      this.indexes.put(index.getKey(), new Index<T, PK>(this.indexes.size(), index.getValue()));
+    }
+    this.entities = new ConcurrentSkipListMap<>(builder.comparator);
+    this.lock = new StampedLock();
+  }
+
+  @Override
+  public T find(final PK primaryKey) throws EntityNotFoundException {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    Entry<T> entry = this.entities.get(primaryKey);
+    if (entry == null) {
+      throw new EntityNotFoundException(this.entityClass, primaryKey.toString());
+    }
+    return entry.entity;
+  }
+
+  /**
+   * In this implementation the entity is returned right away.
+   *
+   * @throws IllegalArgumentException if the entity doesn't exist
+   */
+  @Override
+  public T getReference(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    Entry<T> entry = this.entities.get(primaryKey);
+    Preconditions.checkArgument(entry != null, "%s entity with the identifier %s not found",
+      this.entityClass.getSimpleName(), primaryKey);
+    return entry.entity;
+  }
+
+  @Override
+  public List<T> findAll() {
+    return this.read(new Supplier<List<T>>() {
+      @Override
+      public List<T> get() {
+        return InMemoryRepository.this.copy(InMemoryRepository.this.entities.values(),
+          Integer.MAX_VALUE);
+      }
+    });
+  }
+
+  @Override
+  public long count() {
+    return this.size;
+  }
+
+  @Override
+  public boolean exists(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    return this.entities.containsKey(primaryKey);
+  }
+
+  @Override
+  public Map<PK, T> findAll(final Collection<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    return this.read(new Supplier<Map<PK, T>>() {
+      @Override
+      public Map<PK, T> get() {
+        Map<PK, T> entities = new LinkedHashMap<>();
+        for (PK primaryKey : primaryKeys) {
+          Entry<T> entry = InMemoryRepository.this.entities.get(primaryKey);
+          if (entry != null) {
+            entities.put(primaryKey, entry.entity);
+          }
+        }
+        return entities;
+      }
+    });
+  }
+
+  /**
+   * In this implementation the skipped entities are still iterated over.
+   */
+  @Override
+  public List<T> findAll(final int offset, final int limit) {
+    Preconditions.checkArgument(offset >= 0, "Supplied offset can't be negative.");
+    Preconditions.checkArgument(limit > 0, "Supplied limit must be positive.");
+
+    return this.read(new Supplier<List<T>>() {
+      @Override
+      public List<T> get() {
+        Iterator<Entry<T>> entries = InMemoryRepository.this.entities.values().iterator();
+        for (int i = 0; i < offset && entries.hasNext(); i++) {
+          entries.next();
+        }
+        List<T> page = new ArrayList<>();
+        while (page.size() < limit && entries.hasNext()) {
+          page.add(entries.next().entity);
+        }
+        return page;
+      }
+    });
+  }
+
+  @Override
+  public List<T> findAllAfter(final PK primaryKey, final int limit) {
+    Preconditions.checkArgument(limit > 0, "Supplied limit must be positive.");
+
+    return this.read(new Supplier<List<T>>() {
+      @Override
+      public List<T> get() {
+        Map<PK, Entry<T>> entities = primaryKey == null ? InMemoryRepository.this.entities
+          : InMemoryRepository.this.entities.tailMap(primaryKey, false);
+        return InMemoryRepository.this.copy(entities.values(), limit);
+      }
+    });
+  }
+
+  /**
+   * In this implementation the entities are read by batches of the given size with
+   * {@link #findAllAfter(Object, int)}.
+   */
+  @Override
+  public Stream<T> stream(final int fetchSize) {
+    Preconditions.checkArgument(fetchSize > 0, "Supplied fetch size must be positive.");
+
+    Iterator<T> entities = new AbstractIterator<T>() {
+
+      private List<T> page = Collections.emptyList();
+      private int index;
+
+      @Override
+      protected T computeNext() {
+        if (this.index == this.page.size()) {
+          if (this.index > 0 && this.index < fetchSize) {
+            return this.endOfData();
+          }
+          PK last = this.page.isEmpty() ? null
+            : InMemoryRepository.this.primaryKey.apply(this.page.get(this.index - 1));
+          this.page = InMemoryRepository.this.findAllAfter(last, fetchSize);
+          this.index = 0;
+          if (this.page.isEmpty()) {
+            return this.endOfData();
+          }
+        }
+        return this.page.get(this.index++);
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entities,
+      Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
+  /**
+   * Finds the entities whose indexed attribute has the given value.
+   *
+   * @param index the name of the index
+   * @param value the value of the attribute
+   * @return the entities, ordered by primary key.
+   * @throws IllegalArgumentException if no index has this name
+   */
+  public List<T> findBy(final String index, final Object value) {
+    Preconditions.checkNotNull(index, "Supplied index can't be null.");
+    Preconditions.checkNotNull(value, "Supplied value can't be null.");
+    final Index<T, PK> found = this.indexes.get(index);
+    Preconditions.checkArgument(found != null, "No index named %s.", index);
+
+    return this.read(new Supplier<List<T>>() {
+      @Override
+      public List<T> get() {
+        NavigableSet<PK> primaryKeys = found.primaryKeys.get(value);
+        if (primaryKeys == null) {
+          return Collections.emptyList();
+        }
+        List<T> entities = new ArrayList<>(primaryKeys.size());
+        for (PK primaryKey : primaryKeys) {
+          Entry<T> entry = InMemoryRepository.this.entities.get(primaryKey);
+          if (entry != null) {
+            entities.add(entry.entity);
+          }
+        }
+        return entities;
+      }
+    });
+  }
+
+  /**
+   * In this implementation an entity without primary key is given one by the primary key
+   * generator.
+   *
+   * @throws IllegalArgumentException if the entity has no primary key and no generator is set, or
+   * an entity with the same primary key exists
+   */
+  @Override
+  public T create(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity key can't be null.");
+
+    return this.createAll(Collections.singleton(entity)).get(0);
+  }
+
+  /**
+   * In this implementation the behavior of this method is a create or update. If the given entity
+   * does not exist it will be created, otherwise it replaces the entity with the same primary key.
+   * The same instance is returned.
+   */
+  @Override
+  public T update(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity key can't be null.");
+
+    return this.updateAll(Collections.singleton(entity)).get(0);
+  }
+
+  /**
+   * In this implementation an entity which doesn't exist is ignored.
+   */
+  @Override
+  public void delete(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity key can't be null.");
+
+    this.deleteAll(Collections.singleton(entity));
+  }
+
+  /**
+   * In this implementation the entities are created at once, or none of them if one of them can't
+   * be created, including when a generated primary key is already used or the generator fails.
+   */
+  @Override
+  public List<T> createAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+    List<T> created = ImmutableList.copyOf(entities);
+
+    long stamp = this.lock.writeLock();
+    try {
+      this.insert(created);
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+    return created;
+  }
+
+  /**
+   * Creates an entity unless an entity with the same primary key exists, like a set. An entity
+   * without primary key is given one by the primary key generator.
+   *
+   * @param entity the entity to create
+   * @return true if the entity is created, false if an entity with the same primary key exists
+   * @throws IllegalArgumentException if the entity has no primary key and no generator is set, or
+   * its generated primary key is already used
+   */
+  public boolean createIfAbsent(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity key can't be null.");
+
+    long stamp = this.lock.writeLock();
+    try {
+      PK primaryKey = this.primaryKey.apply(entity);
+      if (primaryKey != null && this.entities.containsKey(primaryKey)) {
+        return false;
+      }
+      this.insert(Collections.singletonList(entity));
+      return true;
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Creates the entities, or none of them if one of them can't be created, the write lock must be
+   * held.
+   */
+  private void insert(final List<T> created) {
+    List<PK> primaryKeys = new ArrayList<>(created.size());
+    Set<PK> distinct = new TreeSet<>(this.comparator);
+    for (T entity : created) {
+      PK primaryKey = this.primaryKey.apply(entity);
+      Preconditions.checkArgument(primaryKey != null || this.primaryKeyGenerator != null,
+        "Supplied entity has no primary key and no primary key generator is set.");
+      this.checkAbsent(primaryKey, distinct);
+      primaryKeys.add(primaryKey);
+    }
+    // The keys are generated once the supplied ones are valid, and all checked before any entity
+    // is stored.
+    for (int i = 0; i < created.size(); i++) {
+      if (primaryKeys.get(i) == null) {
+        PK primaryKey = Preconditions.checkNotNull(
+          this.primaryKeyGenerator.apply(created.get(i)), "Generated primary key can't be null.");
+        this.checkAbsent(primaryKey, distinct);
+        primaryKeys.set(i, primaryKey);
+      }
+    }
+    for (int i = 0; i < created.size(); i++) {
+      this.put(primaryKeys.get(i), created.get(i));
+    }
+  }
+
+  /**
+   * In this implementation the entities are updated at once.
+   */
+  @Override
+  public List<T> updateAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+    List<T> updated = ImmutableList.copyOf(entities);
+
+    long stamp = this.lock.writeLock();
+    try {
+      for (T entity : updated) {
+        PK primaryKey = this.primaryKey.apply(entity);
+        Preconditions.checkArgument(primaryKey != null || this.primaryKeyGenerator != null,
+          "Supplied entity has no primary key and no primary key generator is set.");
+      }
+      for (T entity : updated) {
+        PK primaryKey = this.primaryKey.apply(entity);
+        if (primaryKey == null) {
+          primaryKey = Preconditions.checkNotNull(this.primaryKeyGenerator.apply(entity),
+            "Generated primary key can't be null.");
+        }
+        this.put(primaryKey, entity);
+      }
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+    return updated;
+  }
+
+  @Override
+  public void deleteAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    List<PK> primaryKeys = new ArrayList<>();
+    for (T entity : entities) {
+      Preconditions.checkNotNull(entity, "Supplied entity can't be null.");
+      PK primaryKey = this.primaryKey.apply(entity);
+      if (primaryKey != null) {
+        primaryKeys.add(primaryKey);
+      }
+    }
+    this.deleteAllByPrimaryKeys(primaryKeys);
+  }
+
+  @Override
+  public int deleteAllByPrimaryKeys(final Iterable<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    int deleted = 0;
+    long stamp = this.lock.writeLock();
+    try {
+      for (PK primaryKey : primaryKeys) {
+        Entry<T> entry = this.entities.remove(Preconditions.checkNotNull(primaryKey));
+        if (entry != null) {
+          this.unindex(primaryKey, entry);
+          deleted++;
+        }
+      }
+      this.size -= deleted;
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+    return deleted;
+  }
+
+  /**
+   * Checks that no entity is stored with the primary key, nor created with it by the same
+   * operation, the write lock must be held.
+   */
+  private void checkAbsent(final PK primaryKey, final Set<PK> created) {
+    Preconditions.checkArgument(primaryKey == null
+        || !this.entities.containsKey(primaryKey) && created.add(primaryKey),
+      "%s entity with the identifier %s already exists.", this.entityClass.getSimpleName(),
+      primaryKey);
+  }
+
+  /**
+   * Stores an entity and indexes it, the write lock must be held.
+   */
+  private void put(final PK primaryKey, final T entity) {
+    Object[] values = new Object[this.indexes.size()];
+    for (Index<T, PK> index : this.indexes.values()) {
+      values[index.position] = index.attribute.apply(entity);
+    }
+    Entry<T> previous = this.entities.put(primaryKey, new Entry<>(entity, values));
+    if (previous != null) {
+      this.unindex(primaryKey, previous);
+    } else {
+      this.size++;
+    }
+    for (Index<T, PK> index : this.indexes.values()) {
+      Object value = values[index.position];
+      if (value != null) {
+        NavigableSet<PK> primaryKeys = index.primaryKeys.get(value);
+        if (primaryKeys == null) {
+          primaryKeys = new ConcurrentSkipListSet<>(this.comparator);
+          index.primaryKeys.put(value, primaryKeys);
+        }
+        primaryKeys.add(primaryKey);
+      }
+    }
+  }
+
+  /**
+   * Removes an entity from the indexes, the write lock must be held.
+   */
+  private void unindex(final PK primaryKey, final Entry<T> entry) {
+    for (Index<T, PK> index : this.indexes.values()) {
+      Object value = entry.values[index.position];
+      NavigableSet<PK> primaryKeys = value != null ? index.primaryKeys.get(value) : null;
+      if (primaryKeys != null) {
+        primaryKeys.remove(primaryKey);
+        if (primaryKeys.isEmpty()) {
+          index.primaryKeys.remove(value);
+        }
+      }
+    }
+  }
+
+  private List<T> copy(final Collection<Entry<T>> entries, final int limit) {
+    List<T> entities = new ArrayList<>();
+    for (Entry<T> entry : entries) {
+      if (entities.size() == limit) {
+        break;
+      }
+      entities.add(entry.entity);
+    }
+    return entities;
+  }
+
+  /**
+   * Reads without lock, then under the read lock if a write happened in the meantime.
+   */
+  private <R> R read(final Supplier<R> reader) {
+    long stamp = this.lock.tryOptimisticRead();
+    if (stamp != 0) {
+      R result = reader.get();
+      if (this.lock.validate(stamp)) {
+        return result;
+      }
+    }
+    stamp = this.lock.readLock();
+    try {
+      return reader.get();
+    } finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * @param entityClass the class of the entities, reported when an entity is not found
+   * @param primaryKey returns the primary key of an entity, null if it has none yet
+   */
+  public static <T, PK> Builder<T, PK> builder(final Class<T> entityClass,
+    final Function<? super T, ? extends PK> primaryKey) {
+    return new Builder<>(entityClass, primaryKey);
+  }
+
+  public static class Builder<T, PK> {
+
+    private final Class<T> entityClass;
+    private final Function<? super T, ? extends PK> primaryKey;
+    private final Map<String, Function<? super T, ?>> indexes;
+    private Function<? super T, ? extends PK> primaryKeyGenerator;
+    private Comparator<? super PK> comparator;
+
+    @SuppressWarnings("unchecked")
+    private Builder(final Class<T> entityClass,
+      final Function<? super T, ? extends PK> primaryKey) {
+      this.entityClass = Preconditions.checkNotNull(entityClass);
+      this.primaryKey = Preconditions.checkNotNull(primaryKey);
+      this.indexes = new LinkedHashMap<>();
+      this.comparator = (Comparator<? super PK>) Ordering.natural();
+    }
+
+    /**
+     * @param primaryKeyGenerator sets a new primary key to an entity created without one and
+     * returns it, the entities must be created with their primary key by default
+     */
+    public Builder<T, PK> primaryKeyGenerator(
+      final Function<? super T, ? extends PK> primaryKeyGenerator) {
+      this.primaryKeyGenerator = Preconditions.checkNotNull(primaryKeyGenerator);
+      return this;
+    }
+
+    /**
+     * @param comparator orders the primary keys, their natural order by default
+     */
+    public Builder<T, PK> comparator(final Comparator<? super PK> comparator) {
+      this.comparator = Preconditions.checkNotNull(comparator);
+      return this;
+    }
+
+    /**
+     * Declares a secondary index, queried with {@link InMemoryRepository#findBy(String, Object)}.
+     * The entities whose attribute is null are not indexed.
+     *
+     * @param name the name of the index
+     * @param attribute returns the value of the indexed attribute of an entity, which must
+     * implement {@link Object#equals(Object)} and {@link Object#hashCode()}
+     */
+    public Builder<T, PK> index(final String name, final Function<? super T, ?> attribute) {
+      Preconditions.checkNotNull(name);
+      Preconditions.checkNotNull(attribute);
+      Preconditions.checkArgument(!this.indexes.containsKey(name), "Index %s already declared.",
+        name);
+      this.indexes.put(name, attribute);
+      return this;
+    }
+
+    public InMemoryRepository<T, PK> build() {
+      return new InMemoryRepository<>(this);
+    }
+  }
+
+  /**
+   * An entity and the values of its indexed attributes when it was stored.
+   */
+  private static final class Entry<T> {
+
+    private final T entity;
+    private final Object[] values;
+
+    private Entry(final T entity, final Object[] values) {
+      this.entity = entity;
+      this.values = values;
+    }
+  }
+
+  private static final class Index<T, PK> {
+
+    private final int position;
+    private final Function<? super T, ?> attribute;
+    private final ConcurrentMap<Object, NavigableSet<PK>> primaryKeys;
+
+    private Index(final int position, final Function<? super T, ?> attribute) {
+      this.position = position;
+      this.attribute = attribute;
+      this.primaryKeys = new ConcurrentHashMap<>();
+    }
+  }
+
+}
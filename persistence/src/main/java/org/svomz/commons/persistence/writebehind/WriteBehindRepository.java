@@ -0,0 +1,703 @@
+package org.svomz.commons.persistence.writebehind;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.svomz.commons.core.Service;
+import org.svomz.commons.core.metrics.Counter;
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.Repository;
+import org.svomz.commons.persistence.jpa.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityTransaction;
+
+/**
+ * A {@link Repository} buffering the updates and deletions of entities in memory and writing them
+ * to another repository in the background, so that the entities changed on every request, like
+ * activity timestamps or counters, are not written while the request waits:
+ * <pre>
+ * WriteBehindRepository&lt;Session, String&gt; sessions = WriteBehindRepository.builder(
+ *     Session.class, new SessionRepository(unitOfWork), sessionId)
+ *   .unitOfWork(unitOfWork)
+ *   .flushInterval(5, TimeUnit.SECONDS)
+ *   .build();
+ * sessions.start();
+ * </pre>
+ *
+ * The changes of an entity are coalesced: only its last update or deletion is written. The buffered
+ * changes are written by batches once the batch size is reached or the flush interval elapsed, and
+ * when the repository is stopped, typically in the stopping stage of the application lifecycle
+ * where the repository is registered as a {@link Service}. The number of entities with buffered
+ * changes is bounded: a change of another entity waits for a flush once it is reached, so that a
+ * slow persistence system slows the callers down instead of exhausting the memory. The changes are
+ * written through when the repository is not started.
+ *
+ * A batch which fails to be written is logged and buffered again, with the next batches of the
+ * flush, unless the entities changed in the meantime, to be retried by the next flush. The batches
+ * already written by the flush are not written again. After a failure the background flush waits for
+ * the flush interval, even if the batch size is reached, so that an unavailable persistence system
+ * is not retried in a loop. Changes may thus be lost if the application stops while the
+ * persistence system is unavailable.
+ *
+ * The lookups by primary key see the buffered changes. The other queries, like
+ * {@link #findAll()} or {@link #count()}, read the decorated repository: they see the changes once
+ * they are flushed, which can be forced with {@link #flush()}. The entities are created in the
+ * decorated repository right away, since their primary key may be generated by it.
+ *
+ * The batches are written with {@link Repository#updateAll(Iterable)} and
+ * {@link Repository#deleteAll(Iterable)} from the thread of the repository. A JPA repository
+ * getting its entity manager from a {@link UnitOfWork} needs one on that thread: given the unit of
+ * work with {@link Builder#unitOfWork(UnitOfWork)}, the repository writes each batch in a unit of
+ * work and a transaction, committed once the batch is written. Subclasses can also override
+ * {@link #write(List, List)} to write the batches otherwise.
+ *
+ * Instances are thread safe if the decorated repository is.
+ *
+ * @param <T> the type of entity the repository will store and retrieve
+ * @param <PK> the type of the entity primary key
+ */
+public class WriteBehindRepository<T, PK> implements Repository<T, PK>, Service {
+
+  private static final Logger LOG = Logger.getLogger(WriteBehindRepository.class.getName());
+
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  public static final int DEFAULT_CAPACITY = 10000;
+  public static final long DEFAULT_FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  private final Class<T> entityClass;
+  private final Repository<T, PK> repository;
+  private final Function<? super T, ? extends PK> primaryKey;
+  private final int batchSize;
+  private final int capacity;
+  private final long flushInterval;
+  private final UnitOfWork unitOfWork;
+
+  private final ReentrantLock lock;
+  private final Condition notFull;
+  private final Condition flushNeeded;
+  private final ReentrantLock flushLock;
+  private final Counter coalescedChanges;
+  private final Counter flushedChanges;
+  private final Counter failedFlushes;
+
+  private Map<PK, Change<T>> pending;
+  private Map<PK, Change<T>> inFlight;
+  private boolean running;
+  private boolean stopping;
+  private Thread flusher;
+
+  protected WriteBehindRepository(final Builder<T, PK> builder) {
+    this.entityClass = builder.entityClass;
+    this.repository = builder.repository;
+    this.primaryKey = builder.primaryKey;
+    this.batchSize = builder.batchSize;
+    this.capacity = builder.capacity;
+    this.flushInterval = builder.flushInterval;
+    this.unitOfWork = builder.unitOfWork;
+
+    this.lock = new ReentrantLock();
+    this.notFull = this.lock.newCondition();
+    this.flushNeeded = this.lock.newCondition();
+    this.flushLock = new ReentrantLock();
+    this.coalescedChanges = new Counter();
+    this.flushedChanges = new Counter();
+    this.failedFlushes = new Counter();
+    this.pending = new LinkedHashMap<>();
+    this.inFlight = Collections.emptyMap();
+  }
+
+  /**
+   * Starts flushing the buffered changes in the background.
+   *
+   * @throws IllegalStateException if the repository is already started
+   */
+  @Override
+  public void start() {
+    this.lock.lock();
+    try {
+      Preconditions.checkState(!this.running && !this.stopping,
+        "The repository is already started.");
+      this.running = true;
+      this.flusher = new ThreadFactoryBuilder()
+        .setNameFormat("write-behind-" + this.entityClass.getSimpleName())
+        .setDaemon(true)
+        .build()
+        .newThread(new Runnable() {
+          @Override
+          public void run() {
+            WriteBehindRepository.this.flushPeriodically();
+          }
+        });
+      this.flusher.start();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Stops the background flushes and writes the buffered changes, the next changes are written
+   * through. The changes made until the buffer is empty are buffered and written by this method,
+   * so that they are not overwritten by older changes of the same entities.
+   *
+   * @throws RuntimeException the failure of the decorated repository, the changes are buffered
+   * again and the next changes are written through
+   */
+  @Override
+  public void stop() {
+    Thread flusher;
+    this.lock.lock();
+    try {
+      if (!this.running) {
+        return;
+      }
+      this.running = false;
+      this.stopping = true;
+      flusher = this.flusher;
+      this.flusher = null;
+      this.flushNeeded.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+
+    try {
+      try {
+        flusher.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      boolean empty;
+      do {
+        this.flush();
+        this.lock.lock();
+        try {
+          empty = this.pending.isEmpty();
+          // The changes are written through once no buffered change is left to overwrite them.
+          this.stopping = !empty;
+        } finally {
+          this.lock.unlock();
+        }
+      } while (!empty);
+    } finally {
+      this.lock.lock();
+      try {
+        this.stopping = false;
+        // Changes waiting for room are written through.
+        this.notFull.signalAll();
+      } finally {
+        this.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    this.lock.lock();
+    try {
+      return this.running;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the buffered changes to the decorated repository.
+   *
+   * @throws RuntimeException the failure of the decorated repository, the changes not written yet
+   * are buffered again
+   */
+  public void flush() {
+    this.flushLock.lock();
+    try {
+      Map<PK, Change<T>> batch;
+      this.lock.lock();
+      try {
+        if (this.pending.isEmpty()) {
+          return;
+        }
+        batch = this.pending;
+        this.pending = new LinkedHashMap<>();
+        this.inFlight = batch;
+        this.notFull.signalAll();
+      } finally {
+        this.lock.unlock();
+      }
+
+      List<Map.Entry<PK, Change<T>>> changes = new ArrayList<>(batch.entrySet());
+      int written = 0;
+      try {
+        for (List<Map.Entry<PK, Change<T>>> partition
+          : Iterables.partition(changes, this.batchSize)) {
+          this.writeBatch(partition);
+          written += partition.size();
+          this.flushedChanges.add(partition.size());
+        }
+      } catch (RuntimeException | Error ex) {
+        this.failedFlushes.increment();
+        this.lock.lock();
+        try {
+          // Buffers the changes not written again, unless the entities changed in the meantime.
+          for (Map.Entry<PK, Change<T>> change : changes.subList(written, changes.size())) {
+            if (!this.pending.containsKey(change.getKey())) {
+              this.pending.put(change.getKey(), change.getValue());
+            }
+          }
+        } finally {
+          this.lock.unlock();
+        }
+        throw ex;
+      } finally {
+        this.lock.lock();
+        try {
+          this.inFlight = Collections.emptyMap();
+        } finally {
+          this.lock.unlock();
+        }
+      }
+    } finally {
+      this.flushLock.unlock();
+    }
+  }
+
+  @Override
+  public T find(final PK primaryKey) throws EntityNotFoundException {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    Change<T> change = this.getChange(primaryKey);
+    if (change == null) {
+      return this.repository.find(primaryKey);
+    }
+    if (change.deleted) {
+      throw new EntityNotFoundException(this.entityClass, primaryKey.toString());
+    }
+    return change.entity;
+  }
+
+  /**
+   * Returns the entity buffered if any, otherwise the reference of the decorated repository.
+   */
+  @Override
+  public T getReference(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    Change<T> change = this.getChange(primaryKey);
+    return change != null && !change.deleted
+      ? change.entity : this.repository.getReference(primaryKey);
+  }
+
+  @Override
+  public List<T> findAll() {
+    return this.repository.findAll();
+  }
+
+  @Override
+  public long count() {
+    return this.repository.count();
+  }
+
+  @Override
+  public boolean exists(final PK primaryKey) {
+    Preconditions.checkNotNull(primaryKey, "Supplied primary key can't be null.");
+
+    Change<T> change = this.getChange(primaryKey);
+    return change != null ? !change.deleted : this.repository.exists(primaryKey);
+  }
+
+  /**
+   * Finds the entities with buffered changes in the buffer and the others at once from the
+   * decorated repository.
+   */
+  @Override
+  public Map<PK, T> findAll(final Collection<PK> primaryKeys) {
+    Preconditions.checkNotNull(primaryKeys, "Supplied primary keys can't be null.");
+
+    Map<PK, Change<T>> changes = new LinkedHashMap<>();
+    Set<PK> missing = new LinkedHashSet<>();
+    for (PK primaryKey : primaryKeys) {
+      Change<T> change = this.getChange(primaryKey);
+      if (change != null) {
+        changes.put(primaryKey, change);
+      } else {
+        missing.add(primaryKey);
+      }
+    }
+    Map<PK, T> loaded = missing.isEmpty()
+      ? Collections.<PK, T>emptyMap() : this.repository.findAll(missing);
+
+    Map<PK, T> entities = new LinkedHashMap<>();
+    for (PK primaryKey : primaryKeys) {
+      Change<T> change = changes.get(primaryKey);
+      T entity = change != null ? (change.deleted ? null : change.entity) : loaded.get(primaryKey);
+      if (entity != null) {
+        entities.put(primaryKey, entity);
+      }
+    }
+    return entities;
+  }
+
+  @Override
+  public List<T> findAll(final int offset, final int limit) {
+    return this.repository.findAll(offset, limit);
+  }
+
+  @Override
+  public List<T> findAllAfter(final PK primaryKey, final int limit) {
+    return this.repository.findAllAfter(primaryKey, limit);
+  }
+
+  @Override
+  public Stream<T> stream(final int fetchSize) {
+    return this.repository.stream(fetchSize);
+  }
+
+  /**
+   * Creates the entity in the decorated repository right away.
+   */
+  @Override
+  public T create(final T entity) {
+    return this.repository.create(entity);
+  }
+
+  /**
+   * Buffers the entity, which is written by the next flush. An entity without primary key is
+   * written through.
+   */
+  @Override
+  public T update(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity can't be null.");
+
+    PK primaryKey = this.primaryKey.apply(entity);
+    if (primaryKey == null || !this.buffer(primaryKey, new Change<>(entity, false))) {
+      return this.repository.update(entity);
+    }
+    return entity;
+  }
+
+  /**
+   * Buffers the deletion of the entity, which is written by the next flush.
+   */
+  @Override
+  public void delete(final T entity) {
+    Preconditions.checkNotNull(entity, "Supplied entity can't be null.");
+
+    PK primaryKey = this.primaryKey.apply(entity);
+    if (primaryKey == null || !this.buffer(primaryKey, new Change<>(entity, true))) {
+      this.repository.delete(entity);
+    }
+  }
+
+  /**
+   * Creates the entities in the decorated repository right away.
+   */
+  @Override
+  public List<T> createAll(final Iterable<T> entities) {
+    return this.repository.createAll(entities);
+  }
+
+  @Override
+  public List<T> updateAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    List<T> updated = new ArrayList<>();
+    for (T entity : entities) {
+      updated.add(this.update(entity));
+    }
+    return updated;
+  }
+
+  @Override
+  public void deleteAll(final Iterable<T> entities) {
+    Preconditions.checkNotNull(entities, "Supplied entities can't be null.");
+
+    for (T entity : entities) {
+      this.delete(entity);
+    }
+  }
+
+  /**
+   * Flushes the buffered changes, then deletes the entities from the decorated repository right
+   * away to count them.
+   */
+  @Override
+  public int deleteAllByPrimaryKeys(final Iterable<PK> primaryKeys) {
+    this.flush();
+    return this.repository.deleteAllByPrimaryKeys(primaryKeys);
+  }
+
+  /**
+   * @return the number of entities with buffered changes.
+   */
+  public int getPendingChanges() {
+    this.lock.lock();
+    try {
+      return this.pending.size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of changes which replaced a buffered change of the same entity.
+   */
+  public long getCoalescedChanges() {
+    return this.coalescedChanges.getCount();
+  }
+
+  /**
+   * @return the number of changes written to the decorated repository.
+   */
+  public long getFlushedChanges() {
+    return this.flushedChanges.getCount();
+  }
+
+  /**
+   * @return the number of flushes which failed.
+   */
+  public long getFailedFlushes() {
+    return this.failedFlushes.getCount();
+  }
+
+  /**
+   * Writes a batch of changes to the decorated repository.
+   *
+   * @param updated the entities to update
+   * @param deleted the entities to delete
+   */
+  protected void write(final List<T> updated, final List<T> deleted) {
+    if (!updated.isEmpty()) {
+      this.repository.updateAll(updated);
+    }
+    if (!deleted.isEmpty()) {
+      this.repository.deleteAll(deleted);
+    }
+  }
+
+  /**
+   * @return the decorated repository.
+   */
+  protected Repository<T, PK> getRepository() {
+    return this.repository;
+  }
+
+  private void writeBatch(final List<Map.Entry<PK, Change<T>>> batch) {
+    List<T> updated = new ArrayList<>();
+    List<T> deleted = new ArrayList<>();
+    for (Map.Entry<PK, Change<T>> change : batch) {
+      (change.getValue().deleted ? deleted : updated).add(change.getValue().entity);
+    }
+    if (this.unitOfWork != null) {
+      this.writeInTransaction(updated, deleted);
+    } else {
+      this.write(updated, deleted);
+    }
+  }
+
+  /**
+   * Writes a batch in the unit of work and the transaction in progress on the calling thread, or
+   * in its own ones.
+   */
+  private void writeInTransaction(final List<T> updated, final List<T> deleted) {
+    boolean begun = !this.unitOfWork.isActive();
+    if (begun) {
+      this.unitOfWork.begin();
+    }
+    EntityTransaction transaction = null;
+    try {
+      if (!this.unitOfWork.get().getTransaction().isActive()) {
+        transaction = this.unitOfWork.get().getTransaction();
+        transaction.begin();
+      }
+      this.write(updated, deleted);
+      if (transaction != null) {
+        transaction.commit();
+      }
+    } finally {
+      if (transaction != null && transaction.isActive()) {
+        transaction.rollback();
+      }
+      if (begun) {
+        this.unitOfWork.end();
+      }
+    }
+  }
+
+  /**
+   * Buffers a change, waiting for room if the buffer is full.
+   *
+   * @return false if the repository is not started, nor being stopped, and the change should be
+   * written through.
+   */
+  private boolean buffer(final PK primaryKey, final Change<T> change) {
+    this.lock.lock();
+    try {
+      while ((this.running || this.stopping) && this.pending.size() >= this.capacity
+        && !this.pending.containsKey(primaryKey)) {
+        this.flushNeeded.signal();
+        this.notFull.awaitUninterruptibly();
+      }
+      if (!this.running && !this.stopping) {
+        return false;
+      }
+      if (this.pending.put(primaryKey, change) != null) {
+        this.coalescedChanges.increment();
+      }
+      if (this.pending.size() >= this.batchSize) {
+        this.flushNeeded.signal();
+      }
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private Change<T> getChange(final PK primaryKey) {
+    this.lock.lock();
+    try {
+      Change<T> change = this.pending.get(primaryKey);
+      return change != null ? change : this.inFlight.get(primaryKey);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void flushPeriodically() {
+    boolean failed = false;
+    while (true) {
+      this.lock.lock();
+      try {
+        if (failed) {
+          // Waits the whole interval, even if the batch size is reached, before retrying.
+          long remaining = this.flushInterval;
+          while (this.running && remaining > 0) {
+            remaining = this.flushNeeded.awaitNanos(remaining);
+          }
+        } else if (this.running && this.pending.size() < this.batchSize) {
+          this.flushNeeded.awaitNanos(this.flushInterval);
+        }
+        if (!this.running) {
+          return;
+        }
+      } catch (InterruptedException ex) {
+        return;
+      } finally {
+        this.lock.unlock();
+      }
+
+      try {
+        this.flush();
+        failed = false;
+      } catch (RuntimeException ex) {
+        failed = true;
+        LOG.log(Level.WARNING, "Unable to write the changes of "
+          + this.entityClass.getSimpleName() + " entities, they will be retried.", ex);
+      }
+    }
+  }
+
+  /**
+   * @param entityClass the class of the entities, reported when a deleted entity is looked up
+   * @param repository the repository to decorate
+   * @param primaryKey returns the primary key of an entity, null if it has none yet
+   */
+  public static <T, PK> Builder<T, PK> builder(final Class<T> entityClass,
+    final Repository<T, PK> repository, final Function<? super T, ? extends PK> primaryKey) {
+    return new Builder<>(entityClass, repository, primaryKey);
+  }
+
+  public static class Builder<T, PK> {
+
+    private final Class<T> entityClass;
+    private final Repository<T, PK> repository;
+    private final Function<? super T, ? extends PK> primaryKey;
+    private int batchSize;
+    private int capacity;
+    private long flushInterval;
+    private UnitOfWork unitOfWork;
+
+    private Builder(final Class<T> entityClass, final Repository<T, PK> repository,
+      final Function<? super T, ? extends PK> primaryKey) {
+      this.entityClass = Preconditions.checkNotNull(entityClass);
+      this.repository = Preconditions.checkNotNull(repository);
+      this.primaryKey = Preconditions.checkNotNull(primaryKey);
+      this.batchSize = DEFAULT_BATCH_SIZE;
+      this.capacity = DEFAULT_CAPACITY;
+      this.flushInterval = DEFAULT_FLUSH_INTERVAL;
+    }
+
+    /**
+     * @param batchSize the number of buffered changes which triggers a flush and the number of
+     * changes written at once, {@link #DEFAULT_BATCH_SIZE} by default
+     */
+    public Builder<T, PK> batchSize(final int batchSize) {
+      Preconditions.checkArgument(batchSize > 0, "Batch size must be positive.");
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * @param capacity the number of entities with buffered changes above which the changes of the
+     * other entities wait for a flush, {@link #DEFAULT_CAPACITY} by default
+     */
+    public Builder<T, PK> capacity(final int capacity) {
+      Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * @param flushInterval the maximum time a change is buffered while the batch size is not
+     * reached, {@link #DEFAULT_FLUSH_INTERVAL} nanoseconds by default
+     */
+    public Builder<T, PK> flushInterval(final long flushInterval, final TimeUnit unit) {
+      Preconditions.checkArgument(flushInterval > 0, "Flush interval must be positive.");
+      this.flushInterval = unit.toNanos(flushInterval);
+      return this;
+    }
+
+    /**
+     * @param unitOfWork the unit of work the decorated repository gets its entity manager from,
+     * each batch is then written in a unit of work and a transaction
+     */
+    public Builder<T, PK> unitOfWork(final UnitOfWork unitOfWork) {
+      this.unitOfWork = Preconditions.checkNotNull(unitOfWork);
+      return this;
+    }
+
+    public WriteBehindRepository<T, PK> build() {
+      Preconditions.checkArgument(this.capacity >= this.batchSize,
+        "Capacity can't be less than the batch size.");
+      return new WriteBehindRepository<>(this);
+    }
+  }
+
+  /**
+   * The last update or deletion of an entity.
+   */
+  private static final class Change<T> {
+
+    private final T entity;
+    private final boolean deleted;
+
+    private Change(final T entity, final boolean deleted) {
+      this.entity = entity;
+      this.deleted = deleted;
+    }
+  }
+
+}
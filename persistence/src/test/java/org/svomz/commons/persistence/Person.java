@@ -6,13 +6,20 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
 
+/**
+ * The identifiers are allocated by a table generator rather than by the database, so that the
+ * inserts are batched by the JDBC batch writing of the test unit.
+ */
 @Entity
 @Table(name = "persons")
 public class Person {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.TABLE, generator = "persons")
+  @TableGenerator(name = "persons", allocationSize = 100)
   private Long id;
 
   @Column(name = "firstname", nullable = false, length = 42)
@@ -21,6 +28,10 @@ public class Person {
   @Column(name = "lastname", nullable = false, length = 42)
   private String lastname;
 
+  @Version
+  @Column(name = "version")
+  private long version;
+
   public Long getId() {
     return this.id;
   }
@@ -33,6 +44,10 @@ public class Person {
     return this.lastname;
   }
 
+  public long getVersion() {
+    return this.version;
+  }
+
   public void setFirstname(String firstname) {
     this.firstname = firstname;
   }
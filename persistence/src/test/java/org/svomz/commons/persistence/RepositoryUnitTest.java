@@ -1,20 +1,36 @@
 package org.svomz.commons.persistence;
 
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.server.Server;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.svomz.commons.persistence.jpa.AbstractJpaRepository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Persistence;
 import javax.persistence.Table;
+import javax.persistence.Tuple;
 
 public class RepositoryUnitTest {
 
@@ -83,6 +99,37 @@ public class RepositoryUnitTest {
     repository.find(person.getId() + 1);
   }
 
+  @Test
+  public void getReferenceShouldWork() {
+    Person person = this.persistPersons(new PersonRepository(this.em), 1).get(0);
+    // Evicted entities are refreshed when they are accessed, the shared cache is cleared instead.
+    Server session = JpaHelper.getServerSession(this.emf);
+    session.getIdentityMapAccessor().initializeAllIdentityMaps();
+    final AtomicInteger queries = new AtomicInteger();
+    session.getEventManager().addListener(
+      new SessionEventAdapter() {
+        @Override
+        public void preExecuteQuery(SessionEvent event) {
+          queries.incrementAndGet();
+        }
+      });
+    PersonRepository repository = new PersonRepository(this.emf.createEntityManager());
+
+    // The woven entity is read when its state is first accessed, not by getReference.
+    Person reference = repository.getReference(person.getId());
+    Assert.assertEquals(person.getId(), reference.getId());
+    Assert.assertEquals(0, queries.get());
+    Assert.assertEquals(person.getFirstname(), reference.getFirstname());
+    Assert.assertEquals(1, queries.get());
+
+    try {
+      repository.getReference(person.getId() + 1).getFirstname();
+      Assert.fail();
+    } catch (javax.persistence.EntityNotFoundException ex) {
+      // The missing entity is reported when the reference is obtained or first accessed.
+    }
+  }
+
   @Test
   public void updateShouldWork() throws EntityNotFoundException {
     Person person = this.generatePerson();
@@ -106,6 +153,66 @@ public class RepositoryUnitTest {
     Assert.assertEquals(person.getFirstname(), persistedPerson.getFirstname());
   }
 
+  @Test
+  public void updateOfAStaleEntityShouldFail() {
+    PersonRepository repository = new PersonRepository(this.em);
+    Person person = this.persistPersons(repository, 1).get(0);
+    this.em.detach(person);
+    this.updateConcurrently(person.getId(), "Jane");
+
+    person.setFirstname("Robert");
+    this.em.getTransaction().begin();
+    try {
+      repository.update(person);
+      this.em.flush();
+      Assert.fail();
+    } catch (OptimisticLockException ex) {
+      Assert.assertTrue(this.em.getTransaction().getRollbackOnly());
+    } finally {
+      this.em.getTransaction().rollback();
+    }
+  }
+
+  @Test
+  public void updateShouldRetryWhenTheEntityChangedConcurrently() throws EntityNotFoundException {
+    PersonRepository repository = new PersonRepository(this.em);
+    Person person = this.persistPersons(repository, 1).get(0);
+    this.updateConcurrently(person.getId(), "Jane");
+
+    final AtomicInteger attempts = new AtomicInteger();
+    Person updated = repository.update(person.getId(), new Consumer<Person>() {
+      @Override
+      public void accept(final Person person) {
+        attempts.incrementAndGet();
+        person.setLastname(person.getFirstname() + " Doe");
+      }
+    }, RetryPolicy.builder().backoff(1, 1, TimeUnit.MILLISECONDS).build());
+
+    Assert.assertEquals(2, attempts.get());
+    Assert.assertEquals("Jane Doe", updated.getLastname());
+    Assert.assertEquals(3, updated.getVersion());
+    Assert.assertFalse(this.em.getTransaction().isActive());
+  }
+
+  @Test
+  public void updateShouldFailOnceTheAttemptsAreExhausted() throws EntityNotFoundException {
+    PersonRepository repository = new PersonRepository(this.em);
+    final Person person = this.persistPersons(repository, 1).get(0);
+
+    try {
+      repository.update(person.getId(), new Consumer<Person>() {
+        @Override
+        public void accept(final Person entity) {
+          RepositoryUnitTest.this.updateConcurrently(person.getId(), "Jane");
+          entity.setFirstname("Robert");
+        }
+      }, RetryPolicy.NONE);
+      Assert.fail();
+    } catch (RuntimeException ex) {
+      Assert.assertFalse(this.em.getTransaction().isActive());
+    }
+  }
+
   @Test
   public void deleteShouldWork() {
     Person person = this.generatePerson();
@@ -127,6 +234,142 @@ public class RepositoryUnitTest {
     Assert.assertEquals(0, repository.findAll().size());
   }
 
+  @Test
+  public void findAllByPageShouldWork() {
+    PersonRepository repository = new PersonRepository(this.em);
+    List<Person> persons = this.persistPersons(repository, 5);
+
+    Assert.assertEquals(persons.subList(2, 4), repository.findAll(2, 2));
+    Assert.assertEquals(persons.subList(4, 5), repository.findAll(4, 2));
+    Assert.assertTrue(repository.findAll(5, 2).isEmpty());
+
+    Assert.assertEquals(persons.subList(0, 2), repository.findAllAfter(null, 2));
+    Assert.assertEquals(persons.subList(2, 4), repository.findAllAfter(persons.get(1).getId(), 2));
+    Assert.assertTrue(repository.findAllAfter(persons.get(4).getId(), 2).isEmpty());
+  }
+
+  @Test
+  public void findAllByPrimaryKeysShouldWork() {
+    List<Person> persons = this.persistPersons(new PersonRepository(this.em), 5);
+    PersonRepository repository = new PersonRepository(this.em, 2);
+
+    Map<Long, Person> found = repository.findAll(Arrays.asList(persons.get(4).getId(),
+        persons.get(0).getId(), persons.get(4).getId() + 1, persons.get(2).getId()));
+    Assert.assertEquals(Arrays.asList(persons.get(4).getId(), persons.get(0).getId(),
+        persons.get(2).getId()), new ArrayList<>(found.keySet()));
+    Assert.assertEquals(Arrays.asList(persons.get(4), persons.get(0), persons.get(2)),
+        new ArrayList<>(found.values()));
+  }
+
+  @Test
+  public void countAndExistsShouldWork() {
+    PersonRepository repository = new PersonRepository(this.em);
+    Assert.assertEquals(0, repository.count());
+
+    List<Person> persons = this.persistPersons(repository, 3);
+    Assert.assertEquals(3, repository.count());
+    Assert.assertTrue(repository.exists(persons.get(2).getId()));
+    Assert.assertFalse(repository.exists(persons.get(2).getId() + 1));
+  }
+
+  @Test
+  public void projectionsShouldWork() {
+    PersonRepository repository = new PersonRepository(this.em);
+    this.persistPersons(repository, 2);
+    this.em.clear();
+
+    List<PersonName> names = repository.findNames();
+    Assert.assertEquals(2, names.size());
+    Assert.assertEquals("John", names.get(0).getFirstname());
+    Assert.assertEquals("Doe", names.get(1).getLastname());
+
+    List<Tuple> tuples = repository.findLastnames();
+    Assert.assertEquals(2, tuples.size());
+    Assert.assertEquals("Doe", tuples.get(0).get("lastname", String.class));
+  }
+
+  @Test
+  public void streamShouldDetachTheEntitiesItWentThrough() {
+    PersonRepository repository = new PersonRepository(this.em);
+    List<Person> persons = this.persistPersons(repository, 5);
+
+    Assert.assertEquals(persons, repository.stream(2).collect(Collectors.toList()));
+    for (Person person : persons) {
+      Assert.assertFalse(this.em.contains(person));
+    }
+  }
+
+  @Test
+  public void streamShouldKeepTheChangesOfTheEntitiesManagedBefore() throws EntityNotFoundException {
+    PersonRepository repository = new PersonRepository(this.em);
+    List<Person> persons = this.persistPersons(repository, 3);
+
+    // The queries of the stream don't flush the change.
+    this.em.setFlushMode(FlushModeType.COMMIT);
+    this.em.getTransaction().begin();
+    persons.get(1).setFirstname("Jane");
+    Assert.assertEquals(3, repository.stream(2).count());
+    this.em.getTransaction().commit();
+
+    this.em.clear();
+    Assert.assertEquals("Jane", repository.find(persons.get(1).getId()).getFirstname());
+  }
+
+  @Test
+  public void batchOperationsShouldWork() {
+    PersonRepository repository = new PersonRepository(this.em, 2);
+    List<Person> persons = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      persons.add(this.generatePerson());
+    }
+
+    this.em.getTransaction().begin();
+    List<Person> created = repository.createAll(persons);
+    this.em.getTransaction().commit();
+    Assert.assertEquals(persons, created);
+    Assert.assertEquals(5, repository.findAll().size());
+
+    for (Person person : persons) {
+      person.setFirstname("Robert");
+    }
+    this.em.getTransaction().begin();
+    List<Person> updated = repository.updateAll(persons);
+    this.em.getTransaction().commit();
+    this.em.clear();
+    for (Person person : repository.findAll()) {
+      Assert.assertEquals("Robert", person.getFirstname());
+    }
+
+    this.em.getTransaction().begin();
+    repository.deleteAll(updated.subList(0, 3));
+    int deleted = repository.deleteAllByPrimaryKeys(
+        Arrays.asList(persons.get(3).getId(), persons.get(4).getId() + 1));
+    this.em.getTransaction().commit();
+    Assert.assertEquals(1, deleted);
+    Assert.assertEquals(Arrays.asList(persons.get(4).getId()),
+        Arrays.asList(repository.findAll().get(0).getId()));
+  }
+
+  private List<Person> persistPersons(PersonRepository repository, int count) {
+    this.em.getTransaction().begin();
+    for (int i = 0; i < count; i++) {
+      repository.create(this.generatePerson());
+    }
+    this.em.getTransaction().commit();
+    return repository.findAll(0, count);
+  }
+
+  private void updateConcurrently(Long primaryKey, String firstname) {
+    EntityManager other = this.emf.createEntityManager();
+    try {
+      other.getTransaction().begin();
+      other.find(Person.class, primaryKey).setFirstname(firstname);
+      other.getTransaction().commit();
+    } finally {
+      other.close();
+    }
+  }
+
   @After
   public void tearDown() {
     this.em.close();
@@ -139,6 +382,38 @@ public class RepositoryUnitTest {
       super(entityManager);
     }
 
+    public PersonRepository(EntityManager entityManager, int batchSize) {
+      super(entityManager, batchSize);
+    }
+
+    public List<PersonName> findNames() {
+      return this.project(PersonName.class, "firstname", "lastname");
+    }
+
+    public List<Tuple> findLastnames() {
+      return this.projectTuples("lastname");
+    }
+
+  }
+
+  public static class PersonName {
+
+    private final String firstname;
+    private final String lastname;
+
+    public PersonName(String firstname, String lastname) {
+      this.firstname = firstname;
+      this.lastname = lastname;
+    }
+
+    public String getFirstname() {
+      return this.firstname;
+    }
+
+    public String getLastname() {
+      return this.lastname;
+    }
+
   }
 
 }
@@ -0,0 +1,175 @@
+package org.svomz.commons.persistence.cache;
+
+import com.google.common.base.Function;
+import com.google.common.base.Ticker;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.Person;
+import org.svomz.commons.persistence.RepositoryUnitTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+public class CachingRepositoryUnitTest {
+
+  private static final Function<Person, Long> ID = new Function<Person, Long>() {
+    @Override
+    public Long apply(final Person person) {
+      return person.getId();
+    }
+  };
+
+  private EntityManagerFactory emf;
+  private EntityManager em;
+  private long now;
+
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return CachingRepositoryUnitTest.this.now;
+    }
+  };
+
+  @Before
+  public void setUp() {
+    this.emf = Persistence.createEntityManagerFactory("pu-unittests");
+    this.em = this.emf.createEntityManager();
+  }
+
+  @After
+  public void tearDown() {
+    this.em.close();
+    this.emf.close();
+  }
+
+  @Test
+  public void findShouldBeServedFromTheCache() throws EntityNotFoundException {
+    CachingRepository<Person, Long> repository = CachingRepository
+      .builder(new RepositoryUnitTest.PersonRepository(this.em), ID)
+      .build();
+    Person person = this.persist(repository, "John");
+
+    Assert.assertSame(repository.find(person.getId()), repository.find(person.getId()));
+    Assert.assertEquals(1, repository.getStats().missCount());
+    Assert.assertEquals(1, repository.getStats().hitCount());
+
+    try {
+      repository.find(person.getId() + 1);
+      Assert.fail();
+    } catch (EntityNotFoundException ex) {
+      Assert.assertEquals(1, repository.size());
+    }
+  }
+
+  @Test
+  public void findAllShouldOnlyLoadTheEntitiesNotCached() throws EntityNotFoundException {
+    CachingRepository<Person, Long> repository = CachingRepository
+      .builder(new RepositoryUnitTest.PersonRepository(this.em), ID)
+      .build();
+    Person john = this.persist(repository, "John");
+    Person jane = this.persist(repository, "Jane");
+    repository.find(john.getId());
+
+    Map<Long, Person> found = repository.findAll(
+      Arrays.asList(jane.getId(), jane.getId() + 1, john.getId()));
+    Assert.assertEquals(Arrays.asList(jane, john), new ArrayList<>(found.values()));
+    Assert.assertEquals(1, repository.getStats().hitCount());
+    Assert.assertEquals(2, repository.size());
+    Assert.assertSame(jane, repository.find(jane.getId()));
+  }
+
+  @Test
+  public void updateAndDeleteShouldInvalidateTheEntity() throws EntityNotFoundException {
+    CachingRepository<Person, Long> repository = CachingRepository
+      .builder(new RepositoryUnitTest.PersonRepository(this.em), ID)
+      .build();
+    Person person = this.persist(repository, "John");
+    repository.find(person.getId());
+
+    this.em.getTransaction().begin();
+    person.setFirstname("Robert");
+    repository.update(person);
+    this.em.getTransaction().commit();
+    Assert.assertEquals(0, repository.size());
+    Assert.assertEquals("Robert", repository.find(person.getId()).getFirstname());
+
+    this.em.getTransaction().begin();
+    repository.delete(person);
+    this.em.getTransaction().commit();
+    Assert.assertEquals(0, repository.size());
+    try {
+      repository.find(person.getId());
+      Assert.fail();
+    } catch (EntityNotFoundException ex) {
+      Assert.assertEquals(3, repository.getStats().missCount());
+    }
+  }
+
+  @Test
+  public void entityInvalidatedWhileLoadedShouldNotBeCached() throws EntityNotFoundException {
+    final AtomicReference<CachingRepository<Person, Long>> cache = new AtomicReference<>();
+    CachingRepository<Person, Long> repository = CachingRepository
+      .builder(new RepositoryUnitTest.PersonRepository(this.em) {
+        @Override
+        public Person find(final Long primaryKey) throws EntityNotFoundException {
+          Person person = super.find(primaryKey);
+          // Changed by another thread once read.
+          cache.get().invalidate(primaryKey);
+          return person;
+        }
+      }, ID)
+      .build();
+    cache.set(repository);
+    Person person = this.persist(repository, "John");
+
+    Assert.assertSame(person, repository.find(person.getId()));
+    Assert.assertEquals(0, repository.size());
+  }
+
+  @Test
+  public void entitiesShouldBeEvictedWhenExpiredOrAboveTheMaximumSize()
+    throws EntityNotFoundException {
+    CachingRepository<Person, Long> repository = CachingRepository
+      .builder(new RepositoryUnitTest.PersonRepository(this.em), ID)
+      .maximumSize(1)
+      .expireAfterWrite(1, TimeUnit.MINUTES)
+      .ticker(this.ticker)
+      .build();
+    Person john = this.persist(repository, "John");
+    Person jane = this.persist(repository, "Jane");
+
+    repository.find(john.getId());
+    repository.find(jane.getId());
+    Assert.assertEquals(1, repository.size());
+    Assert.assertEquals(1, repository.getStats().evictionCount());
+
+    this.now += TimeUnit.MINUTES.toNanos(1);
+    repository.find(jane.getId());
+    Assert.assertEquals(0, repository.getStats().hitCount());
+    Assert.assertEquals(3, repository.getStats().missCount());
+  }
+
+  private Person persist(final CachingRepository<Person, Long> repository,
+    final String firstname) {
+    Person person = new Person();
+    person.setFirstname(firstname);
+    person.setLastname("Doe");
+
+    this.em.getTransaction().begin();
+    repository.create(person);
+    this.em.getTransaction().commit();
+    return person;
+  }
+
+}
@@ -0,0 +1,42 @@
+package org.svomz.commons.persistence.jdbc;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.svomz.commons.core.metrics.Gauge;
+import org.svomz.commons.core.metrics.MetricRegistry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+public class DataSourceModuleUnitTest {
+
+  private static final String URL = "jdbc:derby:memory:module-unittests;create=true";
+
+  @Test
+  public void dataSourceShouldBeThePool() throws SQLException {
+    Injector injector = Guice.createInjector(
+      new DataSourceModule(PooledDataSourceConfig.builder(URL).size(2, 1).build()));
+    PooledDataSource pool = injector.getInstance(PooledDataSource.class);
+    try {
+      Assert.assertSame(pool, injector.getInstance(PooledDataSource.class));
+      Assert.assertSame(pool.getDataSource(), injector.getInstance(DataSource.class));
+
+      pool.start();
+      Assert.assertTrue(pool.isRunning());
+      try (Connection connection = injector.getInstance(DataSource.class).getConnection()) {
+        Gauge<?> active = (Gauge<?>) injector.getInstance(MetricRegistry.class).getMetrics()
+          .get("jdbc.pool.connections.active");
+        Assert.assertEquals(1, active.getValue());
+      }
+    } finally {
+      pool.stop();
+    }
+    Assert.assertFalse(pool.isRunning());
+  }
+
+}
@@ -0,0 +1,70 @@
+package org.svomz.commons.persistence.jdbc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+public class PooledDataSourceUnitTest {
+
+  private static final String URL = "jdbc:derby:memory:pool-unittests;create=true";
+
+  private PooledDataSource dataSource;
+
+  @BeforeClass
+  public static void createDatabase() throws SQLException {
+    // Boots Derby beforehand, the first connection takes longer than the acquisition timeout.
+    DriverManager.getConnection(URL).close();
+  }
+
+  @Before
+  public void setUp() {
+    this.dataSource = new PooledDataSource(PooledDataSourceConfig.builder(URL)
+      .size(2, 2)
+      .acquisitionTimeout(250)
+      .build());
+  }
+
+  @After
+  public void tearDown() {
+    this.dataSource.stop();
+  }
+
+  @Test
+  public void startShouldOpenTheMinimumNumberOfIdleConnections() {
+    this.dataSource.start();
+
+    Assert.assertEquals(2, this.dataSource.getIdleConnections());
+    Assert.assertEquals(0, this.dataSource.getActiveConnections());
+    Assert.assertEquals(2, this.dataSource.getAcquireTime().getCount());
+  }
+
+  @Test
+  public void acquisitionShouldTimeOutWhenAllTheConnectionsAreInUse() throws SQLException {
+    this.dataSource.start();
+
+    try (Connection first = this.dataSource.getDataSource().getConnection();
+      Connection second = this.dataSource.getDataSource().getConnection()) {
+      Assert.assertEquals(2, this.dataSource.getActiveConnections());
+      try {
+        this.dataSource.getDataSource().getConnection();
+        Assert.fail();
+      } catch (SQLException ex) {
+        Assert.assertEquals(1, this.dataSource.getAcquireTimeouts());
+      }
+    }
+    Assert.assertEquals(0, this.dataSource.getActiveConnections());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void startShouldFailOnceStopped() {
+    this.dataSource.stop();
+    this.dataSource.start();
+  }
+
+}
@@ -0,0 +1,115 @@
+package org.svomz.commons.persistence.jpa;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.Person;
+import org.svomz.commons.persistence.RepositoryExecutor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+public class AsyncRepositoryUnitTest {
+
+  private Injector injector;
+  private RepositoryExecutor executor;
+  private AsyncRepository<Person, Long> repository;
+
+  @Before
+  public void setUp() {
+    this.injector = Guice.createInjector(new JpaPersistenceModule("pu-unittests"));
+    this.executor = RepositoryExecutor.builder().threads(2).queueCapacity(1).build();
+    this.repository = new AsyncRepository<>(
+      this.injector.getInstance(TransactionalUnitTest.PersonRepository.class),
+      this.injector.getInstance(UnitOfWork.class), this.executor);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    this.executor.shutdown();
+    this.executor.awaitTermination(1, TimeUnit.SECONDS);
+    this.injector.getInstance(EntityManagerFactory.class).close();
+  }
+
+  @Test
+  public void operationsShouldRunInTheirOwnUnitOfWork() throws Exception {
+    List<Person> created = this.repository.createAll(
+      Arrays.asList(this.person("John"), this.person("Jane"))).get();
+
+    CompletableFuture<Person> john = this.repository.find(created.get(0).getId());
+    CompletableFuture<Long> count = this.repository.count();
+    Assert.assertEquals("John", john.get().getFirstname());
+    Assert.assertEquals(2L, count.get().longValue());
+    Assert.assertFalse(this.injector.getInstance(UnitOfWork.class).isActive());
+
+    this.repository.delete(john.get()).get();
+    Assert.assertFalse(this.repository.exists(created.get(0).getId()).get());
+  }
+
+  @Test
+  public void futureShouldFailWithTheExceptionOfTheOperation() throws InterruptedException {
+    try {
+      this.repository.find(42L).get();
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof EntityNotFoundException);
+    }
+
+    try {
+      this.repository.create(new Person()).get();
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertEquals(0L, this.repository.count().join().longValue());
+    }
+  }
+
+  @Test
+  public void operationsShouldBeRejectedOnceTheQueueIsFull() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    Runnable blocking = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocked.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    this.executor.execute(blocking);
+    this.executor.execute(blocking);
+    CompletableFuture<Long> queued = this.repository.count();
+
+    try {
+      this.repository.count().get();
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+      Assert.assertEquals(1, this.executor.getRejectedTasks());
+      Assert.assertEquals(1, this.executor.getQueueSize());
+    } finally {
+      blocked.countDown();
+    }
+    Assert.assertEquals(0L, queued.get().longValue());
+  }
+
+  private Person person(final String firstname) {
+    Person person = new Person();
+    person.setFirstname(firstname);
+    person.setLastname("Doe");
+    return person;
+  }
+
+}
@@ -0,0 +1,175 @@
+package org.svomz.commons.persistence.jpa;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.ProvisionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.Person;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+public class TransactionalUnitTest {
+
+  private Injector injector;
+  private PersonService service;
+
+  @Before
+  public void setUp() {
+    this.injector = Guice.createInjector(new JpaPersistenceModule("pu-unittests"));
+    this.service = this.injector.getInstance(PersonService.class);
+  }
+
+  @After
+  public void tearDown() {
+    this.injector.getInstance(EntityManagerFactory.class).close();
+  }
+
+  @Test
+  public void transactionShouldBeCommittedOrRolledBack() {
+    this.service.create("John", false);
+    try {
+      this.service.create("Jane", true);
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      Assert.assertEquals("failing", ex.getMessage());
+    }
+
+    Assert.assertEquals(1, this.service.count());
+    Assert.assertFalse(this.injector.getInstance(UnitOfWork.class).isActive());
+  }
+
+  @Test
+  public void nestedCallsShouldJoinTheTransaction() {
+    try {
+      this.service.createBoth("John", "Jane");
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      Assert.assertEquals(0, this.service.count());
+    }
+  }
+
+  @Test
+  public void inheritedMethodsOfAnnotatedClassesShouldBeTransactional() {
+    TransactionalPersonRepository repository =
+      this.injector.getInstance(TransactionalPersonRepository.class);
+    try {
+      repository.find(1L);
+      Assert.fail();
+    } catch (EntityNotFoundException ex) {
+      // The checked exception doesn't roll back the transaction.
+    }
+    Assert.assertEquals(0, repository.count());
+    Assert.assertFalse(this.injector.getInstance(UnitOfWork.class).isActive());
+  }
+
+  @Test
+  public void eachThreadShouldHaveItsOwnEntityManager() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<EntityManager> first = executor.submit(this.service.entityManagerTask());
+      Future<EntityManager> second = executor.submit(this.service.entityManagerTask());
+      Assert.assertNotSame(first.get(), second.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void repositoryShouldNotBeUsedOutsideOfAUnitOfWork() {
+    try {
+      this.injector.getInstance(PersonRepository.class).count();
+      Assert.fail();
+    } catch (ProvisionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Singleton
+  public static class PersonRepository extends AbstractJpaRepository<Person, Long> {
+
+    @Inject
+    public PersonRepository(Provider<EntityManager> entityManager) {
+      super(entityManager);
+    }
+
+  }
+
+  @Singleton
+  @Transactional
+  public static class TransactionalPersonRepository extends AbstractJpaRepository<Person, Long> {
+
+    @Inject
+    public TransactionalPersonRepository(Provider<EntityManager> entityManager) {
+      super(entityManager);
+    }
+
+  }
+
+  public static class PersonService {
+
+    private final PersonRepository repository;
+    private final Provider<EntityManager> entityManager;
+
+    @Inject
+    public PersonService(PersonRepository repository, Provider<EntityManager> entityManager) {
+      this.repository = repository;
+      this.entityManager = entityManager;
+    }
+
+    @Transactional
+    public void create(String firstname, boolean fail) {
+      Person person = new Person();
+      person.setFirstname(firstname);
+      person.setLastname("Doe");
+      this.repository.create(person);
+      this.entityManager.get().flush();
+      if (fail) {
+        throw new IllegalStateException("failing");
+      }
+    }
+
+    @Transactional
+    public void createBoth(String first, String second) {
+      this.create(first, false);
+      this.create(second, true);
+    }
+
+    @Transactional
+    public long count() {
+      return this.repository.count();
+    }
+
+    @Transactional
+    public EntityManager entityManager() {
+      return this.entityManager.get();
+    }
+
+    public Callable<EntityManager> entityManagerTask() {
+      return new Callable<EntityManager>() {
+        @Override
+        public EntityManager call() throws Exception {
+          EntityManager entityManager = PersonService.this.entityManager();
+          // Keeps the unit of work of the other thread in progress.
+          Thread.sleep(100);
+          return entityManager;
+        }
+      };
+    }
+
+  }
+
+}
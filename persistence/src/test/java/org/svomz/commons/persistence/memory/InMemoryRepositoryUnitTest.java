@@ -0,0 +1,177 @@
+package org.svomz.commons.persistence.memory;
+
+import com.google.common.base.Function;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.svomz.commons.persistence.EntityNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+public class InMemoryRepositoryUnitTest {
+
+  private static final Function<City, Long> ID = new Function<City, Long>() {
+    @Override
+    public Long apply(final City city) {
+      return city.id;
+    }
+  };
+
+  private static final Function<City, String> COUNTRY = new Function<City, String>() {
+    @Override
+    public String apply(final City city) {
+      return city.country;
+    }
+  };
+
+  private InMemoryRepository<City, Long> repository;
+
+  @Before
+  public void setUp() {
+    final AtomicLong sequence = new AtomicLong();
+    this.repository = InMemoryRepository.builder(City.class, ID)
+      .primaryKeyGenerator(new Function<City, Long>() {
+        @Override
+        public Long apply(final City city) {
+          city.id = sequence.incrementAndGet();
+          return city.id;
+        }
+      })
+      .index("country", COUNTRY)
+      .build();
+  }
+
+  @Test
+  public void crudOperationsShouldWork() throws EntityNotFoundException {
+    City paris = this.repository.create(new City("Paris", "FR"));
+    City brussels = this.repository.create(new City("Brussels", "BE"));
+
+    Assert.assertEquals(Long.valueOf(1), paris.id);
+    Assert.assertSame(brussels, this.repository.find(2L));
+    Assert.assertEquals(2, this.repository.count());
+    Assert.assertEquals(Arrays.asList(paris, brussels), this.repository.findAll());
+    Assert.assertEquals(Arrays.asList(brussels), this.repository.findAll(1, 10));
+    Assert.assertEquals(Arrays.asList(brussels), this.repository.findAllAfter(1L, 10));
+    Assert.assertEquals(Arrays.asList(2L), new ArrayList<>(
+      this.repository.findAll(Arrays.asList(2L, 3L)).keySet()));
+
+    try {
+      this.repository.create(paris);
+      Assert.fail();
+    } catch (IllegalArgumentException ex) {
+      Assert.assertEquals(2, this.repository.count());
+    }
+
+    this.repository.delete(paris);
+    Assert.assertFalse(this.repository.exists(1L));
+    Assert.assertEquals(0, this.repository.deleteAllByPrimaryKeys(Arrays.asList(1L)));
+    Assert.assertEquals(Arrays.asList(brussels),
+      this.repository.stream(1).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void createAllShouldCreateNoEntityIfAGeneratedKeyIsInvalid() {
+    final List<Long> keys = new ArrayList<>(Arrays.asList(1L, 2L, 1L, 3L));
+    InMemoryRepository<City, Long> repository = InMemoryRepository.builder(City.class, ID)
+      .primaryKeyGenerator(new Function<City, Long>() {
+        @Override
+        public Long apply(final City city) {
+          if (keys.isEmpty()) {
+            throw new IllegalStateException("No more keys.");
+          }
+          city.id = keys.remove(0);
+          return city.id;
+        }
+      })
+      .build();
+    City paris = repository.create(new City("Paris", "FR"));
+
+    try {
+      repository.createAll(Arrays.asList(new City("Brussels", "BE"), new City("Lyon", "FR")));
+      Assert.fail();
+    } catch (IllegalArgumentException ex) {
+      Assert.assertEquals(Arrays.asList(paris), repository.findAll());
+    }
+    try {
+      repository.createAll(Arrays.asList(new City("Brussels", "BE"), new City("Lyon", "FR")));
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      Assert.assertEquals(Arrays.asList(paris), repository.findAll());
+    }
+  }
+
+  @Test
+  public void createIfAbsentShouldKeepTheExistingEntity() throws EntityNotFoundException {
+    City paris = this.repository.create(new City("Paris", "FR"));
+    City other = new City("Paris", "US");
+    other.id = paris.id;
+
+    Assert.assertFalse(this.repository.createIfAbsent(other));
+    Assert.assertSame(paris, this.repository.find(paris.id));
+    Assert.assertTrue(this.repository.createIfAbsent(new City("Brussels", "BE")));
+    Assert.assertEquals(2, this.repository.count());
+  }
+
+  @Test
+  public void indexesShouldFollowTheUpdates() {
+    City paris = this.repository.create(new City("Paris", "FR"));
+    City lyon = this.repository.create(new City("Lyon", "FR"));
+
+    Assert.assertEquals(Arrays.asList(paris, lyon), this.repository.findBy("country", "FR"));
+
+    lyon.country = "BE";
+    this.repository.update(lyon);
+    Assert.assertEquals(Arrays.asList(paris), this.repository.findBy("country", "FR"));
+    Assert.assertEquals(Arrays.asList(lyon), this.repository.findBy("country", "BE"));
+
+    this.repository.deleteAll(Arrays.asList(paris, lyon));
+    Assert.assertEquals(Collections.emptyList(), this.repository.findBy("country", "FR"));
+    Assert.assertEquals(Collections.emptyList(), this.repository.findBy("country", "BE"));
+  }
+
+  @Test
+  public void readsShouldSeeWholeBatches() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Integer> writer = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          for (int i = 0; i < 1000; i++) {
+            InMemoryRepositoryUnitTest.this.repository.createAll(Arrays.asList(
+              new City("city-" + i, "FR"), new City("city-" + i, "BE")));
+          }
+          return 1000;
+        }
+      });
+      while (!writer.isDone()) {
+        Assert.assertEquals(0, this.repository.findAll().size() % 2);
+      }
+      Assert.assertEquals(2000, this.repository.count());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public static class City {
+
+    private Long id;
+    private final String name;
+    private String country;
+
+    public City(final String name, final String country) {
+      this.name = name;
+      this.country = country;
+    }
+  }
+
+}
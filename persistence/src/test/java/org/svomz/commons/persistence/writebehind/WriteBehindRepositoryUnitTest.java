@@ -0,0 +1,288 @@
+package org.svomz.commons.persistence.writebehind;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.svomz.commons.persistence.EntityNotFoundException;
+import org.svomz.commons.persistence.Person;
+import org.svomz.commons.persistence.jpa.JpaPersistenceModule;
+import org.svomz.commons.persistence.jpa.TransactionalUnitTest;
+import org.svomz.commons.persistence.jpa.UnitOfWork;
+import org.svomz.commons.persistence.memory.InMemoryRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+public class WriteBehindRepositoryUnitTest {
+
+  private static final Function<Counter, String> NAME = new Function<Counter, String>() {
+    @Override
+    public String apply(final Counter counter) {
+      return counter.name;
+    }
+  };
+
+  private InMemoryRepository<Counter, String> store;
+  private List<Integer> batches;
+  private volatile boolean failing;
+  private volatile int failingBatch = -1;
+  private volatile CountDownLatch writing;
+  private volatile CountDownLatch release;
+  private WriteBehindRepository<Counter, String> repository;
+
+  @Before
+  public void setUp() {
+    this.store = InMemoryRepository.builder(Counter.class, NAME).build();
+    this.batches = new ArrayList<>();
+    this.repository = new RecordingRepository(WriteBehindRepository
+      .builder(Counter.class, this.store, NAME)
+      .batchSize(2)
+      .capacity(2)
+      .flushInterval(1, TimeUnit.HOURS));
+  }
+
+  @After
+  public void tearDown() {
+    this.repository.stop();
+  }
+
+  @Test
+  public void changesShouldBeCoalescedUntilTheyAreFlushed() throws EntityNotFoundException {
+    this.repository.start();
+    Counter hits = new Counter("hits", 1);
+    this.repository.update(hits);
+    this.repository.update(new Counter("hits", 2));
+
+    Assert.assertFalse(this.store.exists("hits"));
+    Assert.assertEquals(2, this.repository.find("hits").value);
+    Assert.assertEquals(1, this.repository.getCoalescedChanges());
+
+    this.repository.delete(hits);
+    Assert.assertFalse(this.repository.exists("hits"));
+    try {
+      this.repository.find("hits");
+      Assert.fail();
+    } catch (EntityNotFoundException ex) {
+      Assert.assertEquals(1, this.repository.getPendingChanges());
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void batchSizeShouldTriggerAFlush() throws InterruptedException {
+    this.repository.start();
+    this.repository.updateAll(Arrays.asList(new Counter("hits", 1), new Counter("misses", 1)));
+
+    while (this.store.count() < 2) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(2, this.repository.getFlushedChanges());
+  }
+
+  @Test
+  public void stopShouldFlushTheBufferedChanges() throws EntityNotFoundException {
+    this.repository.start();
+    this.repository.update(new Counter("hits", 1));
+    this.repository.stop();
+
+    Assert.assertEquals(1, this.store.find("hits").value);
+    Assert.assertEquals(Arrays.asList(1), this.batches);
+
+    this.repository.update(new Counter("hits", 2));
+    Assert.assertEquals(2, this.store.find("hits").value);
+  }
+
+  @Test(timeout = 5000)
+  public void changesMadeWhileStoppingShouldNotBeOverwritten() throws Exception {
+    this.repository.start();
+    this.repository.update(new Counter("hits", 1));
+    CountDownLatch release = new CountDownLatch(1);
+    this.writing = new CountDownLatch(1);
+    this.release = release;
+    Thread stopping = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        WriteBehindRepositoryUnitTest.this.repository.stop();
+      }
+    });
+    stopping.start();
+
+    // Changed while the final flush writes the previous change.
+    this.writing.await();
+    this.repository.update(new Counter("hits", 2));
+    release.countDown();
+    stopping.join();
+
+    Assert.assertEquals(2, this.store.find("hits").value);
+    Assert.assertEquals(Arrays.asList(1, 1), this.batches);
+    Assert.assertEquals(0, this.repository.getPendingChanges());
+  }
+
+  @Test
+  public void failedFlushShouldBufferTheChangesAgain() throws EntityNotFoundException {
+    this.repository.start();
+    this.repository.update(new Counter("hits", 1));
+    this.failing = true;
+    try {
+      this.repository.flush();
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      Assert.assertEquals(1, this.repository.getFailedFlushes());
+      Assert.assertEquals(1, this.repository.getPendingChanges());
+      Assert.assertEquals(1, this.repository.find("hits").value);
+    }
+
+    this.failing = false;
+    this.repository.flush();
+    Assert.assertEquals(1, this.store.find("hits").value);
+  }
+
+  @Test(timeout = 5000)
+  public void failedFlushShouldOnlyBufferTheUnwrittenBatchesAgain() throws Exception {
+    this.repository = new RecordingRepository(WriteBehindRepository
+      .builder(Counter.class, this.store, NAME)
+      .batchSize(2)
+      .capacity(4)
+      .flushInterval(1, TimeUnit.HOURS));
+    this.repository.start();
+    CountDownLatch release = new CountDownLatch(1);
+    this.writing = new CountDownLatch(1);
+    this.release = release;
+    this.repository.updateAll(Arrays.asList(new Counter("a", 1), new Counter("b", 1)));
+
+    // Buffered while the first flush writes, then flushed in two batches, the second failing.
+    this.writing.await();
+    this.failingBatch = 2;
+    this.repository.updateAll(Arrays.asList(new Counter("c", 1), new Counter("d", 1),
+      new Counter("e", 1), new Counter("f", 1)));
+    release.countDown();
+    while (this.repository.getFailedFlushes() == 0) {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(Arrays.asList(2, 2), this.batches);
+    Assert.assertTrue(this.store.exists("d"));
+    Assert.assertFalse(this.store.exists("e"));
+    Assert.assertEquals(4, this.repository.getFlushedChanges());
+    Assert.assertEquals(2, this.repository.getPendingChanges());
+
+    this.failingBatch = -1;
+    this.repository.flush();
+    Assert.assertEquals(Arrays.asList(2, 2, 2), this.batches);
+    Assert.assertTrue(this.store.exists("f"));
+  }
+
+  @Test(timeout = 5000)
+  public void failedFlushShouldBeRetriedAfterTheFlushInterval() throws InterruptedException {
+    this.repository.start();
+    this.failing = true;
+    this.repository.updateAll(Arrays.asList(new Counter("hits", 1), new Counter("misses", 1)));
+    while (this.repository.getFailedFlushes() == 0) {
+      Thread.sleep(10);
+    }
+
+    // The batch size is still reached, but the retry waits for the flush interval.
+    Thread.sleep(100);
+    Assert.assertEquals(1, this.repository.getFailedFlushes());
+    Assert.assertEquals(2, this.repository.getPendingChanges());
+    this.failing = false;
+  }
+
+  @Test(timeout = 5000)
+  public void batchesShouldBeWrittenInAUnitOfWork() throws Exception {
+    Injector injector = Guice.createInjector(new JpaPersistenceModule("pu-unittests"));
+    try {
+      UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+      TransactionalUnitTest.PersonRepository persons =
+        injector.getInstance(TransactionalUnitTest.PersonRepository.class);
+      WriteBehindRepository<Person, Long> repository = WriteBehindRepository
+        .builder(Person.class, persons, new Function<Person, Long>() {
+          @Override
+          public Long apply(final Person person) {
+            return person.getId();
+          }
+        })
+        .unitOfWork(unitOfWork)
+        .batchSize(1)
+        .build();
+      Person person = new Person();
+      person.setFirstname("John");
+      person.setLastname("Doe");
+      // The other operations run in the unit of work of the calling thread.
+      unitOfWork.begin();
+      try {
+        EntityTransaction transaction = unitOfWork.get().getTransaction();
+        transaction.begin();
+        repository.create(person);
+        transaction.commit();
+      } finally {
+        unitOfWork.end();
+      }
+
+      // Written by the thread of the repository.
+      repository.start();
+      person.setFirstname("Johnny");
+      repository.update(person);
+      while (repository.getFlushedChanges() < 1) {
+        Thread.sleep(10);
+      }
+      repository.stop();
+
+      unitOfWork.begin();
+      try {
+        Assert.assertEquals("Johnny", persons.find(person.getId()).getFirstname());
+      } finally {
+        unitOfWork.end();
+      }
+    } finally {
+      injector.getInstance(EntityManagerFactory.class).close();
+    }
+  }
+
+  private class RecordingRepository extends WriteBehindRepository<Counter, String> {
+
+    private RecordingRepository(final Builder<Counter, String> builder) {
+      super(builder);
+    }
+
+    @Override
+    protected void write(final List<Counter> updated, final List<Counter> deleted) {
+      if (WriteBehindRepositoryUnitTest.this.failing
+        || WriteBehindRepositoryUnitTest.this.batches.size()
+        == WriteBehindRepositoryUnitTest.this.failingBatch) {
+        throw new IllegalStateException("failing");
+      }
+      CountDownLatch release = WriteBehindRepositoryUnitTest.this.release;
+      if (release != null) {
+        WriteBehindRepositoryUnitTest.this.release = null;
+        WriteBehindRepositoryUnitTest.this.writing.countDown();
+        Uninterruptibles.awaitUninterruptibly(release);
+      }
+      WriteBehindRepositoryUnitTest.this.batches.add(updated.size() + deleted.size());
+      super.write(updated, deleted);
+    }
+  }
+
+  public static class Counter {
+
+    private final String name;
+    private final int value;
+
+    public Counter(final String name, final int value) {
+      this.name = name;
+      this.value = value;
+    }
+  }
+
+}
@@ -1,6 +1,7 @@
 package org.svomz.commons.samples.clidispatcher;
 
-import com.google.inject.*;
+import com.google.inject.Inject;
+import com.google.inject.Module;
 
 import org.svomz.commons.application.AbstractApplication;
 import org.svomz.commons.application.AppLauncher;
@@ -10,10 +10,11 @@ import org.svomz.commons.application.AbstractApplication;
 import org.svomz.commons.application.AppLauncher;
 import org.svomz.commons.application.Lifecycle;
 import org.svomz.commons.application.modules.HttpServerModule;
+import org.svomz.commons.core.metrics.Counter;
+import org.svomz.commons.core.metrics.MetricRegistry;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -100,21 +101,24 @@ public class HttpApp extends AbstractApplication {
 
   public static class LogRequestFilter implements Filter {
 
-    private AtomicLong requestCounter;
+    private final Counter requestCounter;
 
-    public LogRequestFilter() {
-      this.requestCounter = new AtomicLong();
+    @Inject
+    public LogRequestFilter(final MetricRegistry registry) {
+      Preconditions.checkNotNull(registry);
+
+      this.requestCounter = registry.counter("http.requests");
     }
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
-      this.requestCounter.set(0);
+      // do nothing.
     }
 
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
                          FilterChain filterChain) throws IOException, ServletException {
-      this.requestCounter.getAndIncrement();
+      this.requestCounter.increment();
       filterChain.doFilter(servletRequest, servletResponse);
     }
 
@@ -124,7 +128,7 @@ public class HttpApp extends AbstractApplication {
     }
 
     public long getTotal() {
-      return this.requestCounter.longValue();
+      return this.requestCounter.getCount();
     }
   }
 
@@ -1,31 +1,48 @@
 package org.svomz.commons.samples.placesapi.domain;
 
+import com.google.common.base.Function;
+
+import org.svomz.commons.persistence.memory.InMemoryRepository;
+
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * Implementation of {@link org.svomz.commons.samples.placesapi.domain.PlaceRepository} with an in memory
  * storage system.
  *
- * This implementation is voluntary simple.
+ * The places are held by name in an {@link InMemoryRepository}, which can be used by concurrent
+ * requests. Like a set, the repository keeps the first place saved with a given name.
  */
 public class InMemoryPlaceRepository implements PlaceRepository {
 
-  private final Set<Place> places;
+  private static final Function<Place, String> NAME = new Function<Place, String>() {
+    @Override
+    public String apply(final Place place) {
+      return place.getName();
+    }
+  };
+
+  private final InMemoryRepository<Place, String> places;
 
   public InMemoryPlaceRepository() {
-    this.places = new HashSet<>();
+    this.places = InMemoryRepository.builder(Place.class, NAME).build();
   }
 
+  /**
+   * A place with the same name already saved is kept.
+   *
+   * @throws IllegalArgumentException if the place has no name
+   */
   @Override
   public Place save(Place place) {
-    this.places.add(place);
+    this.places.createIfAbsent(place);
     return place;
   }
 
   @Override
   public Set<Place> getAll() {
-    return Collections.unmodifiableSet(this.places);
+    return Collections.unmodifiableSet(new LinkedHashSet<>(this.places.findAll()));
   }
 }